@@ -0,0 +1,136 @@
+package testing.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import testing.utils.UuidV7;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Insert throughput (rows/s) per primary key strategy on a file-backed H2 table, in JDBC batches of 50:
+ * random (v4) versus time-ordered (v7) UUIDs for customers, and a sequence called per row versus a pooled
+ * sequence (allocation 50) for payments. The disk space of each table, indexes included, is printed at the end.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class InsertKeyBenchmark {
+
+    private static final int ROWS = 1000;
+    private static final int BATCH_SIZE = 50;
+
+    @Param({"uuid_v4", "uuid_v7", "sequence_1", "sequence_50"})
+    private String key;
+
+    private Path directory;
+    private Connection connection;
+    private PreparedStatement insert;
+    private PreparedStatement nextId;
+    private int allocationSize;
+    private long rows;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        directory = Files.createTempDirectory("insert-key-benchmark");
+        connection = DriverManager.getConnection("jdbc:h2:file:" + directory.resolve("db"), "sa", "");
+        connection.setAutoCommit(false);
+
+        try (Statement statement = connection.createStatement()) {
+            if (key.startsWith("uuid")) {
+                statement.execute("CREATE TABLE customer (id UUID PRIMARY KEY, " +
+                        "name VARCHAR(255) NOT NULL, phone_number VARCHAR(255) NOT NULL)");
+                insert = connection.prepareStatement("INSERT INTO customer VALUES (?, ?, ?)");
+            } else {
+                allocationSize = Integer.parseInt(key.substring("sequence_".length()));
+                statement.execute("CREATE SEQUENCE payment_id_seq INCREMENT BY " + allocationSize);
+                statement.execute("CREATE TABLE payment (payment_id BIGINT PRIMARY KEY, " +
+                        "payment_method VARCHAR(255), amount NUMERIC(38, 2), customer_id UUID)");
+                insert = connection.prepareStatement("INSERT INTO payment VALUES (?, ?, ?, ?)");
+                nextId = connection.prepareStatement("SELECT NEXT VALUE FOR payment_id_seq");
+            }
+        }
+        connection.commit();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, SQLException {
+        String table = key.startsWith("uuid") ? "CUSTOMER" : "PAYMENT";
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT DISK_SPACE_USED('" + table + "')")) {
+            resultSet.next();
+            long bytes = resultSet.getLong(1);
+            //throughput runs insert a different number of rows per key, so compare per row
+            System.out.printf("%n%s: %d rows, %d KiB on disk (table and indexes), %d bytes per row%n",
+                    key, rows, bytes / 1024, rows == 0 ? 0 : bytes / rows);
+        }
+        connection.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList())
+                Files.delete(file);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void insert() throws SQLException {
+        if (key.startsWith("uuid"))
+            insertCustomers();
+        else
+            insertPayments();
+        connection.commit();
+        rows += ROWS;
+    }
+
+    private void insertCustomers() throws SQLException {
+        boolean timeOrdered = key.equals("uuid_v7");
+        for (int i = 0; i < ROWS; i++) {
+            long row = rows + i;
+            insert.setObject(1, timeOrdered ? UuidV7.randomUuid() : UUID.randomUUID());
+            insert.setString(2, "customer " + row);
+            insert.setString(3, "+34" + (600_000_000L + row));
+            addToBatch(i);
+        }
+    }
+
+    private void insertPayments() throws SQLException {
+        //pooled optimizer: one sequence call covers the next allocationSize ids
+        long id = 0;
+        long idsLeft = 0;
+        for (int i = 0; i < ROWS; i++) {
+            if (idsLeft == 0) {
+                try (ResultSet resultSet = nextId.executeQuery()) {
+                    resultSet.next();
+                    id = resultSet.getLong(1);
+                }
+                idsLeft = allocationSize;
+            }
+            insert.setLong(1, id++);
+            idsLeft--;
+            insert.setString(2, "card");
+            insert.setBigDecimal(3, BigDecimal.TEN);
+            insert.setObject(4, UUID.randomUUID());
+            addToBatch(i);
+        }
+    }
+
+    private void addToBatch(int i) throws SQLException {
+        insert.addBatch();
+        if ((i + 1) % BATCH_SIZE == 0)
+            insert.executeBatch();
+    }
+}
@@ -0,0 +1,65 @@
+package testing.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import testing.payment.Payment;
+import testing.payment.PaymentResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static testing.payment.Currency.EUR;
+
+/**
+ * JSON array (GET /api/v1/payment) versus row by row NDJSON (GET /api/v1/payment/stream) serialization.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PaymentSerializationBenchmark {
+
+    @Param({"100", "10000"})
+    private int size;
+
+    private List<Payment> payments;
+    private ObjectWriter listWriter;
+    private ObjectWriter paymentWriter;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        listWriter = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, PaymentResponse.class));
+        paymentWriter = objectMapper.writerFor(PaymentResponse.class);
+
+        UUID customerId = UUID.randomUUID();
+        Instant createdAt = Instant.now();
+        payments = LongStream.range(0, size)
+                .mapToObj(id -> new Payment(id, "card", "payment " + id, 1000, EUR, customerId, createdAt))
+                .toList();
+    }
+
+    @Benchmark
+    public byte[] serializeList() throws JsonProcessingException {
+        return listWriter.writeValueAsBytes(payments.stream().map(PaymentResponse::from).toList());
+    }
+
+    @Benchmark
+    public void serializeNdjson() throws IOException {
+        OutputStream out = OutputStream.nullOutputStream();
+        for (Payment payment : payments) {
+            out.write(paymentWriter.writeValueAsBytes(PaymentResponse.from(payment)));
+            out.write('\n');
+        }
+    }
+}
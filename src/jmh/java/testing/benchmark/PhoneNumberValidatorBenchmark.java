@@ -0,0 +1,42 @@
+package testing.benchmark;
+
+import com.google.i18n.phonenumbers.NumberParseException;
+import org.openjdk.jmh.annotations.*;
+import testing.utils.PhoneNumberValidator;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PhoneNumberValidatorBenchmark {
+
+    private PhoneNumberValidator cachingValidator;
+    private PhoneNumberValidator uncachedValidator;
+
+    @Setup
+    public void setUp() {
+        cachingValidator = new PhoneNumberValidator();
+        // entries expire as soon as they are written, so every call parses the number
+        uncachedValidator = new PhoneNumberValidator(0, Duration.ZERO);
+    }
+
+    @Benchmark
+    public boolean validateCached() throws NumberParseException {
+        return cachingValidator.validate("+34660000000");
+    }
+
+    @Benchmark
+    public boolean validateUncached() throws NumberParseException {
+        return uncachedValidator.validate("+34660000000");
+    }
+
+    @Benchmark
+    public boolean validateUncachedNationalFormat() throws NumberParseException {
+        return uncachedValidator.validate("660 00 00 00");
+    }
+}
@@ -0,0 +1,89 @@
+package testing.benchmark;
+
+import com.google.i18n.phonenumbers.NumberParseException;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import testing.TestingApplication;
+import testing.customer.CustomerRegistrationRequest;
+import testing.customer.CustomerRepository;
+import testing.customer.CustomerService;
+import testing.payment.PaymentRequest;
+import testing.payment.PaymentService;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static testing.payment.Currency.EUR;
+
+/**
+ * Registration and charge hot paths against the in-memory H2 database and MockStripeService.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ServiceBenchmark {
+
+    private static final String CUSTOMER_PHONE_NUMBER = "+34600000000";
+
+    private final AtomicLong phoneNumbers = new AtomicLong();
+
+    private ConfigurableApplicationContext context;
+    private CustomerService customerService;
+    private PaymentService paymentService;
+    private UUID customerId;
+    private PaymentRequest paymentRequest;
+
+    @Setup
+    public void setUp() throws NumberParseException {
+        context = new SpringApplicationBuilder(TestingApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("stripe.mocked=true", "logging.level.root=WARN")
+                .run();
+        customerService = context.getBean(CustomerService.class);
+        paymentService = context.getBean(PaymentService.class);
+
+        customerService.registerNewCustomer(registrationRequest(CUSTOMER_PHONE_NUMBER));
+        customerId = context.getBean(CustomerRepository.class)
+                .findCustomerByPhoneNumber(CUSTOMER_PHONE_NUMBER)
+                .orElseThrow()
+                .getId();
+
+        paymentRequest = PaymentRequest.builder()
+                .paymentMethod("card")
+                .paymentDescription("benchmark")
+                .amount(new BigDecimal(10))
+                .currency(EUR)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void registerNewCustomer() throws NumberParseException {
+        // a new number each time, wrapping around to already registered ones after 10M calls
+        String phoneNumber = String.format("+3466%07d", phoneNumbers.getAndIncrement() % 10_000_000);
+        customerService.registerNewCustomer(registrationRequest(phoneNumber));
+    }
+
+    @Benchmark
+    public void chargePayment() {
+        paymentService.chargePayment(customerId, paymentRequest);
+    }
+
+    private static CustomerRegistrationRequest registrationRequest(String phoneNumber) {
+        return CustomerRegistrationRequest.builder()
+                .name("Benchmark")
+                .phoneNumber(phoneNumber)
+                .build();
+    }
+}
@@ -0,0 +1,36 @@
+package testing;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import testing.customer.CustomerExistenceCache;
+import testing.payment.CardPaymentCharger;
+import testing.payment.IdempotencyService;
+import testing.payment.PaymentArchive;
+import testing.payment.PaymentController;
+import testing.payment.PaymentService;
+import testing.payment.PaymentWriteBehind;
+import testing.payment.event.PaymentEventRelay;
+import testing.ratelimit.RateLimitInterceptor;
+
+@Configuration
+public class StartupConfig {
+
+    // with spring.main.lazy-initialization=true (startup profile) beans are created on first use,
+    // except the charge path, which would otherwise be built while serving the first charge.
+    // Beans with @Scheduled methods must be created eagerly to be scheduled at all
+    @Bean
+    static LazyInitializationExcludeFilter chargePathExcludeFilter() {
+        return LazyInitializationExcludeFilter.forBeanTypes(
+                PaymentController.class,
+                PaymentService.class,
+                CardPaymentCharger.class,
+                CustomerExistenceCache.class,
+                IdempotencyService.class,
+                PaymentWriteBehind.class,
+                PaymentEventRelay.class,
+                PaymentArchive.class,
+                RateLimitInterceptor.class
+        );
+    }
+}
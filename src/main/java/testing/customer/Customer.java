@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import testing.utils.GeneratedUuidV7;
 
 import java.util.UUID;
 
@@ -13,13 +14,20 @@ import java.util.UUID;
 @AllArgsConstructor
 @Builder
 @Entity
+@Table(indexes = {
+        // covers the owner lookups of registration conflicts and the bulk import's existing-customer check, which
+        // read the name and id by phone number, without touching the table rows
+        @Index(name = "idx_customer_phone_number_id_name", columnList = "phone_number, id, name")
+})
 public class Customer {
 
+    // time-ordered so new customers are appended to the primary key index instead of splitting random pages
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedUuidV7
     private UUID id;
     @Column(nullable = false)
     private String name;
+    // always stored in E.164 format, see PhoneNumberValidator#normalize
     @Column(nullable = false, unique = true)
     private String phoneNumber;
 
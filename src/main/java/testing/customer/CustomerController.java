@@ -2,10 +2,13 @@ package testing.customer;
 
 import com.google.i18n.phonenumbers.NumberParseException;
 import lombok.RequiredArgsConstructor;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import testing.ratelimit.RateLimited;
+
+import java.io.IOException;
+import java.io.InputStream;
 
 @RestController
 @RequestMapping("/api/v1/registration")
@@ -13,9 +16,18 @@ import org.springframework.web.bind.annotation.RestController;
 public class CustomerController {
 
     private final CustomerService customerService;
+    private final CustomerImportService customerImportService;
 
     @PostMapping
+    @RateLimited(RateLimited.Key.CLIENT_IP)
     public void registerNewCustomer(@RequestBody CustomerRegistrationRequest request) throws NumberParseException {
         customerService.registerNewCustomer(request);
     }
+
+    @PostMapping(path = "/bulk", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE})
+    @RateLimited(RateLimited.Key.CLIENT_IP)
+    public CustomerImportReport importCustomers(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                                InputStream body) throws IOException {
+        return customerImportService.importCustomers(body, contentType);
+    }
 }
@@ -0,0 +1,131 @@
+package testing.customer;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import testing.replica.ReplicaRouting;
+import testing.utils.BloomFilter;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Answers "does this customer exist?" without hydrating a Customer.
+ * Recently seen ids are kept in a bounded cache; unknown ids are rejected by a Bloom filter of every registered id,
+ * and everything else falls back to an id-only query.
+ * The filter is rebuilt from the table periodically, since customers registered on other instances or inserted
+ * directly never go through {@link #registered}. A miss is only trusted for ids created before the last rebuild
+ * started; time-ordered ids created since then are confirmed by the query, other ids are found after the next rebuild.
+ */
+@Component
+public class CustomerExistenceCache implements MeterBinder {
+
+    //an id is generated before its row commits, and instances' clocks drift apart
+    private static final Duration UNCOMMITTED_ALLOWANCE = Duration.ofMinutes(1);
+
+    private final CustomerRepository customerRepository;
+    private final Cache<UUID, Boolean> knownIds;
+    private final long expectedCustomers;
+    private final double falsePositiveProbability;
+    private final Clock clock;
+    //null until the first load, until then a miss proves nothing
+    private volatile LoadedIds loadedIds;
+    //registrations made during a rebuild go into both filters, so none are lost
+    private volatile BloomFilter rebuilding;
+
+    @Autowired
+    public CustomerExistenceCache(CustomerRepository customerRepository,
+                                  @Value("${customer.existence.cache.max-size:100000}") long maxSize,
+                                  @Value("${customer.existence.expected-customers:1000000}") long expectedCustomers,
+                                  @Value("${customer.existence.false-positive-probability:0.01}") double falsePositiveProbability) {
+        this(customerRepository, maxSize, expectedCustomers, falsePositiveProbability, Clock.systemUTC());
+    }
+
+    CustomerExistenceCache(CustomerRepository customerRepository, long maxSize, long expectedCustomers,
+                           double falsePositiveProbability, Clock clock) {
+        this.customerRepository = customerRepository;
+        this.knownIds = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        this.expectedCustomers = expectedCustomers;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.clock = clock;
+    }
+
+    public boolean exists(UUID customerId) {
+        if (knownIds.getIfPresent(customerId) != null)
+            return true;
+        LoadedIds loaded = loadedIds;
+        if (loaded != null && !loaded.ids().mightContain(customerId) && loaded.completeFor(customerId))
+            return false;
+
+        //a customer registered a moment ago may not be on the replica yet
+        boolean exists = ReplicaRouting.onPrimary(() -> customerRepository.existsById(customerId));
+        if (exists)
+            knownIds.put(customerId, Boolean.TRUE);
+        return exists;
+    }
+
+    public void registered(UUID customerId) {
+        put(customerId);
+        knownIds.put(customerId, Boolean.TRUE);
+    }
+
+    public void registered(Collection<UUID> customerIds) {
+        customerIds.forEach(this::put);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${customer.existence.rebuild-interval:PT10M}",
+            initialDelayString = "${customer.existence.rebuild-interval:PT10M}")
+    @Transactional(readOnly = true)
+    public void loadRegisteredIds() {
+        long startedAt = clock.millis();
+        BloomFilter ids = new BloomFilter(expectedCustomers, falsePositiveProbability);
+        rebuilding = ids;
+        //a replica behind the primary would leave recent customers out of the filter
+        ReplicaRouting.onPrimary(() -> {
+            try (Stream<UUID> registeredIds = customerRepository.streamAllIds()) {
+                registeredIds.forEach(ids::put);
+            }
+            return null;
+        });
+        loadedIds = new LoadedIds(ids, startedAt - UNCOMMITTED_ALLOWANCE.toMillis());
+        rebuilding = null;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, knownIds, "customerExistence");
+    }
+
+    private void put(UUID customerId) {
+        LoadedIds loaded = loadedIds;
+        if (loaded != null)
+            loaded.ids().put(customerId);
+        BloomFilter next = rebuilding;
+        if (next != null)
+            next.put(customerId);
+    }
+
+    private record LoadedIds(BloomFilter ids, long completeBeforeMillis) {
+
+        //ids are UUIDv7, their first 48 bits are the creation time in epoch milliseconds
+        boolean completeFor(UUID customerId) {
+            return customerId.version() != 7 || (customerId.getMostSignificantBits() >>> 16) < completeBeforeMillis;
+        }
+    }
+}
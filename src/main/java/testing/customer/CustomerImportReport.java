@@ -0,0 +1,37 @@
+package testing.customer;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@ToString
+public class CustomerImportReport {
+
+    // the report must not grow with the upload, only the first rejections are detailed
+    static final int MAX_DETAILED_REJECTIONS = 1000;
+
+    private long created;
+    private long alreadyRegistered;
+    private long rejected;
+    private final List<Rejection> rejections = new ArrayList<>();
+
+    void created() {
+        created++;
+    }
+
+    void alreadyRegistered() {
+        alreadyRegistered++;
+    }
+
+    void rejected(long line, String phoneNumber, String reason) {
+        rejected++;
+        if (rejections.size() < MAX_DETAILED_REJECTIONS)
+            rejections.add(new Rejection(line, phoneNumber, reason));
+    }
+
+    public record Rejection(long line, String phoneNumber, String reason) {
+    }
+}
@@ -0,0 +1,192 @@
+package testing.customer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.i18n.phonenumbers.NumberParseException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import testing.utils.PhoneNumberValidator;
+import testing.utils.UuidV7;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+public class CustomerImportService {
+
+    public static final MediaType TEXT_CSV = MediaType.valueOf("text/csv");
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String CSV_HEADER = "name,phoneNumber";
+
+    private final CustomerRepository customerRepository;
+    private final PhoneNumberValidator phoneValidator;
+    private final CustomerExistenceCache customerExistenceCache;
+    private final int chunkSize;
+
+    public CustomerImportService(CustomerRepository customerRepository,
+                                 PhoneNumberValidator phoneValidator,
+                                 CustomerExistenceCache customerExistenceCache,
+                                 @Value("${customer.import.chunk-size:1000}") int chunkSize) {
+        this.customerRepository = customerRepository;
+        this.phoneValidator = phoneValidator;
+        this.customerExistenceCache = customerExistenceCache;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Imports a CSV ({@code name,phoneNumber}) or NDJSON ({@code {"name":..,"phoneNumber":..}}) upload,
+     * reading it chunk by chunk so memory does not depend on the size of the upload.
+     */
+    public CustomerImportReport importCustomers(InputStream body, MediaType contentType) throws IOException {
+        boolean csv = TEXT_CSV.isCompatibleWith(contentType);
+        if (!csv && !MediaType.APPLICATION_NDJSON.isCompatibleWith(contentType))
+            throw new IllegalArgumentException(String.format("Content type [%s] not supported", contentType));
+
+        CustomerImportReport report = new CustomerImportReport();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+
+        List<ImportRow> chunk = new ArrayList<>(chunkSize);
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || (csv && lineNumber == 1 && line.strip().equalsIgnoreCase(CSV_HEADER)))
+                continue;
+
+            ImportRow row = csv ? parseCsv(lineNumber, line) : parseJson(lineNumber, line);
+            if (row == null) {
+                report.rejected(lineNumber, null, "Malformed line");
+                continue;
+            }
+
+            chunk.add(row);
+            if (chunk.size() == chunkSize) {
+                importChunk(chunk, report);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty())
+            importChunk(chunk, report);
+
+        return report;
+    }
+
+    private void importChunk(List<ImportRow> chunk, CustomerImportReport report) {
+        //libphonenumber parsing is the CPU heavy part
+        List<ImportRow> validated = chunk.parallelStream()
+                .map(this::normalize)
+                .toList();
+
+        //de-duplicate within the chunk, the first occurrence of a number wins
+        Map<String, ImportRow> candidates = new LinkedHashMap<>();
+        for (ImportRow row : validated) {
+            if (!hasName(row)) {
+                report.rejected(row.line(), row.phoneNumber(), "Name is missing");
+                continue;
+            }
+            if (row.normalizedPhoneNumber() == null) {
+                report.rejected(row.line(), row.phoneNumber(), "Phone number is not valid");
+                continue;
+            }
+            ImportRow first = candidates.putIfAbsent(row.normalizedPhoneNumber(), row);
+            if (first != null) {
+                if (first.name().equals(row.name()))
+                    report.alreadyRegistered();
+                else
+                    report.rejected(row.line(), row.phoneNumber(), "Phone number is duplicated in the upload");
+            }
+        }
+        if (candidates.isEmpty())
+            return;
+
+        //...and against the customers already registered, in one query per chunk
+        Map<String, CustomerSummary> existing = customerRepository
+                .findSummariesByPhoneNumbers(candidates.keySet()).stream()
+                .collect(Collectors.toMap(CustomerSummary::getPhoneNumber, Function.identity()));
+
+        List<ImportRow> newRows = new ArrayList<>(candidates.size());
+        for (ImportRow row : candidates.values()) {
+            CustomerSummary customer = existing.get(row.normalizedPhoneNumber());
+            if (customer == null)
+                newRows.add(row);
+            else if (customer.getName().equals(row.name()))
+                report.alreadyRegistered();
+            else
+                report.rejected(row.line(), row.phoneNumber(), "Phone number is already taken");
+        }
+        if (newRows.isEmpty())
+            return;
+
+        List<Customer> customers = newRows.stream()
+                .map(row -> new Customer(UuidV7.randomUuid(), row.name(), row.normalizedPhoneNumber()))
+                .toList();
+        RegistrationOutcome[] outcomes = customerRepository.registerAll(customers);
+        List<UUID> createdIds = new ArrayList<>(customers.size());
+        for (int i = 0; i < outcomes.length; i++) {
+            //a concurrent registration may have taken the number since the lookup
+            switch (outcomes[i]) {
+                case CREATED -> {
+                    report.created();
+                    createdIds.add(customers.get(i).getId());
+                }
+                case ALREADY_REGISTERED -> report.alreadyRegistered();
+                case PHONE_NUMBER_TAKEN -> report.rejected(newRows.get(i).line(), newRows.get(i).phoneNumber(),
+                        "Phone number is already taken");
+            }
+        }
+        customerExistenceCache.registered(createdIds);
+    }
+
+    private ImportRow normalize(ImportRow row) {
+        //rows without a name are rejected anyway, no point parsing their number
+        if (!hasName(row) || row.phoneNumber() == null)
+            return row;
+        try {
+            Optional<String> normalized = phoneValidator.normalize(row.phoneNumber());
+            return normalized.map(row::withNormalizedPhoneNumber).orElse(row);
+        } catch (NumberParseException e) {
+            return row;
+        }
+    }
+
+    private static boolean hasName(ImportRow row) {
+        return row.name() != null && !row.name().isBlank();
+    }
+
+    private static ImportRow parseCsv(long line, String text) {
+        //the phone number is the last column, names may contain commas
+        int separator = text.lastIndexOf(',');
+        if (separator < 0)
+            return null;
+        return new ImportRow(line, text.substring(0, separator).strip(), text.substring(separator + 1).strip(), null);
+    }
+
+    private static ImportRow parseJson(long line, String text) {
+        try {
+            JsonNode node = OBJECT_MAPPER.readTree(text);
+            return new ImportRow(line, node.path("name").asText(null), node.path("phoneNumber").asText(null), null);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private record ImportRow(long line, String name, String phoneNumber, String normalizedPhoneNumber) {
+
+        ImportRow withNormalizedPhoneNumber(String normalizedPhoneNumber) {
+            return new ImportRow(line, name, phoneNumber, normalizedPhoneNumber);
+        }
+    }
+}
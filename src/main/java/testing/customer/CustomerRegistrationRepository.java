@@ -0,0 +1,17 @@
+package testing.customer;
+
+import java.util.List;
+
+public interface CustomerRegistrationRepository {
+
+    /**
+     * Inserts the customer unless its phone number is already registered, in one atomic statement.
+     */
+    RegistrationOutcome register(Customer customer);
+
+    /**
+     * Batched insert-if-absent: the outcome of each customer, classified like {@link #register} when its phone
+     * number was registered in the meantime.
+     */
+    RegistrationOutcome[] registerAll(List<Customer> customers);
+}
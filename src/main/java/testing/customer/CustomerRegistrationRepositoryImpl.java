@@ -0,0 +1,123 @@
+package testing.customer;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import testing.utils.SqlDialect;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+class CustomerRegistrationRepositoryImpl implements CustomerRegistrationRepository {
+
+    private static final String MERGE_IF_ABSENT = """
+            MERGE INTO customer c
+            USING (VALUES (CAST(? AS UUID), CAST(? AS VARCHAR), CAST(? AS VARCHAR))) s(id, name, phone_number)
+            ON c.phone_number = s.phone_number
+            WHEN NOT MATCHED THEN INSERT (id, name, phone_number) VALUES (s.id, s.name, s.phone_number)
+            """;
+
+    private static final String INSERT_ON_CONFLICT = """
+            INSERT INTO customer (id, name, phone_number) VALUES (?, ?, ?)
+            ON CONFLICT (phone_number) DO NOTHING
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile String insertIfAbsentSql;
+
+    CustomerRegistrationRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public RegistrationOutcome register(Customer customer) {
+        int inserted;
+        try {
+            inserted = jdbcTemplate.update(insertIfAbsentSql(),
+                    customer.getId(), customer.getName(), customer.getPhoneNumber());
+        } catch (DuplicateKeyException e) {
+            //a concurrent registration of the same number committed first
+            inserted = 0;
+        }
+
+        if (inserted == 1)
+            return RegistrationOutcome.CREATED;
+
+        //only conflicting registrations pay for a second round trip
+        String owner = jdbcTemplate.queryForObject(
+                "SELECT name FROM customer WHERE phone_number = ?", String.class, customer.getPhoneNumber());
+        return customer.getName().equals(owner)
+                ? RegistrationOutcome.ALREADY_REGISTERED
+                : RegistrationOutcome.PHONE_NUMBER_TAKEN;
+    }
+
+    @Override
+    public RegistrationOutcome[] registerAll(List<Customer> customers) {
+        int[][] counts = jdbcTemplate.batchUpdate(insertIfAbsentSql(), customers, customers.size(),
+                (ps, customer) -> {
+                    ps.setObject(1, customer.getId());
+                    ps.setString(2, customer.getName());
+                    ps.setString(3, customer.getPhoneNumber());
+                });
+
+        RegistrationOutcome[] outcomes = new RegistrationOutcome[customers.size()];
+        List<Customer> unresolved = new ArrayList<>();
+        int i = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                //drivers that rewrite batches report SUCCESS_NO_INFO without telling whether a row was inserted
+                if (count > 0 && count != Statement.SUCCESS_NO_INFO)
+                    outcomes[i] = RegistrationOutcome.CREATED;
+                else
+                    unresolved.add(customers.get(i));
+                i++;
+            }
+        }
+        if (unresolved.isEmpty())
+            return outcomes;
+
+        //only conflicting or unreported rows pay for a second round trip, one for all of them
+        Map<String, Customer> owners = findOwners(unresolved);
+        for (int j = 0; j < outcomes.length; j++) {
+            if (outcomes[j] == null)
+                outcomes[j] = outcome(customers.get(j), owners.get(customers.get(j).getPhoneNumber()));
+        }
+        return outcomes;
+    }
+
+    private Map<String, Customer> findOwners(List<Customer> customers) {
+        String placeholders = String.join(",", Collections.nCopies(customers.size(), "?"));
+        Map<String, Customer> owners = new HashMap<>();
+        jdbcTemplate.query("SELECT id, name, phone_number FROM customer WHERE phone_number IN (" + placeholders + ")",
+                rs -> {
+                    Customer owner = new Customer(rs.getObject("id", UUID.class), rs.getString("name"),
+                            rs.getString("phone_number"));
+                    owners.put(owner.getPhoneNumber(), owner);
+                },
+                customers.stream().map(Customer::getPhoneNumber).toArray());
+        return owners;
+    }
+
+    private static RegistrationOutcome outcome(Customer customer, Customer owner) {
+        //our own row, inserted but not reported
+        if (owner != null && owner.getId().equals(customer.getId()))
+            return RegistrationOutcome.CREATED;
+        return owner != null && customer.getName().equals(owner.getName())
+                ? RegistrationOutcome.ALREADY_REGISTERED
+                : RegistrationOutcome.PHONE_NUMBER_TAKEN;
+    }
+
+    private String insertIfAbsentSql() {
+        if (insertIfAbsentSql == null) {
+            insertIfAbsentSql = switch (SqlDialect.of(jdbcTemplate.getDataSource())) {
+                case H2 -> MERGE_IF_ABSENT;
+                case POSTGRESQL -> INSERT_ON_CONFLICT;
+            };
+        }
+        return insertIfAbsentSql;
+    }
+}
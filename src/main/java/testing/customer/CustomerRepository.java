@@ -1,13 +1,20 @@
 package testing.customer;
 
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
-public interface CustomerRepository extends JpaRepository<Customer, UUID> {
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+
+public interface CustomerRepository extends JpaRepository<Customer, UUID>, CustomerRegistrationRepository {
 
     boolean existsCustomerByPhoneNumber(String phoneNumber);
 
@@ -23,4 +30,14 @@ public interface CustomerRepository extends JpaRepository<Customer, UUID> {
     )
     Optional<Customer> findCustomerByPhoneNumber(String phoneNumber);
 
+    @Query(
+            value = "SELECT c.id AS id, c.name AS name, c.phoneNumber AS phoneNumber " +
+                    "FROM Customer c WHERE c.phoneNumber IN :phoneNumbers"
+    )
+    List<CustomerSummary> findSummariesByPhoneNumbers(@Param("phoneNumbers") Collection<String> phoneNumbers);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT c.id FROM Customer c")
+    Stream<UUID> streamAllIds();
+
 }
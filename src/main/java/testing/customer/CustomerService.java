@@ -1,9 +1,12 @@
 package testing.customer;
 
 import com.google.i18n.phonenumbers.NumberParseException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import testing.utils.PhoneNumberValidator;
+import testing.utils.UuidV7;
 
 import java.util.Optional;
 
@@ -13,35 +16,56 @@ public class CustomerService {
 
     private final CustomerRepository customerRepository;
     private final PhoneNumberValidator phoneValidator;
+    private final CustomerExistenceCache customerExistenceCache;
+    private final MeterRegistry meterRegistry;
 
     public void registerNewCustomer(CustomerRegistrationRequest request) throws NumberParseException {
         if (request == null) {
             throw new IllegalArgumentException("Customer cannot be null");
         }
 
-        if (!phoneValidator.validate(request.getPhoneNumber()))
-            throw new IllegalArgumentException(String.format("Phone number [%s] is not valid", request.getPhoneNumber()));
-
-        //check if phoneNumber already exists
-        String phoneNumber = request.getPhoneNumber();
+        //numbers are compared and stored in E.164 so "+34 600..." and "600..." are the same customer
+        Optional<String> normalized = timeStage("validate", () -> phoneValidator.normalize(request.getPhoneNumber()));
+        if (normalized.isEmpty()) {
+            countRejection("invalid_phone_number");
+            throw new IllegalArgumentException(
+                    String.format("Phone number [%s] is not valid", request.getPhoneNumber()));
+        }
+        String phoneNumber = normalized.get();
 
-        Optional<Customer> optionalCustomer =
-                customerRepository.findCustomerByPhoneNumberNative(phoneNumber);
+        //insert-if-absent: one round trip, and no race between the check and the insert
+        Customer customer = new Customer(UuidV7.randomUuid(), request.getName(), phoneNumber);
+        RegistrationOutcome outcome = timeStage("register", () -> customerRepository.register(customer));
+        if (outcome == RegistrationOutcome.CREATED)
+            customerExistenceCache.registered(customer.getId());
 
-        if (optionalCustomer.isPresent()) {
-            //check if phone number belongs to the same customer comparing by name
-            if (optionalCustomer.get().getName().equals(request.getName()))
-                return;
+        //an existing phone number is fine as long as it belongs to the same customer (by name)
+        if (outcome == RegistrationOutcome.PHONE_NUMBER_TAKEN) {
+            countRejection("phone_number_taken");
             throw new IllegalArgumentException(String.format(
                     "Phone number [%s] is already taken", phoneNumber));
         }
 
-        customerRepository.save(Customer.builder()
-                .name(request.getName())
-                .phoneNumber(request.getPhoneNumber())
-                .build()
-        );
+    }
 
+    private <T, E extends Exception> T timeStage(String name, Stage<T, E> stage) throws E {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return stage.call();
+        } finally {
+            sample.stop(Timer.builder("customer.registration.stage")
+                    .description("Latency of each stage of a customer registration")
+                    .tag("stage", name)
+                    .register(meterRegistry));
+        }
     }
 
+    private void countRejection(String reason) {
+        meterRegistry.counter("customer.registration.rejected", "reason", reason).increment();
+    }
+
+    @FunctionalInterface
+    private interface Stage<T, E extends Exception> {
+        T call() throws E;
+    }
 }
@@ -0,0 +1,11 @@
+package testing.customer;
+
+import java.util.UUID;
+
+public interface CustomerSummary {
+    UUID getId();
+
+    String getName();
+
+    String getPhoneNumber();
+}
@@ -0,0 +1,7 @@
+package testing.customer;
+
+public enum RegistrationOutcome {
+    CREATED,
+    ALREADY_REGISTERED,
+    PHONE_NUMBER_TAKEN
+}
@@ -0,0 +1,55 @@
+package testing.payment;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Timeout that follows the p99 latency of the last {@code sampleSize} calls times {@code multiplier},
+ * kept between {@code min} and {@code max}. Until enough calls were seen it stays at {@code max}.
+ */
+class AdaptiveTimeout {
+
+    //recomputing on every call would sort the samples each time
+    private static final int RECOMPUTE_EVERY = 10;
+
+    private final long[] samples;
+    private final long minNanos;
+    private final long maxNanos;
+    private final double multiplier;
+    private int index;
+    private long recorded;
+    private volatile long timeoutNanos;
+
+    AdaptiveTimeout(int sampleSize, Duration min, Duration max, double multiplier) {
+        if (sampleSize < RECOMPUTE_EVERY)
+            throw new IllegalArgumentException(
+                    String.format("Sample size must be at least %d", RECOMPUTE_EVERY));
+        if (min.compareTo(max) > 0)
+            throw new IllegalArgumentException(
+                    String.format("Minimum timeout [%s] is greater than maximum timeout [%s]", min, max));
+        this.samples = new long[sampleSize];
+        this.minNanos = min.toNanos();
+        this.maxNanos = max.toNanos();
+        this.multiplier = multiplier;
+        this.timeoutNanos = maxNanos;
+    }
+
+    synchronized void record(long latencyNanos) {
+        samples[index] = latencyNanos;
+        index = (index + 1) % samples.length;
+        recorded++;
+        if (recorded >= samples.length && recorded % RECOMPUTE_EVERY == 0)
+            recompute();
+    }
+
+    Duration current() {
+        return Duration.ofNanos(timeoutNanos);
+    }
+
+    private void recompute() {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        long p99 = sorted[(int) Math.ceil(0.99 * sorted.length) - 1];
+        timeoutNanos = Math.clamp((long) (p99 * multiplier), minNanos, maxNanos);
+    }
+}
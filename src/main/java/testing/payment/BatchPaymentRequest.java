@@ -0,0 +1,17 @@
+package testing.payment;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.UUID;
+
+@Getter
+@Setter
+@Builder
+@ToString
+public class BatchPaymentRequest {
+    private UUID customerId;
+    private PaymentRequest payment;
+}
@@ -0,0 +1,23 @@
+package testing.payment;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BatchPaymentResult {
+    private UUID customerId;
+    private Long paymentId;
+    private boolean charged;
+    private String error;
+
+    static BatchPaymentResult rejected(UUID customerId, String error) {
+        return new BatchPaymentResult(customerId, null, false, error);
+    }
+}
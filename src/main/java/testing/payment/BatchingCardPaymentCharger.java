@@ -0,0 +1,160 @@
+package testing.payment;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Groups charges arriving close together into one {@link CardPaymentCharger#chargeCardsAsync} call.
+ * A batch is sent once it holds {@code maxBatchSize} charges or {@code window} after its first charge, whichever
+ * comes first, so a lone charge waits at most the window. Every charge keeps its own future: one failing charge
+ * does not fail the rest of its batch, and a charge cancelled while queued is not sent.
+ */
+public class BatchingCardPaymentCharger implements CardPaymentCharger {
+
+    private final CardPaymentCharger delegate;
+    private final int maxBatchSize;
+    private final Executor windowTimer;
+    private final DistributionSummary batchSizes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private List<QueuedCharge> queued = new ArrayList<>();
+    private CompletableFuture<Void> scheduledFlush;
+
+    public BatchingCardPaymentCharger(CardPaymentCharger delegate, Duration window, int maxBatchSize,
+                                      MeterRegistry meterRegistry) {
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException(
+                    String.format("Batch size must be at least 1, got [%d]", maxBatchSize));
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.windowTimer = CompletableFuture.delayedExecutor(window.toNanos(), TimeUnit.NANOSECONDS);
+        this.batchSizes = DistributionSummary.builder("payment.charger.batch.size")
+                .description("Charges sent to the card provider per batch")
+                .tag("charger", delegate.name())
+                .register(meterRegistry);
+    }
+
+    @Override
+    public CardPaymentCharge chargeCard(String method, Money amount, String description) {
+        CompletableFuture<CardPaymentCharge> charge = chargeCardAsync(method, amount, description);
+        try {
+            return charge.get();
+        } catch (InterruptedException e) {
+            charge.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while charging card", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw new IllegalStateException("Can not charge card", e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<CardPaymentCharge> chargeCardAsync(String method, Money amount, String description) {
+        return chargeCardAsync(method, amount, description, null);
+    }
+
+    @Override
+    public CompletableFuture<CardPaymentCharge> chargeCardAsync(String method, Money amount, String description,
+                                                                String idempotencyKey) {
+        QueuedCharge charge = new QueuedCharge(new CardChargeRequest(method, amount, description, idempotencyKey));
+        List<QueuedCharge> full = null;
+        lock.lock();
+        try {
+            queued.add(charge);
+            if (queued.size() >= maxBatchSize)
+                full = takeQueued();
+            else if (queued.size() == 1)
+                scheduledFlush = CompletableFuture.runAsync(this::flush, windowTimer);
+        } finally {
+            lock.unlock();
+        }
+        if (full != null)
+            send(full);
+        return charge.result;
+    }
+
+    @Override
+    public boolean supports(Currency currency) {
+        return delegate.supports(currency);
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+
+    /**
+     * Sends whatever is queued without waiting for the window to end.
+     */
+    void flush() {
+        List<QueuedCharge> batch;
+        lock.lock();
+        try {
+            batch = takeQueued();
+        } finally {
+            lock.unlock();
+        }
+        send(batch);
+    }
+
+    private List<QueuedCharge> takeQueued() {
+        List<QueuedCharge> batch = queued;
+        queued = new ArrayList<>();
+        //a cancelled flush does not run, so it cannot cut the window of the next batch short
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void send(List<QueuedCharge> batch) {
+        List<QueuedCharge> live = batch.stream().filter(charge -> !charge.result.isDone()).toList();
+        if (live.isEmpty())
+            return;
+
+        batchSizes.record(live.size());
+        List<CompletableFuture<CardPaymentCharge>> charges;
+        try {
+            charges = delegate.chargeCardsAsync(live.stream().map(QueuedCharge::request).toList());
+        } catch (RuntimeException e) {
+            live.forEach(charge -> charge.result.completeExceptionally(e));
+            return;
+        }
+
+        for (int i = 0; i < live.size(); i++) {
+            CompletableFuture<CardPaymentCharge> result = live.get(i).result;
+            CompletableFuture<CardPaymentCharge> charge = charges.get(i);
+            charge.whenComplete((cardPaymentCharge, e) -> {
+                if (e == null)
+                    result.complete(cardPaymentCharge);
+                else
+                    result.completeExceptionally(e instanceof CompletionException && e.getCause() != null
+                            ? e.getCause() : e);
+            });
+            //the caller giving up cancels its own charge only
+            result.whenComplete((cardPaymentCharge, e) -> {
+                if (result.isCancelled())
+                    charge.cancel(true);
+            });
+        }
+    }
+
+    private record QueuedCharge(CardChargeRequest request, CompletableFuture<CardPaymentCharge> result) {
+        QueuedCharge(CardChargeRequest request) {
+            this(request, new CompletableFuture<>());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package testing.payment;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A virtual thread per task, with at most {@code maxConcurrency} of them running at once.
+ * Tasks over the bound wait on a semaphore in their own virtual thread, which costs a few hundred bytes instead of
+ * a queued platform thread, so the bound is about what downstream can take, not about what threads cost.
+ */
+class BoundedVirtualExecutor extends AbstractExecutorService {
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    BoundedVirtualExecutor(int maxConcurrency, String namePrefix) {
+        if (maxConcurrency < 1)
+            throw new IllegalArgumentException(String.format("Concurrency [%d] must be positive", maxConcurrency));
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory());
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                //shut down now while waiting for a permit
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
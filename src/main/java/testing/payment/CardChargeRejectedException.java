@@ -0,0 +1,12 @@
+package testing.payment;
+
+/**
+ * The charge was refused before reaching the provider, e.g. because its circuit is open,
+ * so the card was certainly not debited.
+ */
+public class CardChargeRejectedException extends IllegalStateException {
+
+    public CardChargeRejectedException(String message) {
+        super(message);
+    }
+}
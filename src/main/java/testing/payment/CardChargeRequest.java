@@ -0,0 +1,11 @@
+package testing.payment;
+
+/**
+ * One charge of a {@link CardPaymentCharger#chargeCardsAsync batch}.
+ */
+public record CardChargeRequest(String method, Money amount, String description, String idempotencyKey) {
+
+    public CardChargeRequest(String method, Money amount, String description) {
+        this(method, amount, description, null);
+    }
+}
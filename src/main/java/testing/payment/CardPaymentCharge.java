@@ -9,4 +9,10 @@ import lombok.Data;
 @Builder
 public class CardPaymentCharge {
     private boolean isCardDebited;
+    //the provider that made the charge when several are routed to, null when there is only one
+    private String charger;
+
+    public CardPaymentCharge(boolean isCardDebited) {
+        this(isCardDebited, null);
+    }
 }
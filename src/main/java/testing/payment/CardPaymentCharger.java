@@ -1,13 +1,64 @@
 package testing.payment;
 
-import java.math.BigDecimal;
+import org.springframework.aop.support.AopUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface CardPaymentCharger {
 
     CardPaymentCharge chargeCard (
             String method,
-            BigDecimal amount,
-            Currency currency,
+            Money amount,
+            String description
+    );
+
+    /**
+     * Non-blocking variant of {@link #chargeCard}. Cancelling the returned future
+     * cancels the underlying request when the implementation supports it.
+     */
+    CompletableFuture<CardPaymentCharge> chargeCardAsync (
+            String method,
+            Money amount,
             String description
     );
+
+    /**
+     * Like {@link #chargeCardAsync(String, Money, String)}, charging at most once per idempotency key with providers
+     * that support it, so retrying a charge that timed out returns the original charge instead of debiting the card
+     * again. Without a key (null) the provider makes up one per call. Ignored by default.
+     */
+    default CompletableFuture<CardPaymentCharge> chargeCardAsync (
+            String method,
+            Money amount,
+            String description,
+            String idempotencyKey
+    ) {
+        return chargeCardAsync(method, amount, description);
+    }
+
+    /**
+     * Sends several charges at once, one future per charge in the same order, each completing on its own.
+     * Providers with a batch API override this to make a single round trip, by default the charges are sent one by one.
+     */
+    default List<CompletableFuture<CardPaymentCharge>> chargeCardsAsync(List<CardChargeRequest> charges) {
+        return charges.stream()
+                .map(charge -> chargeCardAsync(
+                        charge.method(), charge.amount(), charge.description(), charge.idempotencyKey()))
+                .toList();
+    }
+
+    /**
+     * Whether charges in this currency can be made, all currencies by default.
+     */
+    default boolean supports(Currency currency) {
+        return true;
+    }
+
+    /**
+     * Identifies the charger in metrics, the implementation class by default.
+     */
+    default String name() {
+        return AopUtils.getTargetClass(this).getSimpleName();
+    }
 }
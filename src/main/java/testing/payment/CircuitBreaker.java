@@ -0,0 +1,108 @@
+package testing.payment;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Count based circuit breaker over the last {@code windowSize} calls.
+ * A call is unhealthy when it fails or takes at least {@code slowCallThreshold}; once the window is full and the
+ * share of unhealthy calls reaches {@code unhealthyRateThreshold} the circuit opens and every call is refused for
+ * {@code openDuration}. Then {@code halfOpenCalls} trial calls decide whether it closes again or reopens.
+ */
+class CircuitBreaker {
+
+    enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final int windowSize;
+    private final double unhealthyRateThreshold;
+    private final long slowCallThresholdNanos;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+    private final LongSupplier nanoTime;
+
+    //ring of the outcomes of the last windowSize calls
+    private final boolean[] unhealthy;
+    private int index;
+    private int calls;
+    private int unhealthyCalls;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    CircuitBreaker(int windowSize, double unhealthyRateThreshold, Duration slowCallThreshold,
+                   Duration openDuration, int halfOpenCalls, LongSupplier nanoTime) {
+        if (windowSize < 1 || halfOpenCalls < 1)
+            throw new IllegalArgumentException("Window size and half open calls must be positive");
+        this.windowSize = windowSize;
+        this.unhealthyRateThreshold = unhealthyRateThreshold;
+        this.slowCallThresholdNanos = slowCallThreshold.toNanos();
+        this.openDurationNanos = openDuration.toNanos();
+        this.halfOpenCalls = halfOpenCalls;
+        this.nanoTime = nanoTime;
+        this.unhealthy = new boolean[windowSize];
+    }
+
+    /**
+     * Whether a call may go through; every permitted call must report its outcome with {@link #onResult}.
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (nanoTime.getAsLong() - openedAt < openDurationNanos)
+                return false;
+            state = State.HALF_OPEN;
+            halfOpenPermits = halfOpenCalls;
+            halfOpenSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0)
+                return false;
+            halfOpenPermits--;
+        }
+        return true;
+    }
+
+    synchronized void onResult(boolean failed, long latencyNanos) {
+        boolean unhealthyCall = failed || latencyNanos >= slowCallThresholdNanos;
+        switch (state) {
+            case HALF_OPEN -> {
+                if (unhealthyCall)
+                    open();
+                else if (++halfOpenSuccesses == halfOpenCalls)
+                    reset(State.CLOSED);
+            }
+            case CLOSED -> {
+                if (calls == windowSize && unhealthy[index])
+                    unhealthyCalls--;
+                unhealthy[index] = unhealthyCall;
+                if (unhealthyCall)
+                    unhealthyCalls++;
+                index = (index + 1) % windowSize;
+                calls = Math.min(calls + 1, windowSize);
+
+                if (calls == windowSize && unhealthyCalls >= unhealthyRateThreshold * windowSize)
+                    open();
+            }
+            //calls started before the circuit opened do not count
+            case OPEN -> {
+            }
+        }
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    private void open() {
+        reset(State.OPEN);
+        openedAt = nanoTime.getAsLong();
+    }
+
+    private void reset(State newState) {
+        state = newState;
+        index = 0;
+        calls = 0;
+        unhealthyCalls = 0;
+    }
+}
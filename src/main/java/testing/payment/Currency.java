@@ -1,7 +1,15 @@
 package testing.payment;
 
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
 public enum Currency {
-    USD,
-    EUR,
-    GBP
+    USD(2),
+    EUR(2),
+    GBP(2);
+
+    // digits after the decimal point, i.e. 2 when amounts are counted in cents
+    private final int fractionDigits;
 }
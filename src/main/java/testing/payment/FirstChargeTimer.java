@@ -0,0 +1,48 @@
+package testing.payment;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Time from JVM start to the first successful charge: what a freshly scaled out instance really costs, startup plus
+ * the lazily created beans and the still interpreted code on the first charge.
+ */
+@Slf4j
+@Component
+public class FirstChargeTimer implements MeterBinder {
+
+    private final LongSupplier uptimeMillis;
+    private final AtomicLong firstChargeMillis = new AtomicLong(-1);
+
+    public FirstChargeTimer() {
+        this(() -> ManagementFactory.getRuntimeMXBean().getUptime());
+    }
+
+    FirstChargeTimer(LongSupplier uptimeMillis) {
+        this.uptimeMillis = uptimeMillis;
+    }
+
+    public void chargeSucceeded() {
+        if (firstChargeMillis.get() >= 0)
+            return;
+        long uptime = uptimeMillis.getAsLong();
+        if (firstChargeMillis.compareAndSet(-1, uptime))
+            log.info("First successful charge {} ms after JVM start", uptime);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("payment.first_charge.time", firstChargeMillis,
+                        millis -> millis.get() < 0 ? Double.NaN : millis.get() / 1000.0)
+                .description("Time from JVM start to the first successful charge")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+}
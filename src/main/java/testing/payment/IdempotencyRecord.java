@@ -0,0 +1,42 @@
+package testing.payment;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+public class IdempotencyRecord {
+
+    public enum Status {
+        //claimed by a request that is charging the card right now
+        PENDING,
+        COMPLETED
+    }
+
+    @Id
+    private String idempotencyKey;
+    @Column(nullable = false)
+    private UUID customerId;
+    //a key reused for a different payment must not return the first one
+    @Column(nullable = false)
+    private String requestHash;
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status;
+    private Long paymentId;
+    @Column(nullable = false)
+    private Instant createdAt;
+}
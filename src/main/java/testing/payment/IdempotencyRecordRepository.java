@@ -0,0 +1,73 @@
+package testing.payment;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    /**
+     * Claims the key, failing with a duplicate key when another request (on any instance) claimed it first.
+     * A plain insert, unlike save, which would overwrite the existing record.
+     */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = """
+            INSERT INTO idempotency_record (idempotency_key, customer_id, request_hash, status, created_at)
+            VALUES (:key, :customerId, :requestHash, 'PENDING', :claimedAt)
+            """)
+    int insertPending(@Param("key") String key,
+                      @Param("customerId") UUID customerId,
+                      @Param("requestHash") String requestHash,
+                      @Param("claimedAt") Instant claimedAt);
+
+    /**
+     * Claims a key whose record expired, or whose claim was abandoned by a request that never completed it.
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            UPDATE IdempotencyRecord r
+            SET r.customerId = :customerId, r.requestHash = :requestHash,
+                r.status = testing.payment.IdempotencyRecord.Status.PENDING, r.paymentId = NULL,
+                r.createdAt = :claimedAt
+            WHERE r.idempotencyKey = :key
+            AND (r.createdAt < :expiredBefore
+                 OR (r.status = testing.payment.IdempotencyRecord.Status.PENDING AND r.createdAt < :abandonedBefore))
+            """)
+    int takeOver(@Param("key") String key,
+                 @Param("customerId") UUID customerId,
+                 @Param("requestHash") String requestHash,
+                 @Param("claimedAt") Instant claimedAt,
+                 @Param("expiredBefore") Instant expiredBefore,
+                 @Param("abandonedBefore") Instant abandonedBefore);
+
+    //the claim time fences off a request whose claim was taken over meanwhile
+    @Transactional
+    @Modifying
+    @Query("""
+            UPDATE IdempotencyRecord r
+            SET r.status = testing.payment.IdempotencyRecord.Status.COMPLETED, r.paymentId = :paymentId
+            WHERE r.idempotencyKey = :key AND r.createdAt = :claimedAt
+            """)
+    int complete(@Param("key") String key, @Param("claimedAt") Instant claimedAt, @Param("paymentId") Long paymentId);
+
+    @Transactional
+    @Modifying
+    @Query("""
+            DELETE FROM IdempotencyRecord r
+            WHERE r.idempotencyKey = :key AND r.createdAt = :claimedAt
+            AND r.status = testing.payment.IdempotencyRecord.Status.PENDING
+            """)
+    int release(@Param("key") String key, @Param("claimedAt") Instant claimedAt);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") Instant cutoff);
+}
@@ -0,0 +1,212 @@
+package testing.payment;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import testing.replica.ReplicaRouting;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Runs a charge at most once per Idempotency-Key, across every instance sharing the database.
+ * A request claims the key by inserting a PENDING record before charging and completes it with the payment
+ * afterwards; duplicates on other instances poll the record until it completes, duplicates on this instance wait
+ * for the first request in memory. A claim that is never completed (the instance died mid-charge) is taken over
+ * after payment.idempotency.pending-timeout.
+ */
+@Slf4j
+@Service
+public class IdempotencyService {
+
+    static final int MAX_KEY_LENGTH = 255;
+    private static final Duration MIN_POLL_INTERVAL = Duration.ofMillis(10);
+    private static final Duration MAX_POLL_INTERVAL = Duration.ofMillis(500);
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final Duration ttl;
+    private final Duration pendingTimeout;
+    private final Clock clock;
+    private final ConcurrentMap<String, CompletableFuture<IdempotencyRecord>> inFlight = new ConcurrentHashMap<>();
+
+    @Autowired
+    public IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository,
+                              @Value("${payment.idempotency.ttl:24h}") Duration ttl,
+                              @Value("${payment.idempotency.pending-timeout:PT1M}") Duration pendingTimeout) {
+        this(idempotencyRecordRepository, ttl, pendingTimeout, Clock.systemUTC());
+    }
+
+    IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository, Duration ttl, Duration pendingTimeout,
+                       Clock clock) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.ttl = ttl;
+        this.pendingTimeout = pendingTimeout;
+        this.clock = clock;
+    }
+
+    public IdempotencyRecord execute(String key, UUID customerId, PaymentRequest request, Supplier<Payment> charge) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH)
+            throw new IllegalArgumentException(
+                    String.format("Idempotency key must have between 1 and %d characters", MAX_KEY_LENGTH));
+        String requestHash = requestHash(request);
+
+        CompletableFuture<IdempotencyRecord> result = new CompletableFuture<>();
+        CompletableFuture<IdempotencyRecord> first = inFlight.putIfAbsent(key, result);
+        if (first != null)
+            return checkRequest(await(first), customerId, requestHash);
+
+        try {
+            IdempotencyRecord record = claimAndCharge(key, customerId, requestHash, charge);
+            result.complete(record);
+            return record;
+        } catch (RuntimeException e) {
+            //waiting duplicates see the same failure, later retries may charge again
+            result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, result);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${payment.idempotency.purge-interval:PT1H}")
+    public void purgeExpired() {
+        idempotencyRecordRepository.deleteCreatedBefore(clock.instant().minus(ttl));
+    }
+
+    /**
+     * Hash of the fields that make up the charge, so a key reused for another amount or currency is rejected.
+     */
+    static String requestHash(PaymentRequest request) {
+        //10 and 10.00 are the same charge
+        String amount = request.getAmount() == null ? null : request.getAmount().stripTrailingZeros().toPlainString();
+        return sha256(String.join("\n", request.getPaymentMethod(), request.getPaymentDescription(), amount,
+                String.valueOf(request.getCurrency())));
+    }
+
+    /**
+     * Idempotency key for the card provider: the same for every retry of the client's payment, so a charge that
+     * timed out but went through is not made twice, and like the client's key only unique per customer.
+     */
+    static String providerKey(UUID customerId, String key) {
+        return sha256(customerId + "\n" + key);
+    }
+
+    private IdempotencyRecord claimAndCharge(String key, UUID customerId, String requestHash,
+                                             Supplier<Payment> charge) {
+        long waitDeadline = System.nanoTime() + pendingTimeout.toNanos();
+        Duration pollInterval = MIN_POLL_INTERVAL;
+        while (true) {
+            //stored and compared as is, so no finer than the database keeps it
+            Instant claimedAt = clock.instant().truncatedTo(ChronoUnit.MILLIS);
+            if (claim(key, customerId, requestHash, claimedAt))
+                return charge(key, customerId, requestHash, claimedAt, charge);
+
+            //a replica lagging behind would not have the record yet and the card would be charged again
+            Optional<IdempotencyRecord> existing =
+                    ReplicaRouting.onPrimary(() -> idempotencyRecordRepository.findById(key));
+            //released by a failed charge meanwhile, claim it again
+            if (existing.isEmpty())
+                continue;
+
+            IdempotencyRecord record = checkRequest(existing.get(), customerId, requestHash);
+            if (record.getStatus() == IdempotencyRecord.Status.COMPLETED)
+                return record;
+            if (System.nanoTime() - waitDeadline > 0)
+                throw new IllegalStateException(
+                        String.format("Payment with idempotency key [%s] is still in progress", key));
+            sleep(pollInterval);
+            Duration doubled = pollInterval.multipliedBy(2);
+            pollInterval = doubled.compareTo(MAX_POLL_INTERVAL) < 0 ? doubled : MAX_POLL_INTERVAL;
+        }
+    }
+
+    private boolean claim(String key, UUID customerId, String requestHash, Instant claimedAt) {
+        try {
+            return idempotencyRecordRepository.insertPending(key, customerId, requestHash, claimedAt) == 1;
+        } catch (DataIntegrityViolationException e) {
+            //claimed before, possibly by a request that expired or never completed
+            return idempotencyRecordRepository.takeOver(key, customerId, requestHash, claimedAt,
+                    claimedAt.minus(ttl), claimedAt.minus(pendingTimeout)) == 1;
+        }
+    }
+
+    private IdempotencyRecord charge(String key, UUID customerId, String requestHash, Instant claimedAt,
+                                     Supplier<Payment> charge) {
+        Payment payment;
+        try {
+            payment = charge.get();
+        } catch (RuntimeException e) {
+            try {
+                idempotencyRecordRepository.release(key, claimedAt);
+            } catch (RuntimeException releaseFailure) {
+                //the claim is taken over once abandoned
+                e.addSuppressed(releaseFailure);
+            }
+            throw e;
+        }
+
+        //a payment still in the write-behind journal has no id yet
+        Long paymentId = payment.getPaymentId() == 0 ? null : payment.getPaymentId();
+        if (idempotencyRecordRepository.complete(key, claimedAt, paymentId) == 0)
+            log.warn("Idempotency key [{}] was taken over while charging payment [{}]", key, paymentId);
+        return new IdempotencyRecord(key, customerId, requestHash, IdempotencyRecord.Status.COMPLETED,
+                paymentId, claimedAt);
+    }
+
+    private static IdempotencyRecord checkRequest(IdempotencyRecord record, UUID customerId, String requestHash) {
+        if (!record.getCustomerId().equals(customerId))
+            throw new IllegalArgumentException(String.format(
+                    "Idempotency key [%s] was already used for another customer", record.getIdempotencyKey()));
+        if (!record.getRequestHash().equals(requestHash))
+            throw new IllegalArgumentException(String.format(
+                    "Idempotency key [%s] was already used for a different payment", record.getIdempotencyKey()));
+        return record;
+    }
+
+    private static IdempotencyRecord await(CompletableFuture<IdempotencyRecord> first) {
+        try {
+            return first.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a duplicate payment", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha256.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a duplicate payment", e);
+        }
+    }
+}
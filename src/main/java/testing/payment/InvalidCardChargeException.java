@@ -0,0 +1,20 @@
+package testing.payment;
+
+/**
+ * The provider refused the charge request itself, e.g. because of invalid parameters or an unusable payment method.
+ * The card was not debited and the provider answered normally, so the call does not count against its health.
+ */
+public class InvalidCardChargeException extends IllegalArgumentException {
+
+    public InvalidCardChargeException(String message) {
+        super(message);
+    }
+
+    static boolean isCauseOf(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InvalidCardChargeException)
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,35 @@
+package testing.payment;
+
+import java.math.BigDecimal;
+
+/**
+ * An amount in the minor units of its currency (cents for EUR and USD), so charging, persisting and summing
+ * payments needs no {@link BigDecimal}. Decimal amounts are only used at the JSON edge.
+ */
+public record Money(long minorUnits, Currency currency) {
+
+    public Money {
+        if (currency == null)
+            throw new IllegalArgumentException("Currency cannot be null");
+    }
+
+    /**
+     * Converts a decimal amount exactly, rejecting amounts with more decimals than the currency has.
+     */
+    public static Money of(BigDecimal amount, Currency currency) {
+        if (amount == null)
+            throw new IllegalArgumentException("Amount cannot be null");
+        if (currency == null)
+            throw new IllegalArgumentException("Currency cannot be null");
+        try {
+            return new Money(amount.movePointRight(currency.getFractionDigits()).longValueExact(), currency);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(String.format(
+                    "Amount [%s] is not a valid [%s] amount", amount.toPlainString(), currency));
+        }
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, currency.getFractionDigits());
+    }
+}
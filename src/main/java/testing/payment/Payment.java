@@ -1,14 +1,20 @@
 package testing.payment;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.UUID;
 
 
@@ -17,15 +23,35 @@ import java.util.UUID;
 @AllArgsConstructor
 @Builder
 @Entity
+// time range queries and the monthly archival seek on created_at instead of scanning every payment
+@Table(indexes = @Index(name = "payment_created_at_idx", columnList = "createdAt"))
 public class Payment {
 
+    static final int ALLOCATION_SIZE = 50;
+
+    // pooled optimizer: one sequence call hands out ALLOCATION_SIZE ids, so batched inserts stay batched
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "payment_id_seq")
+    @SequenceGenerator(name = "payment_id_seq", sequenceName = "payment_id_seq", allocationSize = ALLOCATION_SIZE)
     private long paymentId;
     private String paymentMethod;
     private String paymentDescription;
-    private BigDecimal amount;
+    // in minor units of the currency, see Money
+    private long amount;
     private Currency currency;
     private UUID customerId;
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    public Money toMoney() {
+        return new Money(amount, currency);
+    }
+
+    // payments are stamped when charged, this only covers payments saved without a time, e.g. old journal records
+    @PrePersist
+    void setCreatedAtIfMissing() {
+        if (createdAt == null)
+            createdAt = Instant.now();
+    }
 
 }
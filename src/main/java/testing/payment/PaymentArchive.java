@@ -0,0 +1,244 @@
+package testing.payment;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import testing.replica.ReplicaRouting;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the payment table to the last {@code hot-months} months (UTC), the current one included.
+ * Older months are moved, one at a time, into a {@link PaymentArchiveFile} per month ({@code payments-2024-01.parc.gz})
+ * and read from there by {@link #stream}. The month is the unit of partitioning: queries on the table seek on the
+ * created_at index, queries on the archive only open the files of the months they cover.
+ * <p>
+ * A month is written to a temporary file and moved in place before the transaction deleting its rows commits.
+ * Payments showing up later for an archived month, e.g. replayed from the write-behind journal, are added to its
+ * file, and payments already in the file are skipped, so archiving a month again neither loses nor duplicates.
+ * <p>
+ * Off by default. Instances sharing the database take turns through a {@link PaymentArchiveLock} lease, renewed
+ * before each month, so two of them never delete and rewrite the same month at once.
+ */
+@Slf4j
+@Component
+public class PaymentArchive {
+
+    private static final Pattern FILE_NAME = Pattern.compile("payments-(\\d{4}-\\d{2})\\.parc\\.gz");
+    private static final int DELETE_CHUNK_SIZE = 1000;
+    private static final String LOCK = "payment-archive";
+
+    private final PaymentRepository paymentRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final PaymentArchiveLockRepository lockRepository;
+    private final String owner = UUID.randomUUID().toString();
+    private final boolean enabled;
+    private final Path directory;
+    private final int hotMonths;
+    private final Duration lockLease;
+    private final Clock clock;
+    private final Counter archived;
+
+    @Autowired
+    public PaymentArchive(PaymentRepository paymentRepository,
+                          PlatformTransactionManager transactionManager,
+                          EntityManager entityManager,
+                          PaymentArchiveLockRepository lockRepository,
+                          MeterRegistry meterRegistry,
+                          @Value("${payment.archive.enabled:false}") boolean enabled,
+                          @Value("${payment.archive.directory:payment-archive}") Path directory,
+                          @Value("${payment.archive.hot-months:12}") int hotMonths,
+                          @Value("${payment.archive.lock-lease:PT1H}") Duration lockLease) {
+        this(paymentRepository, transactionManager, entityManager, lockRepository, meterRegistry, enabled, directory,
+                hotMonths, lockLease, Clock.systemUTC());
+    }
+
+    PaymentArchive(PaymentRepository paymentRepository, PlatformTransactionManager transactionManager,
+                   EntityManager entityManager, PaymentArchiveLockRepository lockRepository,
+                   MeterRegistry meterRegistry, boolean enabled, Path directory, int hotMonths, Duration lockLease,
+                   Clock clock) {
+        if (hotMonths < 1)
+            throw new IllegalArgumentException(
+                    String.format("At least the current month must stay in the table, got [%d]", hotMonths));
+        this.paymentRepository = paymentRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.entityManager = entityManager;
+        this.lockRepository = lockRepository;
+        this.enabled = enabled;
+        this.directory = directory;
+        this.hotMonths = hotMonths;
+        this.lockLease = lockLease;
+        this.clock = clock;
+        this.archived = Counter.builder("payment.archive.archived")
+                .description("Payments moved from the table to the archive")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${payment.archive.interval:PT1H}")
+    public void archiveColdMonths() {
+        if (!enabled)
+            return;
+        if (!lock()) {
+            log.debug("Payments are being archived by another instance");
+            return;
+        }
+        try {
+            archiveBefore(YearMonth.now(clock.withZone(ZoneOffset.UTC)).minusMonths(hotMonths - 1));
+        } catch (RuntimeException e) {
+            //the month stays in the table, the next run retries it
+            log.warn("Could not archive payments", e);
+        } finally {
+            lockRepository.release(LOCK, owner, clock.instant());
+        }
+    }
+
+    /**
+     * Archives every month before {@code month}, oldest first, returning the number of payments archived.
+     */
+    long archiveBefore(YearMonth month) {
+        long count = 0;
+        Instant oldest;
+        //a lagging replica would still show the month just archived
+        while ((oldest = ReplicaRouting.onPrimary(paymentRepository::findOldestCreatedAt)) != null) {
+            YearMonth oldestMonth = YearMonth.from(oldest.atZone(ZoneOffset.UTC));
+            if (!oldestMonth.isBefore(month))
+                break;
+            //the lease may have run out on a long run and another instance taken over
+            if (!lock())
+                throw new IllegalStateException(String.format(
+                        "Lost the archive lock before archiving [%s]", oldestMonth));
+            count += archiveMonth(oldestMonth);
+        }
+        return count;
+    }
+
+    /**
+     * Archived payments matching the filter, month by month and within a month in id order.
+     */
+    public void stream(PaymentFilter filter, Consumer<Payment> consumer) {
+        filter.checkTimeRange();
+        for (YearMonth month : archivedMonths()) {
+            if (filter.getFrom() != null && !start(month.plusMonths(1)).isAfter(filter.getFrom()))
+                continue;
+            if (filter.getTo() != null && !start(month).isBefore(filter.getTo()))
+                continue;
+            PaymentArchiveFile.read(fileOf(month), payment -> {
+                if (filter.includes(payment))
+                    consumer.accept(payment);
+            });
+        }
+    }
+
+    List<YearMonth> archivedMonths() {
+        if (!Files.isDirectory(directory))
+            return List.of();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> FILE_NAME.matcher(file.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> YearMonth.parse(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list payment archive " + directory, e);
+        }
+    }
+
+    private int archiveMonth(YearMonth month) {
+        Path file = fileOf(month);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        int count = transactionTemplate.execute(status -> {
+            createDirectory();
+            List<Long> paymentIds = new ArrayList<>();
+            try (PaymentArchiveFile.Writer writer = new PaymentArchiveFile.Writer(temporary)) {
+                Set<Long> written = new HashSet<>();
+                if (Files.exists(file)) {
+                    PaymentArchiveFile.read(file, payment -> {
+                        writer.add(payment);
+                        written.add(payment.getPaymentId());
+                    });
+                }
+                try (Stream<Payment> payments = paymentRepository.streamAll(
+                        null, null, start(month), start(month.plusMonths(1)))) {
+                    payments.forEach(payment -> {
+                        if (written.add(payment.getPaymentId()))
+                            writer.add(payment);
+                        paymentIds.add(payment.getPaymentId());
+                        //keep the persistence context from growing with the month
+                        entityManager.detach(payment);
+                    });
+                }
+            }
+            for (int from = 0; from < paymentIds.size(); from += DELETE_CHUNK_SIZE)
+                paymentRepository.deleteAllByIdIn(
+                        paymentIds.subList(from, Math.min(from + DELETE_CHUNK_SIZE, paymentIds.size())));
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot move payment archive " + temporary, e);
+            }
+            return paymentIds.size();
+        });
+        archived.increment(count);
+        log.info("Archived {} payments of {} to {}", count, month, file);
+        return count;
+    }
+
+    /**
+     * Takes or renews the lease, false while another instance holds it.
+     */
+    private boolean lock() {
+        Instant now = clock.instant();
+        Instant lockedUntil = now.plus(lockLease);
+        if (lockRepository.acquire(LOCK, owner, now, lockedUntil) == 1)
+            return true;
+        try {
+            return lockRepository.insert(LOCK, owner, lockedUntil) == 1;
+        } catch (DataIntegrityViolationException e) {
+            //the row exists and another instance holds it
+            return false;
+        }
+    }
+
+    private void createDirectory() {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create payment archive directory " + directory, e);
+        }
+    }
+
+    private Path fileOf(YearMonth month) {
+        return directory.resolve("payments-" + month + ".parc.gz");
+    }
+
+    private static Instant start(YearMonth month) {
+        return month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+}
@@ -0,0 +1,199 @@
+package testing.payment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzipped, columnar file of archived payments.
+ * <p>
+ * Layout: {@code magic, version}, then row groups of up to {@code rowGroupSize} payments, each a row count followed
+ * by one column per field, and a row count of 0 at the end. Ids and creation times are stored as the difference to
+ * the previous row, strings as indexes into a dictionary of the distinct values of the group. Neighbouring values of
+ * a column look alike, so the file compresses far better than the same payments row by row.
+ */
+class PaymentArchiveFile {
+
+    static final int DEFAULT_ROW_GROUP_SIZE = 10_000;
+    private static final int MAGIC = 0x50415243; //"PARC"
+    private static final int VERSION = 1;
+    private static final int NULL_INDEX = -1;
+
+    private PaymentArchiveFile() {
+    }
+
+    /**
+     * Reads every payment of the file in the order they were written.
+     */
+    static void read(Path file, Consumer<Payment> consumer) {
+        try (InputStream fileIn = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(
+                     new GZIPInputStream(new BufferedInputStream(fileIn, 64 * 1024)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IllegalStateException(String.format("File [%s] is not a payment archive", file));
+
+            int rows;
+            while ((rows = in.readInt()) > 0) {
+                long[] ids = readDeltas(in, rows);
+                long[] createdAt = readDeltas(in, rows);
+                long[] amounts = new long[rows];
+                for (int i = 0; i < rows; i++)
+                    amounts[i] = in.readLong();
+                List<String> customerIds = readDictionaryColumn(in, rows);
+                List<String> currencies = readDictionaryColumn(in, rows);
+                List<String> methods = readDictionaryColumn(in, rows);
+                List<String> descriptions = readDictionaryColumn(in, rows);
+
+                for (int i = 0; i < rows; i++) {
+                    consumer.accept(Payment.builder()
+                            .paymentId(ids[i])
+                            .createdAt(Instant.EPOCH.plus(createdAt[i], ChronoUnit.MICROS))
+                            .amount(amounts[i])
+                            .customerId(customerIds.get(i) == null ? null : UUID.fromString(customerIds.get(i)))
+                            .currency(currencies.get(i) == null ? null : Currency.valueOf(currencies.get(i)))
+                            .paymentMethod(methods.get(i))
+                            .paymentDescription(descriptions.get(i))
+                            .build());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read payment archive " + file, e);
+        }
+    }
+
+    /**
+     * Appends payments to a new file, which is complete and on disk once the writer is closed.
+     */
+    static class Writer implements AutoCloseable {
+
+        private final FileOutputStream fileOut;
+        private final GZIPOutputStream gzipOut;
+        private final DataOutputStream out;
+        private final int rowGroupSize;
+        private final List<Payment> group = new ArrayList<>();
+
+        Writer(Path file) {
+            this(file, DEFAULT_ROW_GROUP_SIZE);
+        }
+
+        Writer(Path file, int rowGroupSize) {
+            this.rowGroupSize = rowGroupSize;
+            try {
+                this.fileOut = new FileOutputStream(file.toFile());
+                this.gzipOut = new GZIPOutputStream(new BufferedOutputStream(fileOut, 64 * 1024));
+                this.out = new DataOutputStream(gzipOut);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot create payment archive " + file, e);
+            }
+        }
+
+        void add(Payment payment) {
+            group.add(payment);
+            if (group.size() == rowGroupSize)
+                writeGroup();
+        }
+
+        @Override
+        public void close() {
+            try (fileOut) {
+                writeGroup();
+                out.writeInt(0);
+                gzipOut.finish();
+                out.flush();
+                fileOut.getFD().sync();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write payment archive", e);
+            }
+        }
+
+        private void writeGroup() {
+            if (group.isEmpty())
+                return;
+            try {
+                out.writeInt(group.size());
+                writeDeltas(Payment::getPaymentId);
+                writeDeltas(payment -> ChronoUnit.MICROS.between(Instant.EPOCH, payment.getCreatedAt()));
+                for (Payment payment : group)
+                    out.writeLong(payment.getAmount());
+                writeDictionaryColumn(payment -> payment.getCustomerId() == null
+                        ? null : payment.getCustomerId().toString());
+                writeDictionaryColumn(payment -> payment.getCurrency() == null
+                        ? null : payment.getCurrency().name());
+                writeDictionaryColumn(Payment::getPaymentMethod);
+                writeDictionaryColumn(Payment::getPaymentDescription);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write payment archive", e);
+            }
+            group.clear();
+        }
+
+        private void writeDeltas(Function<Payment, Long> column) throws IOException {
+            long previous = 0;
+            for (Payment payment : group) {
+                long value = column.apply(payment);
+                out.writeLong(value - previous);
+                previous = value;
+            }
+        }
+
+        private void writeDictionaryColumn(Function<Payment, String> column) throws IOException {
+            Map<String, Integer> dictionary = new LinkedHashMap<>();
+            int[] indexes = new int[group.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                String value = column.apply(group.get(i));
+                indexes[i] = value == null ? NULL_INDEX : dictionary.computeIfAbsent(value, v -> dictionary.size());
+            }
+            out.writeInt(dictionary.size());
+            for (String value : dictionary.keySet()) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            for (int index : indexes)
+                out.writeInt(index);
+        }
+    }
+
+    private static long[] readDeltas(DataInputStream in, int rows) throws IOException {
+        long[] values = new long[rows];
+        long previous = 0;
+        for (int i = 0; i < rows; i++) {
+            previous += in.readLong();
+            values[i] = previous;
+        }
+        return values;
+    }
+
+    private static List<String> readDictionaryColumn(DataInputStream in, int rows) throws IOException {
+        String[] dictionary = new String[in.readInt()];
+        for (int i = 0; i < dictionary.length; i++)
+            dictionary[i] = new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+        List<String> values = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            int index = in.readInt();
+            values.add(index == NULL_INDEX ? null : dictionary[index]);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,28 @@
+package testing.payment;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Lease on archiving, so only one instance moves and deletes payments at a time.
+ * Held until {@code lockedUntil}, taken over by another instance once that has passed.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class PaymentArchiveLock {
+
+    @Id
+    private String name;
+    @Column(nullable = false)
+    private String owner;
+    @Column(nullable = false)
+    private Instant lockedUntil;
+}
@@ -0,0 +1,43 @@
+package testing.payment;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+public interface PaymentArchiveLockRepository extends JpaRepository<PaymentArchiveLock, String> {
+
+    /**
+     * Takes the lock the first time, failing with a duplicate key when another instance created it first.
+     */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = """
+            INSERT INTO payment_archive_lock (name, owner, locked_until)
+            VALUES (:name, :owner, :lockedUntil)
+            """)
+    int insert(@Param("name") String name, @Param("owner") String owner, @Param("lockedUntil") Instant lockedUntil);
+
+    /**
+     * Takes the lock if it expired, or extends it if the owner still holds it.
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+            UPDATE PaymentArchiveLock l
+            SET l.owner = :owner, l.lockedUntil = :lockedUntil
+            WHERE l.name = :name AND (l.owner = :owner OR l.lockedUntil <= :now)
+            """)
+    int acquire(@Param("name") String name,
+                @Param("owner") String owner,
+                @Param("now") Instant now,
+                @Param("lockedUntil") Instant lockedUntil);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE PaymentArchiveLock l SET l.lockedUntil = :now WHERE l.name = :name AND l.owner = :owner")
+    int release(@Param("name") String name, @Param("owner") String owner, @Param("now") Instant now);
+}
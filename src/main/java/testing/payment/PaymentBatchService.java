@@ -0,0 +1,155 @@
+package testing.payment;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import testing.customer.Customer;
+import testing.customer.CustomerRepository;
+import testing.replica.ReadYourWrites;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class PaymentBatchService {
+
+    static final int MAX_BATCH_SIZE = 10_000;
+
+    private final CustomerRepository customerRepository;
+    private final PaymentRecorder paymentRecorder;
+    private final CardPaymentCharger cardPaymentCharger;
+    private final ReadYourWrites readYourWrites;
+    private final FirstChargeTimer firstChargeTimer;
+    private final ExecutorService chargeExecutor;
+    private final MeterRegistry meterRegistry;
+
+    public List<BatchPaymentResult> chargePayments(List<BatchPaymentRequest> requests) {
+        if (requests == null || requests.isEmpty())
+            throw new IllegalArgumentException("Batch cannot be empty");
+
+        if (requests.size() > MAX_BATCH_SIZE)
+            throw new IllegalArgumentException(
+                    String.format("Batch cannot contain more than %d payments", MAX_BATCH_SIZE));
+
+        //resolve every customer of the batch in a single query
+        Set<UUID> customerIds = requests.stream()
+                .filter(Objects::nonNull)
+                .map(BatchPaymentRequest::getCustomerId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Set<UUID> existingCustomers = customerRepository.findAllById(customerIds).stream()
+                .map(Customer::getId)
+                .collect(Collectors.toSet());
+
+        BatchPaymentResult[] results = new BatchPaymentResult[requests.size()];
+        Money[] amounts = new Money[requests.size()];
+        List<CompletableFuture<CardPaymentCharge>> charges = new ArrayList<>(requests.size());
+
+        for (int i = 0; i < requests.size(); i++) {
+            BatchPaymentRequest request = requests.get(i);
+            String error = validate(request, existingCustomers);
+            if (error != null) {
+                results[i] = BatchPaymentResult.rejected(request == null ? null : request.getCustomerId(), error);
+                charges.add(null);
+                continue;
+            }
+            PaymentRequest payment = request.getPayment();
+            Money amount;
+            try {
+                amount = payment.toMoney();
+            } catch (IllegalArgumentException e) {
+                results[i] = BatchPaymentResult.rejected(request.getCustomerId(), e.getMessage());
+                charges.add(null);
+                continue;
+            }
+            amounts[i] = amount;
+            charges.add(CompletableFuture.supplyAsync(() -> cardPaymentCharger.chargeCard(
+                    payment.getPaymentMethod(),
+                    amount,
+                    payment.getPaymentDescription()
+            ), chargeExecutor));
+        }
+
+        //wait for every charge and collect the debited ones to persist them together
+        List<Payment> payments = new ArrayList<>();
+        List<Integer> paymentIndexes = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            CompletableFuture<CardPaymentCharge> charge = charges.get(i);
+            if (charge == null)
+                continue;
+
+            BatchPaymentRequest request = requests.get(i);
+            try {
+                if (!charge.join().isCardDebited()) {
+                    countRejection("card_not_debited", amounts[i].currency());
+                    results[i] = BatchPaymentResult.rejected(request.getCustomerId(),
+                            String.format("Card not debited for customer [%s]", request.getCustomerId()));
+                    continue;
+                }
+            } catch (CompletionException e) {
+                results[i] = BatchPaymentResult.rejected(request.getCustomerId(), e.getCause().getMessage());
+                continue;
+            }
+
+            PaymentRequest paymentRequest = request.getPayment();
+            payments.add(Payment.builder()
+                    .paymentMethod(paymentRequest.getPaymentMethod())
+                    .amount(amounts[i].minorUnits())
+                    .currency(paymentRequest.getCurrency())
+                    .paymentDescription(paymentRequest.getPaymentDescription())
+                    .customerId(request.getCustomerId())
+                    .createdAt(Instant.now())
+                    .build());
+            paymentIndexes.add(i);
+        }
+
+        //one transaction for the payments and their summaries
+        List<Payment> saved = paymentRecorder.recordAll(payments);
+        for (int i = 0; i < saved.size(); i++) {
+            Payment payment = saved.get(i);
+            //the customer's next read sees this payment even if the replica lags
+            readYourWrites.wrote(payment.getCustomerId());
+            results[paymentIndexes.get(i)] =
+                    new BatchPaymentResult(payment.getCustomerId(), payment.getPaymentId(), true, null);
+        }
+        if (!saved.isEmpty())
+            firstChargeTimer.chargeSucceeded();
+
+        return List.of(results);
+    }
+
+    private String validate(BatchPaymentRequest request, Set<UUID> existingCustomers) {
+        if (request == null || request.getPayment() == null)
+            return "Payment cannot be null";
+
+        Currency currency = request.getPayment().getCurrency();
+        if (!existingCustomers.contains(request.getCustomerId())) {
+            countRejection("customer_not_found", currency);
+            return String.format("Customer [%s] does not exist", request.getCustomerId());
+        }
+
+        if (!cardPaymentCharger.supports(currency)) {
+            countRejection("currency_not_supported", currency);
+            return String.format("Currency [%s] not supported", currency);
+        }
+
+        return null;
+    }
+
+    //same counter as single payments, a rejection is one whichever way the payment came in
+    private void countRejection(String reason, Currency currency) {
+        meterRegistry.counter("payment.charge.rejected",
+                "reason", reason,
+                "currency", String.valueOf(currency)
+        ).increment();
+    }
+}
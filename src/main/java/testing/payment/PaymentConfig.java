@@ -0,0 +1,88 @@
+package testing.payment;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class PaymentConfig {
+
+    // bounds how many card charges are in flight at once for batch runs
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public ExecutorService chargeExecutor(@Value("${payment.batch.parallelism:16}") int parallelism) {
+        return Executors.newFixedThreadPool(parallelism);
+    }
+
+    // spring.threads.virtual.enabled=true: a blocked charge only parks a virtual thread, so there is no pool, only
+    // a bound on charges in flight; keep it within payment.charger.resilience.max-concurrent-charges or the
+    // bulkhead rejects the charges over it
+    @Bean(name = "chargeExecutor", destroyMethod = "shutdown")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public ExecutorService virtualChargeExecutor(
+            @Value("${payment.batch.virtual-parallelism:50}") int parallelism) {
+        return new BoundedVirtualExecutor(parallelism, "charge-");
+    }
+
+    @Bean
+    public ResilientCardPaymentCharger.Settings chargerResilienceSettings(
+            @Value("${payment.charger.resilience.max-concurrent-charges:50}") int maxConcurrentCharges,
+            @Value("${payment.charger.resilience.max-wait:0ms}") Duration maxWait,
+            @Value("${payment.charger.resilience.window-size:50}") int windowSize,
+            @Value("${payment.charger.resilience.unhealthy-rate-threshold:0.5}") double unhealthyRateThreshold,
+            @Value("${payment.charger.resilience.slow-call-threshold:2s}") Duration slowCallThreshold,
+            @Value("${payment.charger.resilience.open-duration:30s}") Duration openDuration,
+            @Value("${payment.charger.resilience.half-open-calls:5}") int halfOpenCalls,
+            @Value("${payment.charger.resilience.timeout.sample-size:200}") int timeoutSampleSize,
+            @Value("${payment.charger.resilience.timeout.min:500ms}") Duration minTimeout,
+            @Value("${payment.charger.resilience.timeout.max:10s}") Duration maxTimeout,
+            @Value("${payment.charger.resilience.timeout.multiplier:3}") double timeoutMultiplier) {
+        return ResilientCardPaymentCharger.Settings.builder()
+                .maxConcurrentCharges(maxConcurrentCharges)
+                .maxWait(maxWait)
+                .windowSize(windowSize)
+                .unhealthyRateThreshold(unhealthyRateThreshold)
+                .slowCallThreshold(slowCallThreshold)
+                .openDuration(openDuration)
+                .halfOpenCalls(halfOpenCalls)
+                .timeoutSampleSize(timeoutSampleSize)
+                .minTimeout(minTimeout)
+                .maxTimeout(maxTimeout)
+                .timeoutMultiplier(timeoutMultiplier)
+                .build();
+    }
+
+    // every other CardPaymentCharger bean is a provider, the router is excluded from the list as a self reference;
+    // each provider gets its own bulkhead and circuit so a degraded one is skipped instead of waited on,
+    // batching sits below them so every charge of a batch still counts on its own
+    @Bean
+    @Primary
+    public RoutingCardPaymentCharger routingCardPaymentCharger(
+            List<CardPaymentCharger> providers,
+            ResilientCardPaymentCharger.Settings resilienceSettings,
+            MeterRegistry meterRegistry,
+            @Value("${payment.charger.resilience.enabled:true}") boolean resilienceEnabled,
+            @Value("${payment.charger.routing.explore-rate:0.05}") double exploreRate,
+            @Value("${payment.charger.batching.enabled:false}") boolean batchingEnabled,
+            @Value("${payment.charger.batching.window:5ms}") Duration batchingWindow,
+            @Value("${payment.charger.batching.max-size:20}") int batchingMaxSize) {
+        List<CardPaymentCharger> routed = providers.stream()
+                .map(provider -> batchingEnabled
+                        ? new BatchingCardPaymentCharger(provider, batchingWindow, batchingMaxSize, meterRegistry)
+                        : provider)
+                .map(provider -> resilienceEnabled
+                        ? new ResilientCardPaymentCharger(provider, resilienceSettings, meterRegistry)
+                        : provider)
+                .toList();
+        return new RoutingCardPaymentCharger(routed, exploreRate, meterRegistry);
+    }
+}
@@ -1,8 +1,17 @@
 package testing.payment;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import testing.ratelimit.RateLimited;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 
@@ -11,15 +20,111 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class PaymentController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     private final PaymentService paymentService;
+    private final PaymentBatchService paymentBatchService;
+    private final IdempotencyService idempotencyService;
+    private final PaymentArchive paymentArchive;
+    private final ObjectMapper objectMapper;
 
     @PostMapping("/{customerId}")
-    public void makePayment(@PathVariable UUID customerId, @RequestBody PaymentRequest paymentRequest) {
-        paymentService.chargePayment(customerId, paymentRequest);
+    @RateLimited(RateLimited.Key.CUSTOMER)
+    public void makePayment(@PathVariable UUID customerId,
+                            @RequestBody PaymentRequest paymentRequest,
+                            @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        if (idempotencyKey == null) {
+            paymentService.chargePayment(customerId, paymentRequest);
+            return;
+        }
+        //a retried request with the same key does not charge the card again
+        idempotencyService.execute(idempotencyKey, customerId, paymentRequest,
+                () -> paymentService.chargePayment(customerId, paymentRequest, idempotencyKey));
+    }
+
+    @PostMapping("/batch")
+    //limited as one call: a settlement batch carries thousands of payments, more than the global burst
+    @RateLimited(RateLimited.Key.CLIENT_IP)
+    public List<BatchPaymentResult> makePayments(@RequestBody List<BatchPaymentRequest> requests) {
+        return paymentBatchService.chargePayments(requests);
     }
 
     @GetMapping
-    public List<Payment> getAllPayments() {
-        return paymentService.getAllPayments();
+    public ResponseEntity<List<PaymentResponse>> getPayments(@RequestParam(defaultValue = "0") long after,
+                                                     @RequestParam(defaultValue = "100") int size,
+                                                     @RequestParam(required = false) UUID customerId,
+                                                     @RequestParam(required = false) Currency currency,
+                                                     @RequestParam(required = false) Instant from,
+                                                     @RequestParam(required = false) Instant to) {
+        PaymentFilter filter = PaymentFilter.builder()
+                .customerId(customerId)
+                .currency(currency)
+                .from(from)
+                .to(to)
+                .build();
+
+        List<Payment> payments = paymentService.getPayments(filter, after, size);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        //a full page means there may be more rows after the last id
+        if (payments.size() == size)
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(payments.get(size - 1).getPaymentId()));
+        return response.body(payments.stream().map(PaymentResponse::from).toList());
+    }
+
+    @GetMapping("/summary/{customerId}")
+    public List<PaymentSummaryResponse> getSummaries(@PathVariable UUID customerId) {
+        return paymentService.getSummaries(customerId).stream()
+                .map(PaymentSummaryResponse::from)
+                .toList();
+    }
+
+    @GetMapping(path = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamPayments(@RequestParam(required = false) UUID customerId,
+                                                @RequestParam(required = false) Currency currency,
+                                                @RequestParam(required = false) Instant from,
+                                                @RequestParam(required = false) Instant to) {
+        PaymentFilter filter = PaymentFilter.builder()
+                .customerId(customerId)
+                .currency(currency)
+                .from(from)
+                .to(to)
+                .build();
+
+        ObjectWriter writer = objectMapper.writerFor(PaymentResponse.class);
+
+        return outputStream -> paymentService.streamPayments(filter, payment -> {
+            try {
+                outputStream.write(writer.writeValueAsBytes(PaymentResponse.from(payment)));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @GetMapping(path = "/archive", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamArchivedPayments(@RequestParam(required = false) UUID customerId,
+                                                        @RequestParam(required = false) Currency currency,
+                                                        @RequestParam(required = false) Instant from,
+                                                        @RequestParam(required = false) Instant to) {
+        PaymentFilter filter = PaymentFilter.builder()
+                .customerId(customerId)
+                .currency(currency)
+                .from(from)
+                .to(to)
+                .build();
+
+        ObjectWriter writer = objectMapper.writerFor(PaymentResponse.class);
+
+        return outputStream -> paymentArchive.stream(filter, payment -> {
+            try {
+                outputStream.write(writer.writeValueAsBytes(PaymentResponse.from(payment)));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 }
@@ -0,0 +1,32 @@
+package testing.payment;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Getter
+@Builder
+@ToString
+public class PaymentFilter {
+    private UUID customerId;
+    private Currency currency;
+    // createdAt range, from inclusive and to exclusive, open ended when null
+    private Instant from;
+    private Instant to;
+
+    void checkTimeRange() {
+        if (from != null && to != null && !from.isBefore(to))
+            throw new IllegalArgumentException(
+                    String.format("Time range from [%s] must start before it ends [%s]", from, to));
+    }
+
+    boolean includes(Payment payment) {
+        return (customerId == null || customerId.equals(payment.getCustomerId()))
+                && (currency == null || currency == payment.getCurrency())
+                && (from == null || !payment.getCreatedAt().isBefore(from))
+                && (to == null || payment.getCreatedAt().isBefore(to));
+    }
+}
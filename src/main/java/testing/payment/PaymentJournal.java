@@ -0,0 +1,266 @@
+package testing.payment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of payments backed by a memory-mapped file.
+ * <p>
+ * Layout: a header ({@code magic, version, write position, next sequence}) followed by records of
+ * {@code [payload length][sequence][payload][crc32]}. Every append forces the record and then the header,
+ * so a record is only visible to {@link #readAll()} once it is completely on disk.
+ * {@link #compact(long)} reclaims the space of records already inserted while newer ones are still pending.
+ * Not thread-safe on its own, callers serialize access.
+ */
+class PaymentJournal implements AutoCloseable {
+
+    static final int HEADER_SIZE = 64;
+    private static final int MAGIC = 0x50414A4E; //"PAJN"
+    private static final int VERSION = 1;
+    private static final int WRITE_POSITION_OFFSET = 8;
+    private static final int NEXT_SEQUENCE_OFFSET = 16;
+    //length + sequence + crc
+    private static final int RECORD_OVERHEAD = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int writePosition;
+    private long nextSequence;
+
+    PaymentJournal(Path file, int capacity) {
+        if (capacity <= HEADER_SIZE)
+            throw new IllegalArgumentException(
+                    String.format("Journal capacity must be greater than %d bytes", HEADER_SIZE));
+        this.file = file;
+        try {
+            this.channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, channel.size()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open payment journal " + file, e);
+        }
+
+        if (buffer.getInt(0) == 0) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            writePosition = HEADER_SIZE;
+            nextSequence = 1;
+            writeHeader();
+        } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException(String.format("File [%s] is not a payment journal", file));
+        } else {
+            writePosition = (int) buffer.getLong(WRITE_POSITION_OFFSET);
+            nextSequence = buffer.getLong(NEXT_SEQUENCE_OFFSET);
+        }
+    }
+
+    /**
+     * Durably appends the payment and returns its sequence, or -1 when the journal has no room left.
+     */
+    long append(Payment payment) {
+        byte[] payload = serialize(payment);
+        int recordSize = RECORD_OVERHEAD + payload.length;
+        if (writePosition + recordSize > buffer.capacity())
+            return -1;
+
+        long sequence = nextSequence;
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence));
+        crc.update(payload);
+
+        int position = writePosition;
+        buffer.putInt(position, payload.length);
+        buffer.putLong(position + Integer.BYTES, sequence);
+        buffer.put(position + Integer.BYTES + Long.BYTES, payload);
+        buffer.putInt(position + recordSize - Integer.BYTES, (int) crc.getValue());
+        buffer.force(position, recordSize);
+
+        //the record only counts once the header points past it
+        writePosition += recordSize;
+        nextSequence++;
+        writeHeader();
+        return sequence;
+    }
+
+    /**
+     * Reads every complete record, stopping at the first torn or corrupted one.
+     */
+    List<Entry> readAll() {
+        List<Entry> entries = new ArrayList<>();
+        int position = HEADER_SIZE;
+        while (position + RECORD_OVERHEAD <= writePosition) {
+            int length = buffer.getInt(position);
+            if (length < 0 || position + RECORD_OVERHEAD + length > writePosition)
+                break;
+            long sequence = buffer.getLong(position + Integer.BYTES);
+            byte[] payload = new byte[length];
+            buffer.get(position + Integer.BYTES + Long.BYTES, payload);
+
+            CRC32 crc = new CRC32();
+            crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence));
+            crc.update(payload);
+            if (buffer.getInt(position + Integer.BYTES + Long.BYTES + length) != (int) crc.getValue())
+                break;
+
+            entries.add(new Entry(sequence, deserialize(payload)));
+            position += RECORD_OVERHEAD + length;
+        }
+        return entries;
+    }
+
+    /**
+     * Drops every record, keeping the sequence counter.
+     */
+    void clear() {
+        writePosition = HEADER_SIZE;
+        writeHeader();
+    }
+
+    boolean isEmpty() {
+        return writePosition == HEADER_SIZE;
+    }
+
+    int size() {
+        return writePosition;
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Drops the records up to the given sequence, keeping the newer ones and the sequence counter.
+     * The kept records are written to a new file that is then moved over this one, so a crash leaves either
+     * journal complete. Returns the compacted journal, this one is closed.
+     */
+    PaymentJournal compact(long flushedSequence) {
+        //records are in sequence order, the kept ones are the tail
+        int position = HEADER_SIZE;
+        while (position < writePosition && buffer.getLong(position + Integer.BYTES) <= flushedSequence)
+            position += RECORD_OVERHEAD + buffer.getInt(position);
+        int kept = writePosition - position;
+
+        Path compacted = file.resolveSibling(file.getFileName() + ".compacting");
+        try {
+            //left over by a crash while compacting
+            Files.deleteIfExists(compacted);
+            try (PaymentJournal journal = new PaymentJournal(compacted, buffer.capacity())) {
+                journal.buffer.put(HEADER_SIZE, buffer, position, kept);
+                journal.buffer.force(HEADER_SIZE, kept);
+                journal.writePosition = HEADER_SIZE + kept;
+                journal.nextSequence = nextSequence;
+                journal.writeHeader();
+            }
+            Files.move(compacted, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot compact payment journal " + file, e);
+        }
+        close();
+        return new PaymentJournal(file, buffer.capacity());
+    }
+
+    long lastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * Makes sure sequences keep growing past the given one, e.g. when the journal file was replaced.
+     */
+    void advanceSequencePast(long sequence) {
+        if (sequence >= nextSequence) {
+            nextSequence = sequence + 1;
+            writeHeader();
+        }
+    }
+
+    @Override
+    public void close() {
+        buffer.force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeHeader() {
+        buffer.putLong(WRITE_POSITION_OFFSET, writePosition);
+        buffer.putLong(NEXT_SEQUENCE_OFFSET, nextSequence);
+        buffer.force(0, HEADER_SIZE);
+    }
+
+    private static byte[] serialize(Payment payment) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeString(out, payment.getPaymentMethod());
+            writeString(out, payment.getPaymentDescription());
+            out.writeLong(payment.getAmount());
+            writeString(out, payment.getCurrency() == null ? null : payment.getCurrency().name());
+            writeString(out, payment.getCustomerId() == null ? null : payment.getCustomerId().toString());
+            //last, records journaled before it was added simply end here
+            if (payment.getCreatedAt() != null) {
+                out.writeLong(payment.getCreatedAt().getEpochSecond());
+                out.writeInt(payment.getCreatedAt().getNano());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Payment deserialize(byte[] payload) {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        String method = readString(in);
+        String description = readString(in);
+        long amount = in.getLong();
+        String currency = readString(in);
+        String customerId = readString(in);
+        Instant createdAt = in.hasRemaining() ? Instant.ofEpochSecond(in.getLong(), in.getInt()) : null;
+        return Payment.builder()
+                .paymentMethod(method)
+                .paymentDescription(description)
+                .amount(amount)
+                .currency(currency == null ? null : Currency.valueOf(currency))
+                .customerId(customerId == null ? null : UUID.fromString(customerId))
+                .createdAt(createdAt)
+                .build();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    record Entry(long sequence, Payment payment) {
+    }
+}
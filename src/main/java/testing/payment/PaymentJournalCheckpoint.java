@@ -0,0 +1,21 @@
+package testing.payment;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Last journal sequence whose payment is in the database, written in the same transaction as the payments.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class PaymentJournalCheckpoint {
+
+    @Id
+    private String journal;
+    private long flushedSequence;
+}
@@ -0,0 +1,6 @@
+package testing.payment;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface PaymentJournalCheckpointRepository extends JpaRepository<PaymentJournalCheckpoint, String> {
+}
@@ -0,0 +1,39 @@
+package testing.payment;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import testing.payment.event.PaymentEvent;
+import testing.payment.event.PaymentEventRepository;
+
+import java.util.List;
+
+/**
+ * Persists charged payments together with their per customer and currency summaries and their outbox events,
+ * in one transaction.
+ */
+@Component
+@RequiredArgsConstructor
+public class PaymentRecorder {
+
+    private final PaymentRepository paymentRepository;
+    private final PaymentSummaryRepository paymentSummaryRepository;
+    private final PaymentEventRepository paymentEventRepository;
+
+    @Transactional
+    public Payment record(Payment payment) {
+        Payment saved = paymentRepository.save(payment);
+        paymentSummaryRepository.addToSummaries(List.of(saved));
+        paymentEventRepository.save(PaymentEvent.paymentCreated(saved));
+        return saved;
+    }
+
+    @Transactional
+    public List<Payment> recordAll(List<Payment> payments) {
+        //inserts are grouped into JDBC batches (see hibernate.jdbc.batch_size)
+        List<Payment> saved = paymentRepository.saveAll(payments);
+        paymentSummaryRepository.addToSummaries(saved);
+        paymentEventRepository.saveAll(saved.stream().map(PaymentEvent::paymentCreated).toList());
+        return saved;
+    }
+}
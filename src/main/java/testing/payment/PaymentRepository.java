@@ -1,7 +1,62 @@
 package testing.payment;
 
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
 
+    // keyset pagination: seek past the last seen id instead of using an offset
+    @Query(
+            value = "SELECT p FROM Payment p " +
+                    "WHERE p.paymentId > :after " +
+                    "AND (:customerId IS NULL OR p.customerId = :customerId) " +
+                    "AND (:currency IS NULL OR p.currency = :currency) " +
+                    "AND (:from IS NULL OR p.createdAt >= :from) " +
+                    "AND (:to IS NULL OR p.createdAt < :to) " +
+                    "ORDER BY p.paymentId"
+    )
+    List<Payment> findPage(@Param("after") long after,
+                           @Param("customerId") UUID customerId,
+                           @Param("currency") Currency currency,
+                           @Param("from") Instant from,
+                           @Param("to") Instant to,
+                           Limit limit);
+
+    // must be consumed inside a transaction and closed afterwards
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query(
+            value = "SELECT p FROM Payment p " +
+                    "WHERE (:customerId IS NULL OR p.customerId = :customerId) " +
+                    "AND (:currency IS NULL OR p.currency = :currency) " +
+                    "AND (:from IS NULL OR p.createdAt >= :from) " +
+                    "AND (:to IS NULL OR p.createdAt < :to) " +
+                    "ORDER BY p.paymentId"
+    )
+    Stream<Payment> streamAll(@Param("customerId") UUID customerId,
+                              @Param("currency") Currency currency,
+                              @Param("from") Instant from,
+                              @Param("to") Instant to);
+
+    @Query("SELECT MIN(p.createdAt) FROM Payment p")
+    Instant findOldestCreatedAt();
+
+    @Modifying
+    @Query("DELETE FROM Payment p WHERE p.paymentId IN :paymentIds")
+    int deleteAllByIdIn(@Param("paymentIds") List<Long> paymentIds);
 }
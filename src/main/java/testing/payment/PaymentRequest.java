@@ -16,4 +16,11 @@ public class PaymentRequest {
     private String paymentDescription;
     private BigDecimal amount;
     private Currency currency;
+
+    /**
+     * The amount in minor units, failing when it has more decimals than the currency.
+     */
+    public Money toMoney() {
+        return Money.of(amount, currency);
+    }
 }
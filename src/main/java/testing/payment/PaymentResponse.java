@@ -0,0 +1,39 @@
+package testing.payment;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * JSON view of a {@link Payment}, with the amount back in major units (10.50 rather than 1050).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PaymentResponse {
+
+    private long paymentId;
+    private String paymentMethod;
+    private String paymentDescription;
+    private BigDecimal amount;
+    private Currency currency;
+    private UUID customerId;
+    private Instant createdAt;
+
+    public static PaymentResponse from(Payment payment) {
+        return new PaymentResponse(
+                payment.getPaymentId(),
+                payment.getPaymentMethod(),
+                payment.getPaymentDescription(),
+                payment.toMoney().toBigDecimal(),
+                payment.getCurrency(),
+                payment.getCustomerId(),
+                payment.getCreatedAt());
+    }
+}
@@ -1,61 +1,186 @@
 package testing.payment;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
-import testing.customer.CustomerRepository;
+import org.springframework.transaction.annotation.Transactional;
+import testing.customer.CustomerExistenceCache;
+import testing.replica.ReadYourWrites;
 
+import java.time.Instant;
 import java.util.List;
-import java.util.Set;
 import java.util.UUID;
-
-import static testing.payment.Currency.EUR;
-import static testing.payment.Currency.USD;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class PaymentService {
 
-    private final CustomerRepository customerRepository;
+    private final CustomerExistenceCache customerExistenceCache;
     private final PaymentRepository paymentRepository;
+    private final PaymentRecorder paymentRecorder;
+    private final PaymentSummaryRepository paymentSummaryRepository;
     private final CardPaymentCharger cardPaymentCharger;
-    private final Set<Currency> SUPPORTED_CURRENCIES = Set.of(USD, EUR);
+    private final PaymentWriteBehind paymentWriteBehind;
+    private final FirstChargeTimer firstChargeTimer;
+    private final ReadYourWrites readYourWrites;
+    private final EntityManager entityManager;
+    private final MeterRegistry meterRegistry;
+
+    static final int MAX_PAGE_SIZE = 1000;
+
+    @Transactional(readOnly = true)
+    public List<Payment> getPayments(PaymentFilter filter, long after, int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE)
+            throw new IllegalArgumentException(
+                    String.format("Page size must be between 1 and %d", MAX_PAGE_SIZE));
+        filter.checkTimeRange();
+
+        Supplier<List<Payment>> page = () -> paymentRepository.findPage(
+                after,
+                filter.getCustomerId(),
+                filter.getCurrency(),
+                filter.getFrom(),
+                filter.getTo(),
+                Limit.of(size)
+        );
+        //the payments of one customer include the one it just made, reports over everyone may lag
+        return filter.getCustomerId() == null ? page.get() : readYourWrites.read(filter.getCustomerId(), page);
+    }
 
+    @Transactional(readOnly = true)
+    public void streamPayments(PaymentFilter filter, Consumer<Payment> consumer) {
+        filter.checkTimeRange();
+        try (Stream<Payment> payments = paymentRepository.streamAll(
+                filter.getCustomerId(), filter.getCurrency(), filter.getFrom(), filter.getTo())) {
+            payments.forEach(payment -> {
+                consumer.accept(payment);
+                //keep the persistence context from growing with the result set
+                entityManager.detach(payment);
+            });
+        }
+    }
+
+    /**
+     * Totals per currency, read from the rollup that every recorded payment updates.
+     */
+    @Transactional(readOnly = true)
+    public List<PaymentSummary> getSummaries(UUID customerId) {
+        return readYourWrites.read(customerId,
+                () -> paymentSummaryRepository.findByCustomerIdOrderByCurrency(customerId));
+    }
 
-    public List<Payment> getAllPayments() {
-        return paymentRepository.findAll();
+    public Payment chargePayment(UUID customerId, PaymentRequest paymentRequest) {
+        return chargePayment(customerId, paymentRequest, null);
     }
 
-    public void chargePayment(UUID customerId, PaymentRequest paymentRequest) {
-        //check if customer exists
-        if (customerRepository.findById(customerId).isEmpty())
+    /**
+     * Charges the card and records the payment. Retries of a payment sent with the client's idempotency key reach
+     * the card provider with the same key, the provider then returns the charge it already made.
+     */
+    public Payment chargePayment(UUID customerId, PaymentRequest paymentRequest, String idempotencyKey) {
+        Currency currency = paymentRequest.getCurrency();
+
+        //check if customer exists, without loading it
+        if (!timeStage("customer_lookup", currency, () -> customerExistenceCache.exists(customerId))) {
+            countRejection("customer_not_found", currency);
             throw new IllegalArgumentException(
                     String.format("Customer [%s] does not exist", customerId));
+        }
 
-        //check if currency is supported
-        if (!SUPPORTED_CURRENCIES.contains(paymentRequest.getCurrency()))
+        //check if some card provider takes the currency
+        if (!cardPaymentCharger.supports(currency)) {
+            countRejection("currency_not_supported", currency);
             throw new IllegalArgumentException(
-                    String.format("Currency [%s] not supported", paymentRequest.getCurrency()));
+                    String.format("Currency [%s] not supported", currency));
+        }
 
-        CardPaymentCharge cardPaymentCharge = cardPaymentCharger.chargeCard(
-                paymentRequest.getPaymentMethod(),
-                paymentRequest.getAmount(),
-                paymentRequest.getCurrency(),
-                paymentRequest.getPaymentDescription()
-        );
+        //decimal amounts stop here, from now on it is minor units
+        Money amount = paymentRequest.toMoney();
+
+        //timed by hand: which provider to tag with is only known once it charged
+        Timer.Sample charging = Timer.start(meterRegistry);
+        CardPaymentCharge cardPaymentCharge = null;
+        try {
+            cardPaymentCharge = awaitCharge(cardPaymentCharger.chargeCardAsync(
+                    paymentRequest.getPaymentMethod(),
+                    amount,
+                    paymentRequest.getPaymentDescription(),
+                    idempotencyKey == null
+                            ? UUID.randomUUID().toString()
+                            : IdempotencyService.providerKey(customerId, idempotencyKey)
+            ));
+        } finally {
+            charging.stop(stageTimer("card_charge", currency,
+                    cardPaymentCharge == null || cardPaymentCharge.getCharger() == null
+                            ? cardPaymentCharger.name()
+                            : cardPaymentCharge.getCharger()));
+        }
 
-        if(!cardPaymentCharge.isCardDebited())
+        if (!cardPaymentCharge.isCardDebited()) {
+            countRejection("card_not_debited", currency);
             throw new IllegalArgumentException(
                     String.format("Card not debited for customer [%s]", customerId));
+        }
 
         Payment payment = Payment.builder()
                 .paymentMethod(paymentRequest.getPaymentMethod())
-                .amount(paymentRequest.getAmount())
-                .currency(paymentRequest.getCurrency())
+                .amount(amount.minorUnits())
+                .currency(currency)
                 .paymentDescription(paymentRequest.getPaymentDescription())
                 .customerId(customerId)
+                //the time of the charge, a journaled payment may be inserted much later
+                .createdAt(Instant.now())
                 .build();
 
-        paymentRepository.save(payment);
+        //with write-behind the payment is durable once journaled, the insert happens in the background
+        timeStage("persist", currency, () -> paymentWriteBehind.isEnabled() && paymentWriteBehind.append(payment)
+                ? payment
+                : paymentRecorder.record(payment));
+        readYourWrites.wrote(customerId);
+        firstChargeTimer.chargeSucceeded();
+        return payment;
+    }
+
+    private <T> T timeStage(String stage, Currency currency, Supplier<T> supplier) {
+        return stageTimer(stage, currency, cardPaymentCharger.name()).record(supplier);
+    }
+
+    private Timer stageTimer(String stage, Currency currency, String charger) {
+        return Timer.builder("payment.charge.stage")
+                .description("Latency of each stage of a card payment")
+                .tag("stage", stage)
+                .tag("currency", String.valueOf(currency))
+                .tag("charger", charger)
+                .register(meterRegistry);
+    }
+
+    private void countRejection(String reason, Currency currency) {
+        meterRegistry.counter("payment.charge.rejected",
+                "reason", reason,
+                "currency", String.valueOf(currency)
+        ).increment();
+    }
 
+    private CardPaymentCharge awaitCharge(CompletableFuture<CardPaymentCharge> charge) {
+        try {
+            return charge.get();
+        } catch (InterruptedException e) {
+            //the request was abandoned: stop the charge instead of leaving it running
+            charge.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while charging card", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw new IllegalStateException("Can not charge card", e.getCause());
+        }
     }
 }
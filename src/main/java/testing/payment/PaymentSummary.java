@@ -0,0 +1,45 @@
+package testing.payment;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * Running totals of a customer's payments in one currency, kept up to date by {@link PaymentRecorder}.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@IdClass(PaymentSummary.Key.class)
+public class PaymentSummary {
+
+    @Id
+    private UUID customerId;
+    @Id
+    @Enumerated(EnumType.STRING)
+    private Currency currency;
+    private long paymentCount;
+    // amounts in minor units of the currency, see Money
+    private long totalAmount;
+    private long minAmount;
+    private long maxAmount;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private UUID customerId;
+        private Currency currency;
+    }
+}
@@ -0,0 +1,12 @@
+package testing.payment;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface PaymentSummaryRepository
+        extends JpaRepository<PaymentSummary, PaymentSummary.Key>, PaymentSummaryRollupRepository {
+
+    List<PaymentSummary> findByCustomerIdOrderByCurrency(UUID customerId);
+}
@@ -0,0 +1,37 @@
+package testing.payment;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * JSON view of a {@link PaymentSummary}, with amounts back in major units.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PaymentSummaryResponse {
+
+    private UUID customerId;
+    private Currency currency;
+    private long paymentCount;
+    private BigDecimal totalAmount;
+    private BigDecimal minAmount;
+    private BigDecimal maxAmount;
+
+    public static PaymentSummaryResponse from(PaymentSummary summary) {
+        Currency currency = summary.getCurrency();
+        return new PaymentSummaryResponse(
+                summary.getCustomerId(),
+                currency,
+                summary.getPaymentCount(),
+                new Money(summary.getTotalAmount(), currency).toBigDecimal(),
+                new Money(summary.getMinAmount(), currency).toBigDecimal(),
+                new Money(summary.getMaxAmount(), currency).toBigDecimal());
+    }
+}
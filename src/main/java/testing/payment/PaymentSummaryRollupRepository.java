@@ -0,0 +1,11 @@
+package testing.payment;
+
+import java.util.Collection;
+
+public interface PaymentSummaryRollupRepository {
+
+    /**
+     * Adds the payments to the summaries of their customer and currency, creating missing summaries.
+     */
+    void addToSummaries(Collection<Payment> payments);
+}
@@ -0,0 +1,98 @@
+package testing.payment;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import testing.utils.SqlDialect;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+class PaymentSummaryRollupRepositoryImpl implements PaymentSummaryRollupRepository {
+
+    private static final String MERGE_SUMMARY = """
+            MERGE INTO payment_summary s
+            USING (VALUES (CAST(? AS UUID), CAST(? AS VARCHAR), CAST(? AS BIGINT), CAST(? AS BIGINT),
+                           CAST(? AS BIGINT), CAST(? AS BIGINT)))
+                p(customer_id, currency, payment_count, total_amount, min_amount, max_amount)
+            ON s.customer_id = p.customer_id AND s.currency = p.currency
+            WHEN MATCHED THEN UPDATE SET
+                payment_count = s.payment_count + p.payment_count,
+                total_amount = s.total_amount + p.total_amount,
+                min_amount = LEAST(s.min_amount, p.min_amount),
+                max_amount = GREATEST(s.max_amount, p.max_amount)
+            WHEN NOT MATCHED THEN INSERT (customer_id, currency, payment_count, total_amount, min_amount, max_amount)
+                VALUES (p.customer_id, p.currency, p.payment_count, p.total_amount, p.min_amount, p.max_amount)
+            """;
+
+    private static final String INSERT_ON_CONFLICT_UPDATE = """
+            INSERT INTO payment_summary (customer_id, currency, payment_count, total_amount, min_amount, max_amount)
+            VALUES (?, ?, ?, ?, ?, ?)
+            ON CONFLICT (customer_id, currency) DO UPDATE SET
+                payment_count = payment_summary.payment_count + EXCLUDED.payment_count,
+                total_amount = payment_summary.total_amount + EXCLUDED.total_amount,
+                min_amount = LEAST(payment_summary.min_amount, EXCLUDED.min_amount),
+                max_amount = GREATEST(payment_summary.max_amount, EXCLUDED.max_amount)
+            """;
+
+    //a consistent order, so concurrent transactions lock the summary rows in the same order
+    private static final Comparator<PaymentSummary.Key> KEY_ORDER = Comparator
+            .comparing(PaymentSummary.Key::getCustomerId)
+            .thenComparing(PaymentSummary.Key::getCurrency);
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile String upsertSql;
+
+    PaymentSummaryRollupRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void addToSummaries(Collection<Payment> payments) {
+        //one upsert per customer and currency, however many payments the batch has
+        Map<PaymentSummary.Key, PaymentSummary> deltas = new TreeMap<>(KEY_ORDER);
+        for (Payment payment : payments) {
+            PaymentSummary.Key key = new PaymentSummary.Key(payment.getCustomerId(), payment.getCurrency());
+            PaymentSummary delta = deltas.get(key);
+            if (delta == null) {
+                deltas.put(key, new PaymentSummary(key.getCustomerId(), key.getCurrency(),
+                        1, payment.getAmount(), payment.getAmount(), payment.getAmount()));
+            } else {
+                delta.setPaymentCount(delta.getPaymentCount() + 1);
+                delta.setTotalAmount(Math.addExact(delta.getTotalAmount(), payment.getAmount()));
+                delta.setMinAmount(Math.min(delta.getMinAmount(), payment.getAmount()));
+                delta.setMaxAmount(Math.max(delta.getMaxAmount(), payment.getAmount()));
+            }
+        }
+
+        for (PaymentSummary delta : deltas.values()) {
+            try {
+                upsert(delta);
+            } catch (DuplicateKeyException e) {
+                //MERGE lost the race to insert the first summary, now there is a row to update
+                upsert(delta);
+            }
+        }
+    }
+
+    private void upsert(PaymentSummary delta) {
+        jdbcTemplate.update(upsertSql(),
+                delta.getCustomerId(),
+                delta.getCurrency().name(),
+                delta.getPaymentCount(),
+                delta.getTotalAmount(),
+                delta.getMinAmount(),
+                delta.getMaxAmount());
+    }
+
+    private String upsertSql() {
+        if (upsertSql == null) {
+            upsertSql = switch (SqlDialect.of(jdbcTemplate.getDataSource())) {
+                case H2 -> MERGE_SUMMARY;
+                case POSTGRESQL -> INSERT_ON_CONFLICT_UPDATE;
+            };
+        }
+        return upsertSql;
+    }
+}
@@ -0,0 +1,204 @@
+package testing.payment;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+import testing.replica.ReplicaRouting;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Optional write-behind for charged payments (payment.write-behind.enabled).
+ * A payment is durable once it is in the local journal, a background thread inserts the journaled payments in
+ * batches and records the last inserted sequence in the same transaction, so replaying the journal on startup
+ * neither loses nor duplicates payments.
+ */
+@Slf4j
+@Component
+public class PaymentWriteBehind implements MeterBinder {
+
+    private final PaymentRecorder paymentRecorder;
+    private final PaymentJournalCheckpointRepository checkpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Path journalFile;
+    private final DataSize journalSize;
+    private final int batchSize;
+    private final Duration flushInterval;
+
+    //appends are serialized, the queue keeps them in sequence order
+    private final ReentrantLock journalLock = new ReentrantLock();
+    private final Queue<PaymentJournal.Entry> pending = new ConcurrentLinkedQueue<>();
+    //journaled but not yet inserted, only touched while flushing
+    private final List<PaymentJournal.Entry> unflushed = new ArrayList<>();
+    private final AtomicInteger backlog = new AtomicInteger();
+    private long flushedSequence;
+    private PaymentJournal journal;
+    private ScheduledExecutorService flusher;
+
+    public PaymentWriteBehind(PaymentRecorder paymentRecorder,
+                              PaymentJournalCheckpointRepository checkpointRepository,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${payment.write-behind.enabled:false}") boolean enabled,
+                              @Value("${payment.write-behind.journal:payment-journal.dat}") Path journalFile,
+                              @Value("${payment.write-behind.journal-size:64MB}") DataSize journalSize,
+                              @Value("${payment.write-behind.batch-size:500}") int batchSize,
+                              @Value("${payment.write-behind.flush-interval:50ms}") Duration flushInterval) {
+        this.paymentRecorder = paymentRecorder;
+        this.checkpointRepository = checkpointRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.journalFile = journalFile;
+        this.journalSize = journalSize;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Journals the payment to be inserted in the background.
+     * Returns false when the journal is full, the caller then has to save the payment itself.
+     */
+    public boolean append(Payment payment) {
+        journalLock.lock();
+        try {
+            long sequence = journal.append(payment);
+            if (sequence < 0)
+                return false;
+            pending.add(new PaymentJournal.Entry(sequence, copyOf(payment)));
+        } finally {
+            journalLock.unlock();
+        }
+        backlog.incrementAndGet();
+        return true;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled)
+            return;
+
+        journal = new PaymentJournal(journalFile, Math.toIntExact(journalSize.toBytes()));
+        //a stale checkpoint would insert flushed payments again
+        flushedSequence = ReplicaRouting.onPrimary(() -> checkpointRepository.findById(journalName()))
+                .map(PaymentJournalCheckpoint::getFlushedSequence)
+                .orElse(0L);
+        journal.advanceSequencePast(flushedSequence);
+
+        //payments journaled before a crash but not inserted yet
+        for (PaymentJournal.Entry entry : journal.readAll()) {
+            if (entry.sequence() > flushedSequence) {
+                unflushed.add(entry);
+                backlog.incrementAndGet();
+            }
+        }
+        flushQuietly();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "payment-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly,
+                flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!enabled)
+            return;
+
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        //whatever cannot be inserted now stays in the journal for the next start
+        flushQuietly();
+        journal.close();
+    }
+
+    /**
+     * Inserts every journaled payment in batches, then starts the journal over if nothing new came in meanwhile.
+     * Under steady traffic something always came in, the journal is then compacted once half full.
+     */
+    synchronized void flush() {
+        PaymentJournal.Entry entry;
+        while ((entry = pending.poll()) != null)
+            unflushed.add(entry);
+
+        while (!unflushed.isEmpty()) {
+            List<PaymentJournal.Entry> batch = unflushed.subList(0, Math.min(batchSize, unflushed.size()));
+            long lastSequence = batch.get(batch.size() - 1).sequence();
+            //fresh entities per attempt, a rolled back insert leaves its id behind
+            List<Payment> payments = batch.stream().map(e -> copyOf(e.payment())).toList();
+
+            transactionTemplate.executeWithoutResult(status -> {
+                paymentRecorder.recordAll(payments);
+                checkpointRepository.save(new PaymentJournalCheckpoint(journalName(), lastSequence));
+            });
+            backlog.addAndGet(-batch.size());
+            flushedSequence = lastSequence;
+            batch.clear();
+        }
+
+        journalLock.lock();
+        try {
+            if (pending.isEmpty())
+                journal.clear();
+            else if (journal.size() > journal.capacity() / 2)
+                journal = journal.compact(flushedSequence);
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("payment.write_behind.backlog", backlog, AtomicInteger::get)
+                .description("Payments journaled but not yet inserted")
+                .register(registry);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            //the payments stay journaled, the next run retries them
+            log.warn("Could not flush {} journaled payments", backlog.get(), e);
+        }
+    }
+
+    private String journalName() {
+        return journalFile.getFileName().toString();
+    }
+
+    private static Payment copyOf(Payment payment) {
+        return Payment.builder()
+                .paymentMethod(payment.getPaymentMethod())
+                .paymentDescription(payment.getPaymentDescription())
+                .amount(payment.getAmount())
+                .currency(payment.getCurrency())
+                .customerId(payment.getCustomerId())
+                .createdAt(payment.getCreatedAt())
+                .build();
+    }
+}
@@ -0,0 +1,217 @@
+package testing.payment;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+
+/**
+ * Protects callers from a degraded card provider:
+ * a bulkhead caps the charges in flight, a circuit breaker fails fast once too many charges fail or are slow,
+ * and every charge is given up after a timeout derived from the p99 latency of the recent charges.
+ * Charges refused by the bulkhead or the open circuit fail with {@link CardChargeRejectedException}.
+ * A charge the provider refused as invalid ({@link InvalidCardChargeException}) is a healthy call.
+ */
+public class ResilientCardPaymentCharger implements CardPaymentCharger {
+
+    private final CardPaymentCharger delegate;
+    private final Settings settings;
+    private final LongSupplier nanoTime;
+    private final Semaphore bulkhead;
+    private final CircuitBreaker circuitBreaker;
+    private final AdaptiveTimeout timeout;
+    private final Counter bulkheadRejections;
+    private final Counter circuitRejections;
+    private final Counter timeouts;
+
+    public ResilientCardPaymentCharger(CardPaymentCharger delegate, Settings settings, MeterRegistry meterRegistry) {
+        this(delegate, settings, meterRegistry, System::nanoTime);
+    }
+
+    ResilientCardPaymentCharger(CardPaymentCharger delegate, Settings settings, MeterRegistry meterRegistry,
+                                LongSupplier nanoTime) {
+        this.delegate = delegate;
+        this.settings = settings;
+        this.nanoTime = nanoTime;
+        this.bulkhead = new Semaphore(settings.getMaxConcurrentCharges());
+        this.circuitBreaker = new CircuitBreaker(settings.getWindowSize(), settings.getUnhealthyRateThreshold(),
+                settings.getSlowCallThreshold(), settings.getOpenDuration(), settings.getHalfOpenCalls(), nanoTime);
+        this.timeout = new AdaptiveTimeout(settings.getTimeoutSampleSize(), settings.getMinTimeout(),
+                settings.getMaxTimeout(), settings.getTimeoutMultiplier());
+
+        String charger = delegate.name();
+        Gauge.builder("payment.charger.circuit.state", circuitBreaker, c -> c.state().ordinal())
+                .description("Circuit state: 0 closed, 1 open, 2 half open")
+                .tag("charger", charger)
+                .register(meterRegistry);
+        Gauge.builder("payment.charger.bulkhead.available", bulkhead, Semaphore::availablePermits)
+                .description("Charges that can still start before the bulkhead rejects")
+                .tag("charger", charger)
+                .register(meterRegistry);
+        Gauge.builder("payment.charger.timeout", timeout, t -> t.current().toNanos() / 1e9)
+                .description("Timeout currently applied to charges")
+                .tag("charger", charger)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        this.bulkheadRejections = rejections(meterRegistry, charger, "bulkhead_full");
+        this.circuitRejections = rejections(meterRegistry, charger, "circuit_open");
+        this.timeouts = Counter.builder("payment.charger.timeouts")
+                .tag("charger", charger)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public CardPaymentCharge chargeCard(String method, Money amount, String description) {
+        CompletableFuture<CardPaymentCharge> charge = chargeCardAsync(method, amount, description);
+        try {
+            return charge.get();
+        } catch (InterruptedException e) {
+            charge.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while charging card", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw new IllegalStateException("Can not charge card", e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<CardPaymentCharge> chargeCardAsync(String method, Money amount, String description) {
+        return chargeCardAsync(method, amount, description, null);
+    }
+
+    @Override
+    public CompletableFuture<CardPaymentCharge> chargeCardAsync(String method, Money amount, String description,
+                                                                String idempotencyKey) {
+        acquire();
+        long start = nanoTime.getAsLong();
+        Duration chargeTimeout = timeout.current();
+
+        CompletableFuture<CardPaymentCharge> charge;
+        try {
+            charge = delegate.chargeCardAsync(method, amount, description, idempotencyKey);
+        } catch (RuntimeException e) {
+            release(!InvalidCardChargeException.isCauseOf(e), start);
+            throw e;
+        }
+
+        CompletableFuture<CardPaymentCharge> result = new CompletableFuture<>();
+        //a timed out charge is cancelled, which aborts the underlying request. The provider may have made it
+        //anyway, a retry with the same idempotency key then gets the original charge back
+        charge.orTimeout(chargeTimeout.toNanos(), TimeUnit.NANOSECONDS).whenComplete((chargeResult, e) -> {
+            //declined cards and bad requests are answers, only errors and timeouts say the provider is unwell
+            release(e != null && !InvalidCardChargeException.isCauseOf(e), start);
+            if (e == null) {
+                result.complete(chargeResult);
+            } else if (unwrap(e) instanceof TimeoutException) {
+                timeouts.increment();
+                result.completeExceptionally(new IllegalStateException(String.format(
+                        "Card charge timed out after [%d] ms", chargeTimeout.toMillis()), e));
+            } else {
+                result.completeExceptionally(unwrap(e));
+            }
+        });
+        //the caller giving up cancels the charge as well
+        result.whenComplete((chargeResult, e) -> {
+            if (result.isCancelled())
+                charge.cancel(true);
+        });
+        return result;
+    }
+
+    @Override
+    public boolean supports(Currency currency) {
+        return delegate.supports(currency);
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+
+    CircuitBreaker.State circuitState() {
+        return circuitBreaker.state();
+    }
+
+    Duration currentTimeout() {
+        return timeout.current();
+    }
+
+    private void acquire() {
+        boolean permitted;
+        try {
+            permitted = bulkhead.tryAcquire(settings.getMaxWait().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a charge slot", e);
+        }
+        if (!permitted) {
+            bulkheadRejections.increment();
+            throw new CardChargeRejectedException(String.format(
+                    "Too many charges in flight for [%s]", name()));
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            bulkhead.release();
+            circuitRejections.increment();
+            throw new CardChargeRejectedException(String.format(
+                    "Circuit for [%s] is open", name()));
+        }
+    }
+
+    private void release(boolean failed, long start) {
+        long latency = nanoTime.getAsLong() - start;
+        bulkhead.release();
+        circuitBreaker.onResult(failed, latency);
+        timeout.record(latency);
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private static Counter rejections(MeterRegistry meterRegistry, String charger, String reason) {
+        return Counter.builder("payment.charger.rejected")
+                .description("Charges refused without reaching the card provider")
+                .tag("charger", charger)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    @Getter
+    @Builder
+    public static class Settings {
+        @Builder.Default
+        private int maxConcurrentCharges = 50;
+        @Builder.Default
+        private Duration maxWait = Duration.ZERO;
+        @Builder.Default
+        private int windowSize = 50;
+        @Builder.Default
+        private double unhealthyRateThreshold = 0.5;
+        @Builder.Default
+        private Duration slowCallThreshold = Duration.ofSeconds(2);
+        @Builder.Default
+        private Duration openDuration = Duration.ofSeconds(30);
+        @Builder.Default
+        private int halfOpenCalls = 5;
+        @Builder.Default
+        private int timeoutSampleSize = 200;
+        @Builder.Default
+        private Duration minTimeout = Duration.ofMillis(500);
+        @Builder.Default
+        private Duration maxTimeout = Duration.ofSeconds(10);
+        @Builder.Default
+        private double timeoutMultiplier = 3;
+    }
+}
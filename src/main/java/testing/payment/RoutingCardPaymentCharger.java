@@ -0,0 +1,265 @@
+package testing.payment;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Spreads charges over several card providers.
+ * <p>
+ * Each charge goes to the provider supporting its currency with the lowest expected time to a successful charge:
+ * its recent latency divided by its recent success rate, plus a penalty per failure so that a provider failing fast
+ * does not look fast. Latency and error rate are moving averages. A small share of charges goes to another
+ * provider so a provider that recovered gets noticed.
+ * <p>
+ * A charge fails over to the next provider only when the provider certainly did not receive it (refused by its
+ * bulkhead or circuit breaker, or no connection could be made). A timed out or failed charge may have been
+ * processed, retrying it elsewhere could debit the card twice.
+ */
+public class RoutingCardPaymentCharger implements CardPaymentCharger {
+
+    //weight of the newest sample in the moving averages
+    private static final double ALPHA = 0.2;
+    //a failed charge costs as much as a charge this slow
+    private static final double FAILURE_PENALTY_NANOS = Duration.ofSeconds(1).toNanos();
+
+    private final List<Route> routes;
+    private final double exploreRate;
+    private final LongSupplier nanoTime;
+    private final DoubleSupplier random;
+
+    public RoutingCardPaymentCharger(List<CardPaymentCharger> providers, double exploreRate,
+                                     MeterRegistry meterRegistry) {
+        this(providers, exploreRate, meterRegistry, System::nanoTime, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    RoutingCardPaymentCharger(List<CardPaymentCharger> providers, double exploreRate, MeterRegistry meterRegistry,
+                              LongSupplier nanoTime, DoubleSupplier random) {
+        if (providers.isEmpty())
+            throw new IllegalArgumentException("At least one card provider is required");
+        this.routes = providers.stream().map(provider -> new Route(provider, meterRegistry)).toList();
+        this.exploreRate = exploreRate;
+        this.nanoTime = nanoTime;
+        this.random = random;
+    }
+
+    @Override
+    public boolean supports(Currency currency) {
+        return routes.stream().anyMatch(route -> route.provider.supports(currency));
+    }
+
+    @Override
+    public CardPaymentCharge chargeCard(String method, Money amount, String description) {
+        RuntimeException failure = null;
+        for (Route route : candidates(amount.currency())) {
+            long start = nanoTime.getAsLong();
+            try {
+                CardPaymentCharge charge = route.provider.chargeCard(method, amount, description);
+                route.onSuccess(nanoTime.getAsLong() - start);
+                return route.served(charge);
+            } catch (RuntimeException e) {
+                route.onFailure(nanoTime.getAsLong() - start, e);
+                if (!notAttempted(e))
+                    throw e;
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    @Override
+    public CompletableFuture<CardPaymentCharge> chargeCardAsync(String method, Money amount, String description) {
+        return chargeCardAsync(method, amount, description, null);
+    }
+
+    @Override
+    public CompletableFuture<CardPaymentCharge> chargeCardAsync(String method, Money amount, String description,
+                                                                String idempotencyKey) {
+        List<Route> candidates = candidates(amount.currency());
+        CompletableFuture<CardPaymentCharge> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<CardPaymentCharge>> attempt = new AtomicReference<>();
+        //the caller giving up cancels whichever provider is charging
+        result.whenComplete((charge, e) -> {
+            if (result.isCancelled() && attempt.get() != null)
+                attempt.get().cancel(true);
+        });
+        charge(candidates, 0, new CardChargeRequest(method, amount, description, idempotencyKey), result, attempt);
+        return result;
+    }
+
+    @Override
+    public String name() {
+        return routes.stream().map(route -> route.provider.name()).collect(Collectors.joining("+"));
+    }
+
+    private void charge(List<Route> candidates, int index, CardChargeRequest request,
+                        CompletableFuture<CardPaymentCharge> result,
+                        AtomicReference<CompletableFuture<CardPaymentCharge>> attempt) {
+        if (result.isDone())
+            return;
+
+        Route route = candidates.get(index);
+        boolean last = index == candidates.size() - 1;
+        long start = nanoTime.getAsLong();
+        CompletableFuture<CardPaymentCharge> charge;
+        try {
+            charge = route.provider.chargeCardAsync(
+                    request.method(), request.amount(), request.description(), request.idempotencyKey());
+        } catch (RuntimeException e) {
+            route.onFailure(nanoTime.getAsLong() - start, e);
+            if (last || !notAttempted(e))
+                result.completeExceptionally(e);
+            else
+                charge(candidates, index + 1, request, result, attempt);
+            return;
+        }
+
+        attempt.set(charge);
+        charge.whenComplete((cardPaymentCharge, e) -> {
+            long latency = nanoTime.getAsLong() - start;
+            if (e == null) {
+                route.onSuccess(latency);
+                result.complete(route.served(cardPaymentCharge));
+                return;
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            route.onFailure(latency, cause);
+            if (last || !notAttempted(cause))
+                result.completeExceptionally(cause);
+            else
+                charge(candidates, index + 1, request, result, attempt);
+        });
+    }
+
+    /**
+     * Providers supporting the currency, best first.
+     */
+    private List<Route> candidates(Currency currency) {
+        List<Route> candidates = new ArrayList<>(routes.stream()
+                .filter(route -> route.provider.supports(currency))
+                .sorted(Comparator.comparingDouble(Route::expectedLatency))
+                .toList());
+        if (candidates.isEmpty())
+            throw new IllegalArgumentException(String.format("Currency [%s] not supported", currency));
+
+        if (candidates.size() > 1 && random.getAsDouble() < exploreRate) {
+            int other = 1 + (int) (random.getAsDouble() * (candidates.size() - 1));
+            Collections.swap(candidates, 0, other);
+        }
+        return candidates;
+    }
+
+    private static boolean notAttempted(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CardChargeRejectedException
+                    || cause instanceof ConnectException
+                    || cause instanceof HttpConnectTimeoutException)
+                return true;
+        }
+        return false;
+    }
+
+    private static class Route {
+
+        private final CardPaymentCharger provider;
+        private final Counter successes;
+        private final Counter failures;
+        private final Counter failovers;
+        private final Counter invalidCharges;
+        //no samples yet: looks instant so it is tried soon
+        private double latencyNanos;
+        private double errorRate;
+        private boolean sampled;
+
+        Route(CardPaymentCharger provider, MeterRegistry meterRegistry) {
+            this.provider = provider;
+            String charger = provider.name();
+            this.successes = outcome(meterRegistry, charger, "success");
+            this.failures = outcome(meterRegistry, charger, "failure");
+            this.failovers = outcome(meterRegistry, charger, "not_attempted");
+            this.invalidCharges = outcome(meterRegistry, charger, "invalid_charge");
+            Gauge.builder("payment.charger.route.latency", this, route -> route.latency() / 1e9)
+                    .description("Moving average of the charge latency used for routing")
+                    .tag("charger", charger)
+                    .baseUnit("seconds")
+                    .register(meterRegistry);
+            Gauge.builder("payment.charger.route.error_rate", this, Route::errorRate)
+                    .description("Moving average of the share of failed charges used for routing")
+                    .tag("charger", charger)
+                    .register(meterRegistry);
+        }
+
+        synchronized void onSuccess(long latency) {
+            successes.increment();
+            sample(latency, 0);
+        }
+
+        synchronized void onFailure(long latency, Throwable e) {
+            if (InvalidCardChargeException.isCauseOf(e)) {
+                //the provider answered, a bad card says nothing about its health
+                invalidCharges.increment();
+                sample(latency, 0);
+                return;
+            }
+            if (notAttempted(e)) {
+                //no round trip to learn a latency from
+                failovers.increment();
+                errorRate = ALPHA + (1 - ALPHA) * errorRate;
+                return;
+            }
+            failures.increment();
+            sample(latency, 1);
+        }
+
+        //callers tag their metrics with the provider that charged, not the routing name
+        CardPaymentCharge served(CardPaymentCharge charge) {
+            return new CardPaymentCharge(charge.isCardDebited(), provider.name());
+        }
+
+        synchronized double expectedLatency() {
+            //expected time until a charge succeeds when failed attempts are retried
+            return latencyNanos / Math.max(1 - errorRate, 0.01) + errorRate * FAILURE_PENALTY_NANOS;
+        }
+
+        private void sample(long latency, double error) {
+            if (!sampled) {
+                latencyNanos = latency;
+                sampled = true;
+            } else {
+                latencyNanos = ALPHA * latency + (1 - ALPHA) * latencyNanos;
+            }
+            errorRate = ALPHA * error + (1 - ALPHA) * errorRate;
+        }
+
+        private synchronized double latency() {
+            return latencyNanos;
+        }
+
+        private synchronized double errorRate() {
+            return errorRate;
+        }
+
+        private static Counter outcome(MeterRegistry meterRegistry, String charger, String outcome) {
+            return Counter.builder("payment.charger.route")
+                    .description("Charges routed to a provider by outcome")
+                    .tag("charger", charger)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry);
+        }
+    }
+}
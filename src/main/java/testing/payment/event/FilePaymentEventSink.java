@@ -0,0 +1,225 @@
+package testing.payment.event;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Appends the events as JSON lines to one file per partition ({@code partition-<n>.ndjson}), the offset of an
+ * event being its line number. Each publish is forced to disk before the relay deletes the events from the outbox.
+ * <p>
+ * A sparse index in memory keeps the byte position of every {@value #INDEX_INTERVAL}th line, so a read seeks close
+ * to its offset and scans at most that many lines, instead of the whole file. The index of a partition is built by
+ * one scan of its file the first time the partition is used, which also truncates a last line torn by a crash,
+ * and kept up to date by publish afterwards.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "payment.events.sink", havingValue = "file")
+public class FilePaymentEventSink implements PaymentEventSink {
+
+    static final int INDEX_INTERVAL = 1000;
+
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final int partitions;
+    private final LineIndex[] indexes;
+
+    public FilePaymentEventSink(ObjectMapper objectMapper,
+                                @Value("${payment.events.file.directory:payment-events}") Path directory,
+                                @Value("${payment.events.partitions:8}") int partitions) {
+        if (partitions < 1)
+            throw new IllegalArgumentException("There must be at least one partition");
+        this.objectMapper = objectMapper;
+        this.directory = directory;
+        this.partitions = partitions;
+        this.indexes = new LineIndex[partitions];
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create payment event directory " + directory, e);
+        }
+    }
+
+    @Override
+    public int partitions() {
+        return partitions;
+    }
+
+    @Override
+    public synchronized void publish(List<PaymentEventMessage> events) {
+        List<List<byte[]>> lines = new ArrayList<>(partitions);
+        for (int partition = 0; partition < partitions; partition++)
+            lines.add(new ArrayList<>());
+        for (PaymentEventMessage event : events)
+            lines.get(partitionOf(event.customerId())).add(toJson(event));
+
+        for (int partition = 0; partition < partitions; partition++) {
+            List<byte[]> partitionLines = lines.get(partition);
+            if (partitionLines.isEmpty())
+                continue;
+            LineIndex index = index(partition);
+            try (FileChannel channel = FileChannel.open(file(partition),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer[] bytes = partitionLines.stream().map(ByteBuffer::wrap).toArray(ByteBuffer[]::new);
+                while (bytes[bytes.length - 1].hasRemaining())
+                    channel.write(bytes);
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write payment events", e);
+            }
+            //only once forced, a reader never seeks to a line that is not on disk
+            partitionLines.forEach(line -> index.appended(line.length));
+        }
+    }
+
+    @Override
+    public List<PaymentEventRecord> read(int partition, long offset, int max) {
+        Path file = file(partition);
+        if (!Files.exists(file))
+            return List.of();
+
+        LineIndex.Position start = index(partition).floor(offset);
+        List<PaymentEventRecord> records = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(start.bytes());
+            BufferedReader reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+            long next = start.line();
+            String line;
+            while (records.size() < max && (line = reader.readLine()) != null) {
+                if (next < offset) {
+                    next++;
+                    continue;
+                }
+                //a line still being written does not parse yet, it is left for the next read; one torn by a crash
+                //was truncated when the partition was indexed
+                PaymentEventMessage event = fromJson(line);
+                if (event == null)
+                    break;
+                records.add(new PaymentEventRecord(next++, event));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read payment events", e);
+        }
+        return records;
+    }
+
+    //waits for a publish in progress, whose lines a consumer may have read already
+    @Override
+    public synchronized long endOffset(int partition) {
+        return index(partition).lines();
+    }
+
+    private LineIndex index(int partition) {
+        synchronized (indexes) {
+            if (indexes[partition] == null)
+                indexes[partition] = LineIndex.scan(file(partition));
+            return indexes[partition];
+        }
+    }
+
+    private Path file(int partition) {
+        return directory.resolve("partition-" + partition + ".ndjson");
+    }
+
+    private byte[] toJson(PaymentEventMessage event) {
+        try {
+            return (objectMapper.writeValueAsString(event) + '\n').getBytes(StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize payment event " + event.eventId(), e);
+        }
+    }
+
+    private PaymentEventMessage fromJson(String line) {
+        try {
+            return objectMapper.readValue(line, PaymentEventMessage.class);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Byte position of every {@value #INDEX_INTERVAL}th complete line of a partition file.
+     */
+    private static class LineIndex {
+
+        private final List<Long> positions = new ArrayList<>();
+        private long lines;
+        private long bytes;
+
+        static LineIndex scan(Path file) {
+            LineIndex index = new LineIndex();
+            if (!Files.exists(file))
+                return index;
+            long length = 0;
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                int b;
+                while ((b = in.read()) != -1) {
+                    length++;
+                    if (b == '\n') {
+                        index.appended(length);
+                        length = 0;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot index payment events of " + file, e);
+            }
+            //a line torn by a crash mid-publish would merge with the next one into a line that never parses
+            if (length > 0)
+                index.truncateTornLine(file, length);
+            return index;
+        }
+
+        synchronized void appended(long lineLength) {
+            if (lines % INDEX_INTERVAL == 0)
+                positions.add(bytes);
+            lines++;
+            bytes += lineLength;
+        }
+
+        private void truncateTornLine(Path file, long length) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(bytes);
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot truncate the torn payment event of " + file, e);
+            }
+            log.warn("Truncated a torn payment event of {} bytes at the end of {}", length, file);
+        }
+
+        synchronized long lines() {
+            return lines;
+        }
+
+        /**
+         * The indexed line at or before {@code offset}, where reading it has to start.
+         */
+        synchronized Position floor(long offset) {
+            if (positions.isEmpty())
+                return new Position(0, 0);
+            int entry = (int) Math.min(offset / INDEX_INTERVAL, positions.size() - 1);
+            return new Position((long) entry * INDEX_INTERVAL, positions.get(entry));
+        }
+
+        record Position(long line, long bytes) {
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package testing.payment.event;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import testing.payment.Currency;
+import testing.payment.Payment;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Outbox row, written in the transaction that saves the payment and deleted once relayed.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+public class PaymentEvent {
+
+    public static final String PAYMENT_CREATED = "payment.created";
+
+    // no pooled allocation: ids follow the order events are written even across instances, so the relay
+    // publishes roughly oldest first. Ids are taken before commit though: a transaction committing late shows
+    // its lower id after higher ones were relayed. The relay deletes what it published instead of remembering
+    // the last id, so such an event is still relayed, only out of id order
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "payment_event_id_seq")
+    @SequenceGenerator(name = "payment_event_id_seq", sequenceName = "payment_event_id_seq", allocationSize = 1)
+    private long eventId;
+    @Column(nullable = false)
+    private String type;
+    private long paymentId;
+    @Column(nullable = false)
+    private UUID customerId;
+    // in minor units of the currency
+    private long amount;
+    @Enumerated(EnumType.STRING)
+    private Currency currency;
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    // stamped with the time of the payment, not of the insert, consumers bucket events by it
+    public static PaymentEvent paymentCreated(Payment payment) {
+        return PaymentEvent.builder()
+                .type(PAYMENT_CREATED)
+                .paymentId(payment.getPaymentId())
+                .customerId(payment.getCustomerId())
+                .amount(payment.getAmount())
+                .currency(payment.getCurrency())
+                .createdAt(payment.getCreatedAt())
+                .build();
+    }
+}
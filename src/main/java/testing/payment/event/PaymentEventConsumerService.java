@@ -0,0 +1,73 @@
+package testing.payment.event;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Reads the sink on behalf of named consumers, each keeping its own offset per partition.
+ * Consumers commit the offset after the last event they processed, so nothing is skipped if they fail in between.
+ */
+@Service
+@RequiredArgsConstructor
+public class PaymentEventConsumerService {
+
+    static final int MAX_POLL_SIZE = 1000;
+
+    private final PaymentEventSink paymentEventSink;
+    private final PaymentEventOffsetRepository paymentEventOffsetRepository;
+
+    public int partitions() {
+        return paymentEventSink.partitions();
+    }
+
+    /**
+     * The next events of the partition for this consumer, starting at its committed offset.
+     * Throws when the sink already dropped events from that offset on, or lost them with the log the offset was
+     * committed against, e.g. the memory sink after a restart: the consumer has to commit an offset the log has
+     * to acknowledge the gap and go on.
+     */
+    public List<PaymentEventRecord> poll(String consumer, int partition, int max) {
+        validate(consumer, partition);
+        if (max < 1 || max > MAX_POLL_SIZE)
+            throw new IllegalArgumentException(
+                    String.format("Poll size must be between 1 and %d", MAX_POLL_SIZE));
+
+        long offset = paymentEventOffsetRepository.findById(new PaymentEventOffset.Key(consumer, partition))
+                .map(PaymentEventOffset::getNextOffset)
+                .orElse(0L);
+        long firstOffset = paymentEventSink.firstOffset(partition);
+        if (offset < firstOffset)
+            throw new IllegalStateException(String.format(
+                    "Events [%d] to [%d] of partition [%d] were dropped before consumer [%s] read them, "
+                            + "commit offset [%d] to skip them", offset, firstOffset - 1, partition, consumer,
+                    firstOffset));
+        //reading on would return nothing until the log got there, and then events the consumer never saw before
+        long endOffset = paymentEventSink.endOffset(partition);
+        if (offset > endOffset)
+            throw new IllegalStateException(String.format(
+                    "Consumer [%s] is at offset [%d] of partition [%d] but the log ends at [%d], its events were "
+                            + "lost, commit an offset up to [%d] to go on", consumer, offset, partition, endOffset,
+                    endOffset));
+        return paymentEventSink.read(partition, offset, max);
+    }
+
+    /**
+     * Moves the consumer to {@code nextOffset}, backwards as well to replay events.
+     */
+    public void commit(String consumer, int partition, long nextOffset) {
+        validate(consumer, partition);
+        if (nextOffset < 0)
+            throw new IllegalArgumentException(String.format("Offset [%d] cannot be negative", nextOffset));
+        paymentEventOffsetRepository.save(new PaymentEventOffset(consumer, partition, nextOffset));
+    }
+
+    private void validate(String consumer, int partition) {
+        if (consumer == null || consumer.isBlank())
+            throw new IllegalArgumentException("Consumer cannot be blank");
+        if (partition < 0 || partition >= paymentEventSink.partitions())
+            throw new IllegalArgumentException(String.format(
+                    "Partition [%d] does not exist, there are %d partitions", partition, paymentEventSink.partitions()));
+    }
+}
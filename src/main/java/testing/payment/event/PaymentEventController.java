@@ -0,0 +1,33 @@
+package testing.payment.event;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/payment/events")
+@RequiredArgsConstructor
+public class PaymentEventController {
+
+    private final PaymentEventConsumerService paymentEventConsumerService;
+
+    @GetMapping("/partitions")
+    public int getPartitions() {
+        return paymentEventConsumerService.partitions();
+    }
+
+    @GetMapping("/{partition}")
+    public List<PaymentEventRecord> poll(@PathVariable int partition,
+                                         @RequestParam String consumer,
+                                         @RequestParam(defaultValue = "100") int max) {
+        return paymentEventConsumerService.poll(consumer, partition, max);
+    }
+
+    @PutMapping("/{partition}/offset")
+    public void commit(@PathVariable int partition,
+                       @RequestParam String consumer,
+                       @RequestParam long offset) {
+        paymentEventConsumerService.commit(consumer, partition, offset);
+    }
+}
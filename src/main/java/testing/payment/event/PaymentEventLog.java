@@ -0,0 +1,104 @@
+package testing.payment.event;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-process stand-in for a message broker: a partitioned log kept in memory, holding up to the last
+ * {@code max-events-per-partition} events of each partition. Events are lost on restart.
+ * Dropped events are counted by {@code payment.events.dropped}, and consumers behind them are told so on their
+ * next poll, see {@link PaymentEventConsumerService#poll}. Offsets start over at 0 on restart, consumers ahead of
+ * the new log are told so as well. Use the file sink to keep every event.
+ */
+@Component
+@ConditionalOnProperty(value = "payment.events.sink", havingValue = "memory", matchIfMissing = true)
+public class PaymentEventLog implements PaymentEventSink {
+
+    private final Partition[] partitions;
+    private final int maxEventsPerPartition;
+    private final Counter dropped;
+
+    @Autowired
+    public PaymentEventLog(@Value("${payment.events.partitions:8}") int partitions,
+                           @Value("${payment.events.memory.max-events-per-partition:100000}") int maxEventsPerPartition,
+                           MeterRegistry meterRegistry) {
+        if (partitions < 1)
+            throw new IllegalArgumentException("There must be at least one partition");
+        this.partitions = new Partition[partitions];
+        for (int i = 0; i < partitions; i++)
+            this.partitions[i] = new Partition();
+        this.maxEventsPerPartition = maxEventsPerPartition;
+        this.dropped = Counter.builder("payment.events.dropped")
+                .description("Events dropped from a full partition before every consumer may have read them")
+                .register(meterRegistry);
+    }
+
+    PaymentEventLog(int partitions, int maxEventsPerPartition) {
+        this(partitions, maxEventsPerPartition, new SimpleMeterRegistry());
+    }
+
+    @Override
+    public int partitions() {
+        return partitions.length;
+    }
+
+    @Override
+    public void publish(List<PaymentEventMessage> events) {
+        for (PaymentEventMessage event : events) {
+            Partition partition = partitions[partitionOf(event.customerId())];
+            synchronized (partition) {
+                partition.events.add(event);
+                //the oldest tenth goes at once so trimming stays cheap, the offsets of dropped events stay taken
+                if (partition.events.size() > maxEventsPerPartition) {
+                    int oldest = Math.max(1, maxEventsPerPartition / 10);
+                    partition.events.subList(0, oldest).clear();
+                    partition.firstOffset += oldest;
+                    dropped.increment(oldest);
+                }
+            }
+        }
+    }
+
+    @Override
+    public long firstOffset(int partition) {
+        Partition log = partitions[partition];
+        synchronized (log) {
+            return log.firstOffset;
+        }
+    }
+
+    @Override
+    public long endOffset(int partition) {
+        Partition log = partitions[partition];
+        synchronized (log) {
+            return log.firstOffset + log.events.size();
+        }
+    }
+
+    @Override
+    public List<PaymentEventRecord> read(int partition, long offset, int max) {
+        Partition log = partitions[partition];
+        List<PaymentEventRecord> records = new ArrayList<>();
+        synchronized (log) {
+            //offsets dropped already are skipped
+            long from = Math.max(offset, log.firstOffset);
+            long to = Math.min(from + max, log.firstOffset + log.events.size());
+            for (long next = from; next < to; next++)
+                records.add(new PaymentEventRecord(next, log.events.get((int) (next - log.firstOffset))));
+        }
+        return records;
+    }
+
+    private static class Partition {
+        private final List<PaymentEventMessage> events = new ArrayList<>();
+        private long firstOffset;
+    }
+}
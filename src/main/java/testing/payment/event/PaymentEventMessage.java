@@ -0,0 +1,34 @@
+package testing.payment.event;
+
+import testing.payment.Currency;
+import testing.payment.Money;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A payment event as published to consumers. Delivery is at least once, consumers skip event ids already seen.
+ */
+public record PaymentEventMessage(
+        long eventId,
+        String type,
+        long paymentId,
+        UUID customerId,
+        BigDecimal amount,
+        Currency currency,
+        Instant createdAt
+) {
+
+    static PaymentEventMessage from(PaymentEvent event) {
+        return new PaymentEventMessage(
+                event.getEventId(),
+                event.getType(),
+                event.getPaymentId(),
+                event.getCustomerId(),
+                new Money(event.getAmount(), event.getCurrency()).toBigDecimal(),
+                event.getCurrency(),
+                event.getCreatedAt()
+        );
+    }
+}
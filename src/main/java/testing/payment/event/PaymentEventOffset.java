@@ -0,0 +1,37 @@
+package testing.payment.event;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Next offset a consumer reads from a partition of the sink.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@IdClass(PaymentEventOffset.Key.class)
+public class PaymentEventOffset {
+
+    @Id
+    private String consumer;
+    @Id
+    @Column(name = "event_partition") //PARTITION is a reserved word in some databases
+    private int partition;
+    private long nextOffset;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String consumer;
+        private int partition;
+    }
+}
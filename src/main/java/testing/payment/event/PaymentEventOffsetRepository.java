@@ -0,0 +1,6 @@
+package testing.payment.event;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface PaymentEventOffsetRepository extends JpaRepository<PaymentEventOffset, PaymentEventOffset.Key> {
+}
@@ -0,0 +1,7 @@
+package testing.payment.event;
+
+/**
+ * An event read back from a sink with its offset in the partition.
+ */
+public record PaymentEventRecord(long offset, PaymentEventMessage event) {
+}
@@ -0,0 +1,71 @@
+package testing.payment.event;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Moves outbox events to the sink in batches, oldest first, deleting them in the transaction that read them.
+ * If that transaction fails after publishing, the batch is published again: delivery is at least once.
+ */
+@Slf4j
+@Component
+public class PaymentEventRelay {
+
+    private final PaymentEventRepository paymentEventRepository;
+    private final PaymentEventSink paymentEventSink;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Counter relayed;
+
+    public PaymentEventRelay(PaymentEventRepository paymentEventRepository,
+                             PaymentEventSink paymentEventSink,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry meterRegistry,
+                             @Value("${payment.events.relay.enabled:true}") boolean enabled,
+                             @Value("${payment.events.relay.batch-size:500}") int batchSize) {
+        this.paymentEventRepository = paymentEventRepository;
+        this.paymentEventSink = paymentEventSink;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.relayed = Counter.builder("payment.events.relayed")
+                .description("Payment events moved from the outbox to the sink")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${payment.events.relay.interval:PT0.5S}")
+    public void relay() {
+        if (!enabled)
+            return;
+        try {
+            //a full batch means there may be more waiting
+            while (relayBatch() == batchSize) {
+            }
+        } catch (RuntimeException e) {
+            //the events stay in the outbox, the next run retries them
+            log.warn("Could not relay payment events", e);
+        }
+    }
+
+    int relayBatch() {
+        return transactionTemplate.execute(status -> {
+            List<PaymentEvent> events = paymentEventRepository.findOldest(Limit.of(batchSize));
+            if (events.isEmpty())
+                return 0;
+            paymentEventSink.publish(events.stream().map(PaymentEventMessage::from).toList());
+            paymentEventRepository.deleteAllInBatch(events);
+            relayed.increment(events.size());
+            return events.size();
+        });
+    }
+}
@@ -0,0 +1,17 @@
+package testing.payment.event;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface PaymentEventRepository extends JpaRepository<PaymentEvent, Long> {
+
+    // locked so that a relay on another instance waits for this batch instead of publishing it again
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM PaymentEvent e ORDER BY e.eventId")
+    List<PaymentEvent> findOldest(Limit limit);
+}
@@ -0,0 +1,40 @@
+package testing.payment.event;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Destination of the relayed payment events.
+ * Events are split in partitions by customer, within a partition they keep the order they were published in,
+ * so the events of one customer are read in order.
+ */
+public interface PaymentEventSink {
+
+    int partitions();
+
+    /**
+     * Appends the events, in order, each to the partition of its customer.
+     */
+    void publish(List<PaymentEventMessage> events);
+
+    /**
+     * Up to {@code max} events of the partition from {@code offset} on.
+     */
+    List<PaymentEventRecord> read(int partition, long offset, int max);
+
+    /**
+     * Offset of the oldest event still kept in the partition, events before it were dropped.
+     */
+    default long firstOffset(int partition) {
+        return 0;
+    }
+
+    /**
+     * Offset the next event published to the partition gets.
+     */
+    long endOffset(int partition);
+
+    default int partitionOf(UUID customerId) {
+        return Math.floorMod(customerId.hashCode(), partitions());
+    }
+}
@@ -1,12 +1,15 @@
 package testing.payment.stripe;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import testing.payment.CardPaymentCharge;
 import testing.payment.CardPaymentCharger;
 import testing.payment.Currency;
+import testing.payment.Money;
 
-import java.math.BigDecimal;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @ConditionalOnProperty(
@@ -14,10 +17,27 @@ import java.math.BigDecimal;
         havingValue = "true"
 )
 public class MockStripeService implements CardPaymentCharger {
+
+    private final Set<Currency> currencies;
+
+    public MockStripeService(@Value("${stripe.currencies:USD,EUR}") Set<Currency> currencies) {
+        this.currencies = currencies;
+    }
+
+    @Override
+    public boolean supports(Currency currency) {
+        return currencies.contains(currency);
+    }
+
     @Override
-    public CardPaymentCharge chargeCard(String method, BigDecimal amount, Currency currency, String description) {
+    public CardPaymentCharge chargeCard(String method, Money amount, String description) {
         return CardPaymentCharge.builder()
                 .isCardDebited(true)
                 .build();
     }
+
+    @Override
+    public CompletableFuture<CardPaymentCharge> chargeCardAsync(String method, Money amount, String description) {
+        return CompletableFuture.completedFuture(chargeCard(method, amount, description));
+    }
 }
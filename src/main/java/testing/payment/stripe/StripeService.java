@@ -1,17 +1,26 @@
 package testing.payment.stripe;
 
-import com.stripe.exception.StripeException;
-import com.stripe.model.Charge;
-import com.stripe.model.PaymentIntent;
-import com.stripe.net.RequestOptions;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stripe.net.FormEncoder;
 import com.stripe.param.PaymentIntentCreateParams;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import testing.payment.CardPaymentCharge;
 import testing.payment.CardPaymentCharger;
 import testing.payment.Currency;
+import testing.payment.InvalidCardChargeException;
+import testing.payment.Money;
 
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @ConditionalOnProperty(
@@ -20,30 +29,99 @@ import java.math.BigDecimal;
 )
 public class StripeService implements CardPaymentCharger {
 
-    private final RequestOptions requestOptions = RequestOptions.builder()
-            .setApiKey("sk_test_CGGvfNiIPwLXiDwaOfZ3oX6Y")
-            .build();
+    private static final String PAYMENT_INTENTS = "/v1/payment_intents";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final StripeTransport stripeTransport;
+    private final Set<Currency> currencies;
+
+    @Autowired
+    public StripeService(StripeTransport stripeTransport,
+                         @Value("${stripe.currencies:USD,EUR}") Set<Currency> currencies) {
+        this.stripeTransport = stripeTransport;
+        this.currencies = currencies;
+    }
+
+    StripeService(StripeTransport stripeTransport) {
+        this(stripeTransport, EnumSet.allOf(Currency.class));
+    }
 
     @Override
-    public CardPaymentCharge chargeCard(String method, BigDecimal amount, Currency currency, String description) {
-        PaymentIntentCreateParams params =
-                PaymentIntentCreateParams.builder()
-                        .setAmount(amount.longValue())
-                        .setCurrency(currency.name().toLowerCase()) // "usd", "eur", ...
-                        .setDescription(description)
-                        .setPaymentMethod(method)
-                        .setAutomaticPaymentMethods(
-                                PaymentIntentCreateParams.AutomaticPaymentMethods.builder()
-                                        .setEnabled(true)
-                                        .build()
-                        )
-                        .build();
+    public boolean supports(Currency currency) {
+        return currencies.contains(currency);
+    }
+
+    @Override
+    public CardPaymentCharge chargeCard(String method, Money amount, String description) {
+        String form = createForm(method, amount, description);
         try {
-            PaymentIntent paymentIntent = PaymentIntent.create(params, requestOptions);
-            Charge charge = paymentIntent.getLatestChargeObject();
-            return new CardPaymentCharge(charge.getPaid());
-        } catch (StripeException e) {
+            return toCardPaymentCharge(stripeTransport.post(PAYMENT_INTENTS, form, UUID.randomUUID().toString()));
+        } catch (IOException e) {
             throw new IllegalStateException("Can not make Stripe charge", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while making Stripe charge", e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<CardPaymentCharge> chargeCardAsync(String method, Money amount, String description) {
+        return chargeCardAsync(method, amount, description, null);
+    }
+
+    @Override
+    public CompletableFuture<CardPaymentCharge> chargeCardAsync(String method, Money amount, String description,
+                                                                String idempotencyKey) {
+        //a PaymentIntent created by a request that timed out is returned again instead of created twice
+        String key = idempotencyKey == null ? UUID.randomUUID().toString() : idempotencyKey;
+        CompletableFuture<HttpResponse<String>> response =
+                stripeTransport.postAsync(PAYMENT_INTENTS, createForm(method, amount, description), key);
+        CompletableFuture<CardPaymentCharge> charge = response.thenApply(this::toCardPaymentCharge);
+
+        //a cancelled or timed out charge aborts the HTTP exchange as well
+        charge.whenComplete((result, e) -> {
+            if (e != null)
+                response.cancel(true);
+        });
+        return charge;
+    }
+
+    private CardPaymentCharge toCardPaymentCharge(HttpResponse<String> response) {
+        int status = response.statusCode();
+        //402: the card was declined, which is an answer like any other
+        if (status == 402)
+            return new CardPaymentCharge(false);
+        //other 4xx refuse this request only, except a bad API key (401, 403) and rate limiting (429)
+        if (status >= 400 && status < 500 && status != 401 && status != 403 && status != 429)
+            throw new InvalidCardChargeException(String.format(
+                    "Stripe refused the charge, status [%d]", status));
+        if (status != 200)
+            throw new IllegalStateException(String.format(
+                    "Can not make Stripe charge, status [%d]", status));
+
+        try {
+            JsonNode paymentIntent = OBJECT_MAPPER.readTree(response.body());
+            return new CardPaymentCharge(paymentIntent.path("latest_charge").path("paid").asBoolean());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Can not read Stripe charge", e);
         }
     }
+
+    private String createForm(String method, Money amount, String description) {
+        PaymentIntentCreateParams params = PaymentIntentCreateParams.builder()
+                // Stripe expects the smallest currency unit, e.g. 1050 for 10.50 EUR
+                .setAmount(amount.minorUnits())
+                .setCurrency(amount.currency().name().toLowerCase()) // "usd", "eur", ...
+                .setDescription(description)
+                .setPaymentMethod(method)
+                .setAutomaticPaymentMethods(
+                        PaymentIntentCreateParams.AutomaticPaymentMethods.builder()
+                                .setEnabled(true)
+                                .build()
+                )
+                // latest_charge is only returned as an id unless expanded
+                .addExpand("latest_charge")
+                .build();
+        return FormEncoder.createQueryString(params.toMap());
+    }
 }
@@ -0,0 +1,200 @@
+package testing.payment.stripe;
+
+import com.stripe.Stripe;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * HTTP transport to the Stripe API shared by every charge.
+ * <p>
+ * A single {@link HttpClient} keeps its connections alive and reuses them across charges, negotiating HTTP/2 when
+ * the server offers it so concurrent charges share one connection. On startup {@code prewarm-connections}
+ * concurrent requests open (and TLS handshake) the connections ahead of the first charge.
+ * The JDK pool itself is tuned with the {@code jdk.httpclient.connectionPoolSize} and
+ * {@code jdk.httpclient.keepalive.timeout} system properties.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(
+        value = "stripe.mocked",
+        havingValue = "false"
+)
+public class StripeTransport {
+
+    private static final String API_KEY = "sk_test_CGGvfNiIPwLXiDwaOfZ3oX6Y";
+
+    private final String apiBase;
+    private final Duration timeout;
+    private final int prewarmConnections;
+    private final HttpClient httpClient;
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    //concurrent HTTP/1.1 exchanges each need a connection, HTTP/2 ones are multiplexed over a single one
+    private final AtomicInteger warmHttp11Connections = new AtomicInteger();
+    private final AtomicBoolean warmHttp2Connection = new AtomicBoolean();
+
+    @Autowired
+    public StripeTransport(@Value("${stripe.api-base:" + Stripe.LIVE_API_BASE + "}") String apiBase,
+                           @Value("${stripe.timeout:30s}") Duration timeout,
+                           @Value("${stripe.http.connect-timeout:5s}") Duration connectTimeout,
+                           @Value("${stripe.http.version:HTTP_2}") HttpClient.Version version,
+                           @Value("${stripe.http.prewarm-connections:4}") int prewarmConnections,
+                           MeterRegistry meterRegistry) {
+        this.apiBase = apiBase;
+        this.timeout = timeout;
+        this.prewarmConnections = prewarmConnections;
+        this.httpClient = HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(connectTimeout)
+                .build();
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("stripe.http.in_flight", inFlight, AtomicInteger::get)
+                .description("Stripe requests waiting for a response, "
+                        + "each holding a connection over HTTP/1.1 and a stream of the shared one over HTTP/2")
+                .register(meterRegistry);
+        Gauge.builder("stripe.http.connections.warm", this, StripeTransport::warmConnections)
+                .description("Connections opened by the startup pre-warming")
+                .register(meterRegistry);
+    }
+
+    StripeTransport(String apiBase, Duration timeout) {
+        this(apiBase, timeout, timeout, HttpClient.Version.HTTP_2, 0, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Blocking form post to the API, e.g. {@code post("/v1/payment_intents", form, key)}.
+     * Stripe answers a post repeated with the same idempotency key with the response to the first one.
+     */
+    HttpResponse<String> post(String path, String form, String idempotencyKey)
+            throws IOException, InterruptedException {
+        HttpRequest request = formPost(path, form, idempotencyKey);
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            record(start, response, null);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            record(start, null, e);
+            throw e;
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Non-blocking form post, cancelling the returned future aborts the exchange.
+     */
+    CompletableFuture<HttpResponse<String>> postAsync(String path, String form, String idempotencyKey) {
+        HttpRequest request = formPost(path, form, idempotencyKey);
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        CompletableFuture<HttpResponse<String>> exchange =
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        //callers see the response only once it is counted and timed. Not a whenComplete stage of the exchange,
+        //whose action would be skipped when the caller cancels it first
+        CompletableFuture<HttpResponse<String>> response = new CompletableFuture<>();
+        exchange.whenComplete((result, e) -> {
+            Throwable error = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            inFlight.decrementAndGet();
+            record(start, result, error);
+            if (error == null)
+                response.complete(result);
+            else
+                response.completeExceptionally(error);
+        });
+        response.whenComplete((result, e) -> {
+            if (response.isCancelled())
+                exchange.cancel(true);
+        });
+        return response;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void prewarm() {
+        prewarm(prewarmConnections);
+    }
+
+    /**
+     * Opens up to {@code connections} connections with concurrent lightweight requests; any answer,
+     * even an error status, leaves a connection behind in the pool. Over HTTP/2 the requests share one connection.
+     */
+    void prewarm(int connections) {
+        if (connections <= 0)
+            return;
+
+        long start = System.nanoTime();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(apiBase + "/v1"))
+                .timeout(timeout)
+                .header("Authorization", "Bearer " + API_KEY)
+                .GET()
+                .build();
+        CompletableFuture<?>[] warmups = IntStream.range(0, connections)
+                .mapToObj(i -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                        .thenAccept(this::warmed))
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(warmups).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            //a cold pool only costs the first charges a handshake
+            log.warn("Could not pre-warm Stripe connections to {}", apiBase, e);
+        }
+        meterRegistry.timer("stripe.http.prewarm").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void warmed(HttpResponse<?> response) {
+        if (response.version() == HttpClient.Version.HTTP_2)
+            warmHttp2Connection.set(true);
+        else
+            warmHttp11Connections.incrementAndGet();
+    }
+
+    private int warmConnections() {
+        return warmHttp11Connections.get() + (warmHttp2Connection.get() ? 1 : 0);
+    }
+
+    private HttpRequest formPost(String path, String form, String idempotencyKey) {
+        return HttpRequest.newBuilder(URI.create(apiBase + path))
+                .timeout(timeout)
+                .header("Authorization", "Bearer " + API_KEY)
+                .header("Stripe-Version", Stripe.API_VERSION)
+                .header("Idempotency-Key", idempotencyKey)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+    }
+
+    private void record(long start, HttpResponse<?> response, Throwable error) {
+        Timer.builder("stripe.http.request")
+                .description("Stripe API round trips")
+                .tag("status", response == null ? error.getClass().getSimpleName() : String.valueOf(response.statusCode()))
+                .tag("version", response == null ? "none" : response.version().name())
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,44 @@
+package testing.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * One {@link TokenBucket} per key, kept in a bounded cache.
+ * A bucket unused for as long as it takes to refill is full, exactly like a new one, so it expires then without
+ * changing any limit. Only when more than {@code maxKeys} keys are active at once does eviction hand some of them
+ * a fresh bucket early, the global limit still applies to them.
+ */
+class KeyedRateLimiter {
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final LongSupplier nanoTime;
+    private final Cache<String, TokenBucket> buckets;
+
+    KeyedRateLimiter(double permitsPerSecond, int burst, long maxKeys, LongSupplier nanoTime) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.nanoTime = nanoTime;
+        long refillNanos = new TokenBucket(permitsPerSecond, burst, 0).refillNanos();
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(Duration.ofNanos(refillNanos))
+                .build();
+    }
+
+    /**
+     * Takes a token from the bucket of the key, see {@link TokenBucket#tryAcquire}.
+     */
+    long tryAcquire(String key) {
+        long now = nanoTime.getAsLong();
+        return buckets.get(key, k -> new TokenBucket(permitsPerSecond, burst, now)).tryAcquire(now);
+    }
+
+    long keys() {
+        return buckets.estimatedSize();
+    }
+}
@@ -0,0 +1,64 @@
+package testing.ratelimit;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rejects requests to {@link RateLimited} handlers with 429 and a Retry-After header once their key or all rate
+ * limited requests together go over their rate, see {@link RateLimiter}.
+ */
+@Component
+@RequiredArgsConstructor
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private final RateLimiter rateLimiter;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException {
+        if (!(handler instanceof HandlerMethod handlerMethod))
+            return true;
+        RateLimited rateLimited = handlerMethod.getMethodAnnotation(RateLimited.class);
+        if (rateLimited == null)
+            return true;
+
+        RateLimiter.Rejection rejection = rateLimiter.tryAcquire(rateLimited.value(),
+                keyOf(rateLimited.value(), request));
+        if (rejection != null)
+            return reject(response, rejection);
+        return true;
+    }
+
+    private boolean reject(HttpServletResponse response, RateLimiter.Rejection rejection) throws IOException {
+        //whole seconds, rounded up so a client honoring it finds a token
+        long second = TimeUnit.SECONDS.toNanos(1);
+        long retryAfter = Math.max(1, (rejection.waitNanos() + second - 1) / second);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+        response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), rejection.message());
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String keyOf(RateLimited.Key key, HttpServletRequest request) {
+        return switch (key) {
+            case CUSTOMER -> {
+                Map<String, String> uriVariables = (Map<String, String>)
+                        request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+                yield uriVariables == null ? null : uriVariables.get("customerId");
+            }
+            //behind a proxy set server.forward-headers-strategy so this is the client and not the proxy
+            case CLIENT_IP -> request.getRemoteAddr();
+        };
+    }
+}
@@ -0,0 +1,23 @@
+package testing.ratelimit;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits the request rate of a handler method per {@link Key}, on top of the global limit shared by every
+ * rate limited handler. See {@link RateLimitInterceptor}.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimited {
+
+    Key value();
+
+    enum Key {
+        // the {customerId} path variable
+        CUSTOMER,
+        CLIENT_IP
+    }
+}
@@ -0,0 +1,107 @@
+package testing.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Token buckets per {@link RateLimited.Key} and one global bucket shared by everything rate limited, one token per
+ * request, see {@link RateLimitInterceptor}.
+ */
+@Component
+public class RateLimiter {
+
+    private static final String GLOBAL = "global";
+
+    private final boolean enabled;
+    private final LongSupplier nanoTime;
+    private final Map<RateLimited.Key, KeyedRateLimiter> limiters = new EnumMap<>(RateLimited.Key.class);
+    private final TokenBucket global;
+    private final Map<String, Counter> rejections;
+
+    @Autowired
+    public RateLimiter(MeterRegistry meterRegistry,
+                       @Value("${rate-limit.enabled:true}") boolean enabled,
+                       @Value("${rate-limit.max-keys:100000}") long maxKeys,
+                       @Value("${rate-limit.customer.permits-per-second:10}") double customerRate,
+                       @Value("${rate-limit.customer.burst:20}") int customerBurst,
+                       @Value("${rate-limit.client-ip.permits-per-second:5}") double clientIpRate,
+                       @Value("${rate-limit.client-ip.burst:10}") int clientIpBurst,
+                       @Value("${rate-limit.global.permits-per-second:2000}") double globalRate,
+                       @Value("${rate-limit.global.burst:4000}") int globalBurst) {
+        this(meterRegistry, enabled, maxKeys, customerRate, customerBurst, clientIpRate, clientIpBurst,
+                globalRate, globalBurst, System::nanoTime);
+    }
+
+    RateLimiter(MeterRegistry meterRegistry, boolean enabled, long maxKeys,
+                double customerRate, int customerBurst,
+                double clientIpRate, int clientIpBurst,
+                double globalRate, int globalBurst,
+                LongSupplier nanoTime) {
+        this.enabled = enabled;
+        this.nanoTime = nanoTime;
+        limiters.put(RateLimited.Key.CUSTOMER, new KeyedRateLimiter(customerRate, customerBurst, maxKeys, nanoTime));
+        limiters.put(RateLimited.Key.CLIENT_IP, new KeyedRateLimiter(clientIpRate, clientIpBurst, maxKeys, nanoTime));
+        this.global = new TokenBucket(globalRate, globalBurst, nanoTime.getAsLong());
+
+        limiters.forEach((key, limiter) -> Gauge.builder("rate_limit.keys", limiter, KeyedRateLimiter::keys)
+                .description("Keys with a token bucket")
+                .tag("limit", limitName(key))
+                .register(meterRegistry));
+        this.rejections = Stream.concat(limiters.keySet().stream().map(RateLimiter::limitName),
+                        Stream.of(GLOBAL))
+                .collect(Collectors.toMap(limit -> limit, limit -> rejections(meterRegistry, limit)));
+    }
+
+    /**
+     * Takes a token for the key, when there is one, and a global token. The key is checked first, so a single
+     * client flooding an endpoint empties its own bucket, not the global one.
+     *
+     * @return null when allowed, otherwise the limit that was exceeded
+     */
+    public Rejection tryAcquire(RateLimited.Key key, String value) {
+        if (!enabled)
+            return null;
+        if (value != null) {
+            long wait = limiters.get(key).tryAcquire(value);
+            if (wait > 0)
+                return reject(limitName(key), wait);
+        }
+        long wait = global.tryAcquire(nanoTime.getAsLong());
+        if (wait > 0)
+            return reject(GLOBAL, wait);
+        return null;
+    }
+
+    private Rejection reject(String limit, long waitNanos) {
+        rejections.get(limit).increment();
+        return new Rejection(limit, waitNanos);
+    }
+
+    private static String limitName(RateLimited.Key key) {
+        return key.name().toLowerCase();
+    }
+
+    private static Counter rejections(MeterRegistry meterRegistry, String limit) {
+        return Counter.builder("rate_limit.rejected")
+                .description("Requests refused with 429")
+                .tag("limit", limit)
+                .register(meterRegistry);
+    }
+
+    public record Rejection(String limit, long waitNanos) {
+
+        public String message() {
+            return String.format("Rate limit [%s] exceeded", limit);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package testing.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket holding up to {@code burst} tokens, refilled at {@code permitsPerSecond}.
+ * <p>
+ * Instead of a token count it keeps the time at which the bucket will be full again, so taking a token is a single
+ * compare-and-set and refilling needs no background work: the bucket has room while that time is less than
+ * {@code burst} tokens ahead of now.
+ */
+class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final AtomicLong fullAt;
+
+    TokenBucket(double permitsPerSecond, int burst, long now) {
+        if (permitsPerSecond <= 0 || burst < 1)
+            throw new IllegalArgumentException(String.format(
+                    "Rate [%s] and burst [%d] must be positive", permitsPerSecond, burst));
+        this.nanosPerToken = Math.max(1, Math.round(1e9 / permitsPerSecond));
+        this.burstNanos = burst * nanosPerToken;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Takes a token, returning 0, or the nanos until a token is available when the bucket is empty.
+     */
+    long tryAcquire(long now) {
+        while (true) {
+            long full = fullAt.get();
+            long next = Math.max(full, now) + nanosPerToken;
+            long wait = next - now - burstNanos;
+            if (wait > 0)
+                return wait;
+            if (fullAt.compareAndSet(full, next))
+                return 0;
+        }
+    }
+
+    /**
+     * Nanos an unused bucket takes to fill up completely.
+     */
+    long refillNanos() {
+        return burstNanos;
+    }
+}
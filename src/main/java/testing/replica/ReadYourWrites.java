@@ -0,0 +1,60 @@
+package testing.replica;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Sends the reads of a customer to the primary while the replica may not have that customer's latest write yet,
+ * so a customer reading right after a charge sees it.
+ * Writes are remembered for the maximum lag only: an older write is either on the replica or the replica is
+ * lagging too much to be read from at all. Does nothing when there is no replica.
+ */
+@Component
+public class ReadYourWrites {
+
+    private final Supplier<ReplicaLagMonitor> lagMonitor;
+    private final Clock clock;
+    private final Cache<UUID, Instant> lastWrites;
+
+    @Autowired
+    public ReadYourWrites(ObjectProvider<ReplicaLagMonitor> lagMonitor,
+                          @Value("${datasource.replica.max-lag:2s}") Duration maxLag,
+                          @Value("${datasource.replica.read-your-writes.max-customers:100000}") long maxCustomers) {
+        this(lagMonitor::getIfAvailable, maxLag, maxCustomers, Clock.systemUTC());
+    }
+
+    ReadYourWrites(Supplier<ReplicaLagMonitor> lagMonitor, Duration maxLag, long maxCustomers, Clock clock) {
+        this.lagMonitor = lagMonitor;
+        this.clock = clock;
+        this.lastWrites = Caffeine.newBuilder()
+                .maximumSize(maxCustomers)
+                .expireAfterWrite(maxLag)
+                .build();
+    }
+
+    /**
+     * Records a committed write of the customer.
+     */
+    public void wrote(UUID customerId) {
+        if (lagMonitor.get() != null)
+            lastWrites.put(customerId, clock.instant());
+    }
+
+    public <T> T read(UUID customerId, Supplier<T> read) {
+        ReplicaLagMonitor monitor = lagMonitor.get();
+        Instant lastWrite = monitor == null ? null : lastWrites.getIfPresent(customerId);
+        if (lastWrite != null && monitor.replicatedUpTo().isBefore(lastWrite))
+            return ReplicaRouting.onPrimary(read);
+        return read.get();
+    }
+}
@@ -0,0 +1,67 @@
+package testing.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * With datasource.replica.enabled=true the application DataSource routes read-only transactions to a replica,
+ * the primary still being configured through spring.datasource.*.
+ */
+@Configuration
+@ConditionalOnProperty(value = "datasource.replica.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource replicaDataSource(
+            @Value("${datasource.replica.url}") String url,
+            @Value("${datasource.replica.username:sa}") String username,
+            @Value("${datasource.replica.password:}") String password,
+            @Value("${datasource.replica.maximum-pool-size:10}") int maximumPoolSize) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        dataSource.setPoolName("replica");
+        dataSource.setMaximumPoolSize(maximumPoolSize);
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(@Qualifier("primaryDataSource") DataSource primary,
+                                               @Qualifier("replicaDataSource") DataSource replica,
+                                               @Value("${datasource.replica.max-lag:2s}") Duration maxLag) {
+        return new ReplicaLagMonitor(primary, replica, maxLag);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica,
+                                 ReplicaLagMonitor replicaLagMonitor,
+                                 MeterRegistry meterRegistry) {
+        return new LazyConnectionDataSourceProxy(
+                new ReplicaRoutingDataSource(primary, replica, replicaLagMonitor, meterRegistry));
+    }
+}
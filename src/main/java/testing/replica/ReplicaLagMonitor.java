@@ -0,0 +1,103 @@
+package testing.replica;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import testing.utils.SqlDialect;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Measures how far the replica is behind the primary with a heartbeat: the time is written to a one-row table on
+ * the primary and read back from the replica, where it only shows up through replication.
+ * Everything committed on the primary before the heartbeat the replica shows is on the replica as well.
+ */
+@Slf4j
+public class ReplicaLagMonitor implements MeterBinder {
+
+    private static final String CREATE_HEARTBEAT =
+            "CREATE TABLE IF NOT EXISTS replica_heartbeat (id INT PRIMARY KEY, beat_at BIGINT NOT NULL)";
+    private static final String MERGE_HEARTBEAT =
+            "MERGE INTO replica_heartbeat (id, beat_at) KEY (id) VALUES (1, ?)";
+    private static final String INSERT_ON_CONFLICT_UPDATE_HEARTBEAT =
+            "INSERT INTO replica_heartbeat (id, beat_at) VALUES (1, ?) " +
+            "ON CONFLICT (id) DO UPDATE SET beat_at = EXCLUDED.beat_at";
+    private static final String SELECT_HEARTBEAT = "SELECT beat_at FROM replica_heartbeat WHERE id = 1";
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+    private final Duration maxLag;
+    private final Clock clock;
+    //until the replica shows a heartbeat it counts as infinitely behind
+    private volatile Instant replicatedUpTo = Instant.EPOCH;
+    private String upsertSql;
+
+    public ReplicaLagMonitor(DataSource primary, DataSource replica, Duration maxLag) {
+        this(primary, replica, maxLag, Clock.systemUTC());
+    }
+
+    ReplicaLagMonitor(DataSource primary, DataSource replica, Duration maxLag, Clock clock) {
+        this.primary = new JdbcTemplate(primary);
+        this.replica = new JdbcTemplate(replica);
+        this.maxLag = maxLag;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void start() {
+        primary.execute(CREATE_HEARTBEAT);
+        upsertSql = switch (SqlDialect.of(primary.getDataSource())) {
+            case H2 -> MERGE_HEARTBEAT;
+            case POSTGRESQL -> INSERT_ON_CONFLICT_UPDATE_HEARTBEAT;
+        };
+        heartbeat();
+    }
+
+    @Scheduled(fixedDelayString = "${datasource.replica.heartbeat-interval:PT0.5S}")
+    public void heartbeat() {
+        try {
+            primary.update(upsertSql, clock.millis());
+        } catch (DataAccessException e) {
+            log.warn("Could not write replica heartbeat to the primary", e);
+        }
+        try {
+            Long beatAt = replica.queryForObject(SELECT_HEARTBEAT, Long.class);
+            if (beatAt != null)
+                replicatedUpTo = Instant.ofEpochMilli(beatAt);
+        } catch (DataAccessException e) {
+            //the last heartbeat read stays, so the lag keeps growing until the replica answers again
+            log.debug("Could not read replica heartbeat", e);
+        }
+    }
+
+    /**
+     * Time of the newest heartbeat the replica has, writes committed before it can be read from the replica.
+     */
+    public Instant replicatedUpTo() {
+        return replicatedUpTo;
+    }
+
+    public Duration lag() {
+        return Duration.between(replicatedUpTo, clock.instant());
+    }
+
+    public boolean isWithinMaxLag() {
+        return lag().compareTo(maxLag) <= 0;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("datasource.replica.lag", this, monitor -> monitor.lag().toNanos() / 1e9)
+                .description("Time since the newest heartbeat the replica has")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+}
@@ -0,0 +1,31 @@
+package testing.replica;
+
+import java.util.function.Supplier;
+
+/**
+ * Keeps reads that must not be stale off the replica, e.g. the lookups that guard against charging twice.
+ * Only effective when nothing ran yet in the surrounding transaction, since the connection is chosen at the first
+ * statement.
+ */
+public final class ReplicaRouting {
+
+    private static final ThreadLocal<Boolean> PINNED_TO_PRIMARY = new ThreadLocal<>();
+
+    private ReplicaRouting() {
+    }
+
+    public static <T> T onPrimary(Supplier<T> read) {
+        boolean outermost = PINNED_TO_PRIMARY.get() == null;
+        PINNED_TO_PRIMARY.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            if (outermost)
+                PINNED_TO_PRIMARY.remove();
+        }
+    }
+
+    static boolean isPinnedToPrimary() {
+        return PINNED_TO_PRIMARY.get() != null;
+    }
+}
@@ -0,0 +1,55 @@
+package testing.replica;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Hands out replica connections to read-only transactions and primary connections to everything else.
+ * A read-only transaction still gets the primary when the replica lags more than allowed or the read is
+ * {@link ReplicaRouting#onPrimary pinned to it}.
+ * <p>
+ * Must be wrapped in a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: the transaction
+ * manager asks for the connection before the transaction is marked read-only, the proxy defers it to the first
+ * statement.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    enum Target {
+        PRIMARY,
+        REPLICA
+    }
+
+    private final ReplicaLagMonitor lagMonitor;
+    private final Map<Target, Counter> routed = new EnumMap<>(Target.class);
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReplicaLagMonitor lagMonitor,
+                                    MeterRegistry meterRegistry) {
+        this.lagMonitor = lagMonitor;
+        setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+        for (Target target : Target.values()) {
+            routed.put(target, Counter.builder("datasource.routed")
+                    .description("Connections handed out per database")
+                    .tag("target", target.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Target target = TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && !ReplicaRouting.isPinnedToPrimary()
+                && lagMonitor.isWithinMaxLag()
+                ? Target.REPLICA
+                : Target.PRIMARY;
+        routed.get(target).increment();
+        return target;
+    }
+}
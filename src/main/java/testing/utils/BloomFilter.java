@@ -0,0 +1,71 @@
+package testing.utils;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter for UUIDs. {@link #mightContain} never returns false for an id that was {@link #put},
+ * it may return true for an id that was not (with roughly the configured probability).
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    public BloomFilter(long expectedInsertions, double falsePositiveProbability) {
+        if (expectedInsertions <= 0)
+            throw new IllegalArgumentException("Expected insertions must be positive");
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1)
+            throw new IllegalArgumentException("False positive probability must be between 0 and 1");
+
+        //optimal sizing: m = -n ln p / (ln 2)^2, k = m / n ln 2
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability)
+                / (Math.log(2) * Math.log(2)));
+        int words = Math.toIntExact(Math.max(1, (optimalBits + 63) / 64));
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+    }
+
+    public void put(UUID id) {
+        long hash1 = mix(id.getMostSignificantBits());
+        long hash2 = mix(id.getLeastSignificantBits());
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(hash1 + i * hash2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0)
+                    break;
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    public boolean mightContain(UUID id) {
+        long hash1 = mix(id.getMostSignificantBits());
+        long hash2 = mix(id.getLeastSignificantBits());
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(hash1 + i * hash2);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    private long index(long combinedHash) {
+        return Math.floorMod(combinedHash, bitCount);
+    }
+
+    //murmur3 finalizer, spreads the bits of random and time-ordered UUIDs alike
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9f53a34e54bL;
+        value ^= value >>> 33;
+        return value;
+    }
+}
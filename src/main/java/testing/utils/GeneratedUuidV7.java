@@ -0,0 +1,19 @@
+package testing.utils;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Marks an id generated with {@link UuidV7Generator}.
+ */
+@IdGeneratorType(UuidV7Generator.class)
+@Retention(RUNTIME)
+@Target({FIELD, METHOD})
+public @interface GeneratedUuidV7 {
+}
@@ -1,26 +1,80 @@
 package testing.utils;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.google.i18n.phonenumbers.NumberParseException;
 import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.PhoneNumberUtil.PhoneNumberFormat;
 import com.google.i18n.phonenumbers.Phonenumber.PhoneNumber;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.Optional;
+
 @Component
-public class PhoneNumberValidator {
+public class PhoneNumberValidator implements MeterBinder {
+
+    private static final PhoneNumberUtil PHONE_UTIL = PhoneNumberUtil.getInstance();
+
+    // parsing is the expensive part, so remember the outcome per number:
+    // the E.164 form for valid numbers, empty for invalid ones
+    private final Cache<String, Optional<String>> validationCache;
+
+    public PhoneNumberValidator() {
+        this(10_000, Duration.ofMinutes(10));
+    }
+
+    @Autowired
+    public PhoneNumberValidator(@Value("${phone.validation.cache.max-size:10000}") long maxSize,
+                                @Value("${phone.validation.cache.ttl:10m}") Duration ttl) {
+        this.validationCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
 
     public boolean validate(String phone) throws NumberParseException {
+        return normalize(phone).isPresent();
+    }
+
+    /**
+     * Returns the number in E.164 format (e.g. +34660000000) or empty when it is not a valid number.
+     */
+    public Optional<String> normalize(String phone) throws NumberParseException {
 
-        PhoneNumberUtil phoneUtil = PhoneNumberUtil.getInstance();
+        String key = phone.strip();
+        Optional<String> cached = validationCache.getIfPresent(key);
+        if (cached != null)
+            return cached;
 
         PhoneNumber phoneNumberProto;
-        if (phone.startsWith("+")) {
-            phoneNumberProto = phoneUtil.parse(phone, null);
+        if (key.startsWith("+")) {
+            phoneNumberProto = PHONE_UTIL.parse(key, null);
         } else {
-            phoneNumberProto = phoneUtil.parse(phone, "ES");
+            phoneNumberProto = PHONE_UTIL.parse(key, "ES");
         }
 
-        return phoneUtil.isValidNumber(phoneNumberProto);
+        Optional<String> normalized = PHONE_UTIL.isValidNumber(phoneNumberProto)
+                ? Optional.of(PHONE_UTIL.format(phoneNumberProto, PhoneNumberFormat.E164))
+                : Optional.empty();
+        validationCache.put(key, normalized);
+        return normalized;
 
     }
-}
 
+    public CacheStats getCacheStats() {
+        return validationCache.stats();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, validationCache, "phoneNumberValidation");
+    }
+}
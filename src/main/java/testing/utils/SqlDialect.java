@@ -0,0 +1,25 @@
+package testing.utils;
+
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+
+/**
+ * The databases we write dialect-specific SQL for (upserts, insert-if-absent).
+ */
+public enum SqlDialect {
+    H2,
+    POSTGRESQL;
+
+    public static SqlDialect of(DataSource dataSource) {
+        try {
+            String product = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+            // anything else gets the standard SQL MERGE that H2 speaks
+            return "PostgreSQL".equalsIgnoreCase(product) ? POSTGRESQL : H2;
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Can not detect database product", e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package testing.utils;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * Time-ordered UUIDs (RFC 9562 version 7): 48 bits of Unix epoch milliseconds followed by random bits.
+ * New keys land at the right edge of a B-tree index instead of on random pages.
+ */
+public final class UuidV7 {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private UuidV7() {
+    }
+
+    public static UUID randomUuid() {
+        return fromTimestamp(System.currentTimeMillis());
+    }
+
+    static UUID fromTimestamp(long epochMillis) {
+        byte[] random = new byte[10];
+        RANDOM.nextBytes(random);
+
+        long randA = ((random[0] & 0xFFL) << 8 | (random[1] & 0xFFL)) & 0x0FFFL;
+        long mostSignificantBits = (epochMillis & 0xFFFF_FFFF_FFFFL) << 16
+                | 0x7000L //version
+                | randA;
+
+        long randB = 0;
+        for (int i = 2; i < 10; i++)
+            randB = randB << 8 | (random[i] & 0xFFL);
+        long leastSignificantBits = randB & 0x3FFF_FFFF_FFFF_FFFFL
+                | 0x8000_0000_0000_0000L; //variant
+
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+}
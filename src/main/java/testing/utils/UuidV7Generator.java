@@ -0,0 +1,31 @@
+package testing.utils;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+
+import java.util.EnumSet;
+
+import static org.hibernate.generator.EventTypeSets.INSERT_ONLY;
+
+/**
+ * Generates {@link UuidV7} ids, ids assigned by the application are kept.
+ */
+public class UuidV7Generator implements BeforeExecutionGenerator {
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue,
+                           EventType eventType) {
+        return UuidV7.randomUuid();
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return INSERT_ONLY;
+    }
+
+    @Override
+    public boolean allowAssignedIdentifiers() {
+        return true;
+    }
+}
@@ -0,0 +1,35 @@
+package testing;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("startup")
+class StartupConfigTest {
+
+    @Autowired
+    private ConfigurableListableBeanFactory beanFactory;
+
+    @Test
+    void itShouldCreateTheChargePathEagerly() {
+        //When
+        //Then
+        assertThat(beanFactory.containsSingleton("paymentService")).isTrue();
+        assertThat(beanFactory.containsSingleton("paymentController")).isTrue();
+        assertThat(beanFactory.containsSingleton("routingCardPaymentCharger")).isTrue();
+        assertThat(beanFactory.containsSingleton("mockStripeService")).isTrue();
+    }
+
+    @Test
+    void itShouldCreateOtherBeansOnFirstUse() {
+        //When
+        //Then
+        assertThat(beanFactory.getBeanDefinition("customerImportService").isLazyInit()).isTrue();
+        assertThat(beanFactory.containsSingleton("customerImportService")).isFalse();
+    }
+}
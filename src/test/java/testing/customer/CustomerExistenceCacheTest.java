@@ -0,0 +1,184 @@
+package testing.customer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerExistenceCacheTest {
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    private static final Instant NOW = Instant.parse("2024-05-20T12:00:00Z");
+
+    private CustomerExistenceCache underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerExistenceCache(customerRepository, 100, 1000, 0.01,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    void itShouldQueryOnceAndRememberExistingCustomer() {
+        //Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(true);
+
+        //When
+        boolean first = underTest.exists(customerId);
+        boolean second = underTest.exists(customerId);
+
+        //Then
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        then(customerRepository).should().existsById(customerId);
+    }
+
+    @Test
+    void itShouldQueryUnknownCustomerBeforeIdsAreLoaded() {
+        //Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsById(customerId)).willReturn(false);
+
+        //When
+        boolean exists = underTest.exists(customerId);
+
+        //Then
+        assertThat(exists).isFalse();
+        then(customerRepository).should().existsById(customerId);
+    }
+
+    @Test
+    void itShouldRejectUnknownCustomerWithoutQueryOnceIdsAreLoaded() {
+        //Given
+        UUID registered = UUID.randomUUID();
+        given(customerRepository.streamAllIds()).willReturn(Stream.of(registered));
+        underTest.loadRegisteredIds();
+
+        //When
+        boolean exists = underTest.exists(UUID.randomUUID());
+
+        //Then
+        assertThat(exists).isFalse();
+        then(customerRepository).should(never()).existsById(any());
+    }
+
+    @Test
+    void itShouldFindLoadedCustomer() {
+        //Given
+        UUID registered = UUID.randomUUID();
+        given(customerRepository.streamAllIds()).willReturn(Stream.of(registered));
+        given(customerRepository.existsById(registered)).willReturn(true);
+        underTest.loadRegisteredIds();
+
+        //When
+        //Then
+        assertThat(underTest.exists(registered)).isTrue();
+    }
+
+    @Test
+    void itShouldKnowCustomersRegisteredAfterLoading() {
+        //Given
+        given(customerRepository.streamAllIds()).willReturn(Stream.empty());
+        underTest.loadRegisteredIds();
+        UUID registered = UUID.randomUUID();
+        UUID imported = UUID.randomUUID();
+        given(customerRepository.existsById(imported)).willReturn(true);
+
+        //When
+        underTest.registered(registered);
+        underTest.registered(List.of(imported));
+
+        //Then
+        assertThat(underTest.exists(registered)).isTrue();
+        assertThat(underTest.exists(imported)).isTrue();
+        then(customerRepository).should(never()).existsById(registered);
+    }
+
+    @Test
+    void itShouldRejectUnknownTimeOrderedIdCreatedBeforeLoadingWithoutQuery() {
+        //Given
+        given(customerRepository.streamAllIds()).willReturn(Stream.empty());
+        underTest.loadRegisteredIds();
+
+        //When
+        boolean exists = underTest.exists(uuidV7(NOW.minus(Duration.ofHours(1))));
+
+        //Then
+        assertThat(exists).isFalse();
+        then(customerRepository).should(never()).existsById(any());
+    }
+
+    @Test
+    void itShouldQueryUnknownTimeOrderedIdCreatedWhileOrAfterLoading() {
+        //Given
+        given(customerRepository.streamAllIds()).willReturn(Stream.empty());
+        underTest.loadRegisteredIds();
+        //registered on another instance, its row may have committed after the load read the table
+        UUID registeredElsewhere = uuidV7(NOW.minusSeconds(1));
+        given(customerRepository.existsById(registeredElsewhere)).willReturn(true);
+
+        //When
+        boolean exists = underTest.exists(registeredElsewhere);
+
+        //Then
+        assertThat(exists).isTrue();
+    }
+
+    @Test
+    void itShouldFindCustomerInsertedElsewhereOnceRebuilt() {
+        //Given
+        UUID inserted = UUID.randomUUID();
+        given(customerRepository.streamAllIds()).willReturn(Stream.empty(), Stream.of(inserted));
+        given(customerRepository.existsById(inserted)).willReturn(true);
+        underTest.loadRegisteredIds();
+        boolean beforeRebuild = underTest.exists(inserted);
+
+        //When
+        underTest.loadRegisteredIds();
+
+        //Then
+        assertThat(beforeRebuild).isFalse();
+        assertThat(underTest.exists(inserted)).isTrue();
+    }
+
+    @Test
+    void itShouldKeepCustomersRegisteredBeforeRebuild() {
+        //Given
+        UUID registered = UUID.randomUUID();
+        given(customerRepository.streamAllIds()).willReturn(Stream.empty(), Stream.of(registered));
+        given(customerRepository.existsById(registered)).willReturn(true);
+        underTest.loadRegisteredIds();
+        underTest.registered(List.of(registered));
+
+        //When
+        underTest.loadRegisteredIds();
+
+        //Then
+        assertThat(underTest.exists(registered)).isTrue();
+    }
+
+    private static UUID uuidV7(Instant createdAt) {
+        return new UUID(createdAt.toEpochMilli() << 16 | 0x7000L,
+                ThreadLocalRandom.current().nextLong() & 0x3FFF_FFFF_FFFF_FFFFL | 0x8000_0000_0000_0000L);
+    }
+}
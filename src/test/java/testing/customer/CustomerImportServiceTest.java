@@ -0,0 +1,95 @@
+package testing.customer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import testing.utils.PhoneNumberValidator;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static testing.customer.CustomerImportService.TEXT_CSV;
+
+@DataJpaTest
+@Import({CustomerImportService.class, PhoneNumberValidator.class, CustomerExistenceCache.class})
+class CustomerImportServiceTest {
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private CustomerImportService underTest;
+
+    @Test
+    void itShouldImportCsvAndReportRejections() throws Exception {
+        //Given
+        customerRepository.save(new Customer("Sandra", "+34660000003"));
+        String csv = """
+                name,phoneNumber
+                Amador,660000001
+                Amador,+34 660 000 001
+                Maria,660000001
+                Lopez, Juan,660000002
+                Pedro,660000003
+                Nobody,123
+                malformed line
+                 ,660000004
+                """;
+
+        //When
+        CustomerImportReport report = underTest.importCustomers(body(csv), TEXT_CSV);
+
+        //Then
+        assertThat(report.getCreated()).isEqualTo(2);
+        assertThat(report.getAlreadyRegistered()).isEqualTo(1);
+        assertThat(report.getRejected()).isEqualTo(5);
+        assertThat(report.getRejections())
+                .extracting(CustomerImportReport.Rejection::line, CustomerImportReport.Rejection::reason)
+                .containsExactly(
+                        tuple(8L, "Malformed line"),
+                        tuple(4L, "Phone number is duplicated in the upload"),
+                        tuple(7L, "Phone number is not valid"),
+                        tuple(9L, "Name is missing"),
+                        tuple(6L, "Phone number is already taken")
+                );
+        assertThat(customerRepository.findCustomerByPhoneNumber("+34660000001"))
+                .hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("Amador"));
+        assertThat(customerRepository.findCustomerByPhoneNumber("+34660000002"))
+                .hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("Lopez, Juan"));
+    }
+
+    @Test
+    void itShouldImportNdjsonAcrossChunks() throws Exception {
+        //Given
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < 2500; i++)
+            ndjson.append(String.format("{\"name\":\"Customer %d\",\"phoneNumber\":\"+3466%07d\"}%n", i, i));
+
+        //When
+        CustomerImportReport report = underTest.importCustomers(body(ndjson.toString()), MediaType.APPLICATION_NDJSON);
+
+        //Then
+        assertThat(report.getCreated()).isEqualTo(2500);
+        assertThat(report.getRejected()).isZero();
+        assertThat(customerRepository.count()).isEqualTo(2500);
+    }
+
+    @Test
+    void itShouldThrowExceptionWhenContentTypeIsNotSupported() {
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.importCustomers(body("{}"), MediaType.APPLICATION_XML))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Content type [application/xml] not supported");
+    }
+
+    private static InputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -4,12 +4,28 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.spy;
 
 
 @DataJpaTest //to test jpa queries
@@ -18,6 +34,9 @@ class CustomerRepositoryTest {
     @Autowired
     private CustomerRepository underTest;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @Test
     void itShouldSelectCustomerByPhoneNumber() {
         //Given
@@ -32,6 +51,135 @@ class CustomerRepositoryTest {
         assertThat(underTest.findCustomerByPhoneNumber(phoneNumber)).isPresent();
     }
 
+    @Test
+    void itShouldSelectCustomerSummariesByPhoneNumbers() {
+        //Given
+        Customer customer = underTest.save(new Customer("Amador", "+34660000000"));
+
+        //When
+        List<CustomerSummary> summaries = underTest.findSummariesByPhoneNumbers(List.of("+34660000000", "660000000"));
+
+        //Then
+        assertThat(summaries).singleElement().satisfies(s -> {
+            assertThat(s.getId()).isEqualTo(customer.getId());
+            assertThat(s.getName()).isEqualTo("Amador");
+            assertThat(s.getPhoneNumber()).isEqualTo("+34660000000");
+        });
+    }
+
+    @Test
+    void itShouldStreamAllCustomerIds() {
+        //Given
+        Customer first = underTest.save(new Customer("Amador", "+34660000001"));
+        Customer second = underTest.save(new Customer("Maria", "+34660000002"));
+
+        //When
+        List<UUID> ids;
+        try (Stream<UUID> stream = underTest.streamAllIds()) {
+            ids = stream.toList();
+        }
+
+        //Then
+        assertThat(ids).containsExactlyInAnyOrder(first.getId(), second.getId());
+    }
+
+    @Test
+    void itShouldRegisterCustomerOnlyOncePerPhoneNumber() {
+        //Given
+        String phoneNumber = "+34660000001";
+
+        //When
+        RegistrationOutcome created = underTest.register(new Customer(UUID.randomUUID(), "Amador", phoneNumber));
+        RegistrationOutcome sameCustomer = underTest.register(new Customer(UUID.randomUUID(), "Amador", phoneNumber));
+        RegistrationOutcome otherCustomer = underTest.register(new Customer(UUID.randomUUID(), "Sandra", phoneNumber));
+
+        //Then
+        assertThat(created).isEqualTo(RegistrationOutcome.CREATED);
+        assertThat(sameCustomer).isEqualTo(RegistrationOutcome.ALREADY_REGISTERED);
+        assertThat(otherCustomer).isEqualTo(RegistrationOutcome.PHONE_NUMBER_TAKEN);
+        assertThat(underTest.findCustomerByPhoneNumber(phoneNumber))
+                .hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("Amador"));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) //each thread commits on its own
+    void itShouldRegisterConcurrentDuplicatesOnlyOnce() throws Exception {
+        //Given
+        String phoneNumber = "+34660000002";
+        int registrations = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(registrations);
+        CountDownLatch start = new CountDownLatch(1);
+
+        try {
+            //When
+            List<Future<RegistrationOutcome>> outcomes = new ArrayList<>();
+            for (int i = 0; i < registrations; i++) {
+                outcomes.add(executor.submit(() -> {
+                    start.await();
+                    return underTest.register(new Customer(UUID.randomUUID(), "Amador", phoneNumber));
+                }));
+            }
+            start.countDown();
+
+            List<RegistrationOutcome> results = new ArrayList<>();
+            for (Future<RegistrationOutcome> outcome : outcomes)
+                results.add(outcome.get());
+
+            //Then
+            assertThat(results).containsOnlyOnce(RegistrationOutcome.CREATED);
+            assertThat(results).filteredOn(o -> o != RegistrationOutcome.CREATED)
+                    .containsOnly(RegistrationOutcome.ALREADY_REGISTERED);
+        } finally {
+            executor.shutdownNow();
+            underTest.findCustomerByPhoneNumber(phoneNumber).ifPresent(underTest::delete);
+        }
+    }
+
+    @Test
+    void itShouldClassifyBatchRegistrationsThatLostTheRace() {
+        //Given
+        underTest.register(new Customer(UUID.randomUUID(), "Amador", "+34660000001"));
+        underTest.register(new Customer(UUID.randomUUID(), "Sandra", "+34660000002"));
+
+        //When
+        RegistrationOutcome[] outcomes = underTest.registerAll(List.of(
+                new Customer(UUID.randomUUID(), "Amador", "+34660000001"),
+                new Customer(UUID.randomUUID(), "Pedro", "+34660000002"),
+                new Customer(UUID.randomUUID(), "Juan", "+34660000003")));
+
+        //Then
+        assertThat(outcomes).containsExactly(
+                RegistrationOutcome.ALREADY_REGISTERED,
+                RegistrationOutcome.PHONE_NUMBER_TAKEN,
+                RegistrationOutcome.CREATED);
+    }
+
+    @Test
+    void itShouldResolveBatchRegistrationsReportedWithoutRowCount() {
+        //Given
+        Customer inserted = new Customer(UUID.randomUUID(), "Amador", "+34660000001");
+        Customer sameName = new Customer(UUID.randomUUID(), "Sandra", "+34660000002");
+        Customer otherName = new Customer(UUID.randomUUID(), "Pedro", "+34660000003");
+        underTest.register(inserted);
+        underTest.register(new Customer(UUID.randomUUID(), "Sandra", "+34660000002"));
+        underTest.register(new Customer(UUID.randomUUID(), "Juan", "+34660000003"));
+
+        // .. a driver that rewrites batches reports every row as SUCCESS_NO_INFO
+        JdbcTemplate rewritingDriver = spy(jdbcTemplate);
+        willReturn(new int[][]{{Statement.SUCCESS_NO_INFO, Statement.SUCCESS_NO_INFO, Statement.SUCCESS_NO_INFO}})
+                .given(rewritingDriver).batchUpdate(anyString(), anyList(), anyInt(), any());
+        CustomerRegistrationRepository repository = new CustomerRegistrationRepositoryImpl(rewritingDriver);
+
+        //When
+        RegistrationOutcome[] outcomes = repository.registerAll(List.of(inserted, sameName, otherName));
+
+        //Then
+        assertThat(outcomes).containsExactly(
+                RegistrationOutcome.CREATED,
+                RegistrationOutcome.ALREADY_REGISTERED,
+                RegistrationOutcome.PHONE_NUMBER_TAKEN);
+    }
+
     @Test
     void itShouldNotSelectCustomerByPhoneNumberDoesNotExist() {
         //Given
@@ -63,6 +211,8 @@ class CustomerRepositoryTest {
         assertThat(c).usingRecursiveComparison()
                 .ignoringFields("customerId")
                 .isEqualTo(customer);
+        // ... with a time-ordered id
+        assertThat(c.getId().version()).isEqualTo(7);
     }
 
     @Test
@@ -1,12 +1,15 @@
 package testing.customer;
 
 import com.google.i18n.phonenumbers.NumberParseException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import testing.utils.PhoneNumberValidator;
 
@@ -14,6 +17,7 @@ import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
 
@@ -29,6 +33,12 @@ class CustomerServiceTest {
     @Mock
     private PhoneNumberValidator phoneNumberValidator;
 
+    @Mock
+    private CustomerExistenceCache customerExistenceCache;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @InjectMocks
     private CustomerService underTest;
 
@@ -52,23 +62,28 @@ class CustomerServiceTest {
                 "Amador", phoneNumber
         );
 
-        // ... no customer with that phone number
-        given(customerRepository.findCustomerByPhoneNumberNative(phoneNumber))
-                .willReturn(Optional.empty());
+        String normalizedPhoneNumber = "+34600000000";
 
         // given a valid number (mock)
-        given(phoneNumberValidator.validate(phoneNumber)).willReturn(true);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(Optional.of(normalizedPhoneNumber));
+
+        // ... no customer with that phone number
+        given(customerRepository.register(any(Customer.class))).willReturn(RegistrationOutcome.CREATED);
 
         //When
         underTest.registerNewCustomer(request);
 
         //Then
-        then(customerRepository).should().save(customerArgumentCaptor.capture());
+        then(customerRepository).should().register(customerArgumentCaptor.capture());
 
         Customer customer = customerArgumentCaptor.getValue();
         assertThat(customer).isNotNull();
+        assertThat(customer.getId()).isNotNull();
         assertThat(customer.getName()).isEqualTo("Amador");
-        assertThat(customer.getPhoneNumber()).isEqualTo(phoneNumber);
+        assertThat(customer.getPhoneNumber()).isEqualTo(normalizedPhoneNumber);
+
+        // ... the new customer can be charged straight away
+        then(customerExistenceCache).should().registered(customer.getId());
     }
 
     @Test
@@ -80,22 +95,17 @@ class CustomerServiceTest {
         );
 
         // ... customer with that phone number exists and is the same
-        given(customerRepository.findCustomerByPhoneNumberNative(phoneNumber))
-                .willReturn(Optional.of(
-                        Customer.builder()
-                                .name(request.getName())
-                                .phoneNumber(request.getPhoneNumber())
-                                .build())
-                );
+        given(customerRepository.register(any(Customer.class))).willReturn(RegistrationOutcome.ALREADY_REGISTERED);
 
         // given a valid number (mock)
-        given(phoneNumberValidator.validate(phoneNumber)).willReturn(true);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(Optional.of(phoneNumber));
 
         //When
         underTest.registerNewCustomer(request);
 
         //Then
         then(customerRepository).shouldHaveNoMoreInteractions();
+        then(customerExistenceCache).shouldHaveNoInteractions();
 //        then(customerRepository).should(never()).save(any());
     }
 
@@ -108,16 +118,10 @@ class CustomerServiceTest {
         );
 
         // ... customer with that phone number exists and is not the same
-        given(customerRepository.findCustomerByPhoneNumberNative(phoneNumber))
-                .willReturn(Optional.of(
-                        Customer.builder()
-                                .name("Sandra")
-                                .phoneNumber(phoneNumber)
-                                .build())
-                );
+        given(customerRepository.register(any(Customer.class))).willReturn(RegistrationOutcome.PHONE_NUMBER_TAKEN);
 
         // given a valid number (mock)
-        given(phoneNumberValidator.validate(phoneNumber)).willReturn(true);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(Optional.of(phoneNumber));
 
         //When
         //Then
@@ -136,7 +140,7 @@ class CustomerServiceTest {
         );
 
         // given a invalid number (mock)
-        given(phoneNumberValidator.validate(phoneNumber)).willReturn(false);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(Optional.empty());
 
         //When
         //Then
@@ -145,5 +149,8 @@ class CustomerServiceTest {
                 .hasMessageContaining(String.format("Phone number [%s] is not valid", request.getPhoneNumber()));
 
         then(customerRepository).shouldHaveNoMoreInteractions();
+        assertThat(meterRegistry.get("customer.registration.rejected")
+                .tag("reason", "invalid_phone_number")
+                .counter().count()).isEqualTo(1);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,62 @@
+package testing.payment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveTimeoutTest {
+
+    private final AdaptiveTimeout underTest =
+            new AdaptiveTimeout(100, Duration.ofMillis(50), Duration.ofSeconds(5), 3);
+
+    @Test
+    void itShouldUseMaxTimeoutUntilEnoughSamples() {
+        //When
+        record(99, Duration.ofMillis(100));
+
+        //Then
+        assertThat(underTest.current()).isEqualTo(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void itShouldFollowTheP99Latency() {
+        //When
+        record(98, Duration.ofMillis(100));
+        record(2, Duration.ofMillis(400));
+
+        //Then
+        assertThat(underTest.current()).isEqualTo(Duration.ofMillis(1200));
+    }
+
+    @Test
+    void itShouldClampToMinAndMax() {
+        //When
+        record(100, Duration.ofMillis(1));
+
+        //Then
+        assertThat(underTest.current()).isEqualTo(Duration.ofMillis(50));
+
+        //When
+        record(100, Duration.ofSeconds(4));
+
+        //Then
+        assertThat(underTest.current()).isEqualTo(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void itShouldNotAcceptMinAboveMax() {
+        //When
+        //Then
+        assertThatThrownBy(() -> new AdaptiveTimeout(100, Duration.ofSeconds(2), Duration.ofSeconds(1), 3))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("is greater than maximum timeout");
+    }
+
+    private void record(int times, Duration latency) {
+        for (int i = 0; i < times; i++)
+            underTest.record(latency.toNanos());
+    }
+}
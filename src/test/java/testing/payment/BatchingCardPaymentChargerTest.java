@@ -0,0 +1,175 @@
+package testing.payment;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static testing.payment.Currency.EUR;
+
+class BatchingCardPaymentChargerTest {
+
+    private static final Money AMOUNT = new Money(1000, EUR);
+
+    private final BatchProvider provider = new BatchProvider();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void itShouldSendAFullBatchAtOnce() {
+        //Given
+        BatchingCardPaymentCharger underTest = charger(Duration.ofHours(1), 3);
+
+        //When
+        CompletableFuture<CardPaymentCharge> first = underTest.chargeCardAsync("card", AMOUNT, "first");
+        CompletableFuture<CardPaymentCharge> second = underTest.chargeCardAsync("card", AMOUNT, "second");
+        assertThat(provider.batches).isEmpty();
+        CompletableFuture<CardPaymentCharge> third = underTest.chargeCardAsync("card", AMOUNT, "third");
+
+        //Then
+        assertThat(provider.batches).singleElement()
+                .satisfies(batch -> assertThat(batch).extracting(CardChargeRequest::description)
+                        .containsExactly("first", "second", "third"));
+        provider.completeAll();
+        assertThat(first).isCompleted();
+        assertThat(second).isCompleted();
+        assertThat(third).isCompleted();
+        assertThat(meterRegistry.get("payment.charger.batch.size").summary().totalAmount()).isEqualTo(3);
+    }
+
+    @Test
+    void itShouldSendAPartialBatchOnceTheWindowEnds() {
+        //Given
+        BatchingCardPaymentCharger underTest = charger(Duration.ofMillis(20), 100);
+
+        //When
+        CompletableFuture<CardPaymentCharge> charge = underTest.chargeCardAsync("card", AMOUNT, "lonely");
+
+        //Then
+        CompletableFuture.runAsync(provider::completeAll,
+                CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS)).join();
+        assertThat(provider.batches).singleElement().satisfies(batch -> assertThat(batch).hasSize(1));
+        assertThat(charge.join().isCardDebited()).isTrue();
+    }
+
+    @Test
+    void itShouldCompleteEachChargeOnItsOwn() {
+        //Given
+        BatchingCardPaymentCharger underTest = charger(Duration.ofHours(1), 100);
+        CompletableFuture<CardPaymentCharge> declined = underTest.chargeCardAsync("card", AMOUNT, "declined");
+        CompletableFuture<CardPaymentCharge> debited = underTest.chargeCardAsync("card", AMOUNT, "debited");
+
+        //When
+        underTest.flush();
+        provider.charges.get(0).completeExceptionally(new IllegalStateException("Card declined"));
+        provider.charges.get(1).complete(CardPaymentCharge.builder().isCardDebited(true).build());
+
+        //Then
+        assertThatThrownBy(declined::join).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(debited.join().isCardDebited()).isTrue();
+    }
+
+    @Test
+    void itShouldNotSendAChargeCancelledWhileQueued() {
+        //Given
+        BatchingCardPaymentCharger underTest = charger(Duration.ofHours(1), 100);
+        CompletableFuture<CardPaymentCharge> cancelled = underTest.chargeCardAsync("card", AMOUNT, "cancelled");
+        underTest.chargeCardAsync("card", AMOUNT, "sent");
+
+        //When
+        cancelled.cancel(true);
+        underTest.flush();
+
+        //Then
+        assertThat(provider.batches).singleElement()
+                .satisfies(batch -> assertThat(batch).extracting(CardChargeRequest::description)
+                        .containsExactly("sent"));
+    }
+
+    @Test
+    void itShouldCancelTheProviderChargeWhenTheCallerGivesUp() {
+        //Given
+        BatchingCardPaymentCharger underTest = charger(Duration.ofHours(1), 1);
+        CompletableFuture<CardPaymentCharge> charge = underTest.chargeCardAsync("card", AMOUNT, "slow");
+
+        //When
+        charge.cancel(true);
+
+        //Then
+        assertThat(provider.charges.get(0)).isCancelled();
+    }
+
+    @Test
+    void itShouldFailTheWholeBatchWhenItCannotBeSent() {
+        //Given
+        CardPaymentCharger failing = new BatchProvider() {
+            @Override
+            public List<CompletableFuture<CardPaymentCharge>> chargeCardsAsync(List<CardChargeRequest> charges) {
+                throw new IllegalStateException("Provider unreachable");
+            }
+        };
+        BatchingCardPaymentCharger underTest =
+                new BatchingCardPaymentCharger(failing, Duration.ofHours(1), 2, meterRegistry);
+
+        //When
+        CompletableFuture<CardPaymentCharge> first = underTest.chargeCardAsync("card", AMOUNT, "first");
+        CompletableFuture<CardPaymentCharge> second = underTest.chargeCardAsync("card", AMOUNT, "second");
+
+        //Then
+        assertThat(first).isCompletedExceptionally();
+        assertThat(second).isCompletedExceptionally();
+    }
+
+    @Test
+    void itShouldThrowWhenBatchSizeIsNotPositive() {
+        //When
+        //Then
+        assertThatThrownBy(() -> charger(Duration.ofMillis(5), 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Batch size must be at least 1");
+    }
+
+    private BatchingCardPaymentCharger charger(Duration window, int maxBatchSize) {
+        return new BatchingCardPaymentCharger(provider, window, maxBatchSize, meterRegistry);
+    }
+
+    /**
+     * Records the batches it receives, the charges complete when the test says so.
+     */
+    private static class BatchProvider implements CardPaymentCharger {
+
+        private final List<List<CardChargeRequest>> batches = new CopyOnWriteArrayList<>();
+        private final List<CompletableFuture<CardPaymentCharge>> charges = new CopyOnWriteArrayList<>();
+
+        @Override
+        public List<CompletableFuture<CardPaymentCharge>> chargeCardsAsync(List<CardChargeRequest> requests) {
+            batches.add(requests);
+            List<CompletableFuture<CardPaymentCharge>> batch = new ArrayList<>();
+            for (int i = 0; i < requests.size(); i++)
+                batch.add(new CompletableFuture<>());
+            charges.addAll(batch);
+            return batch;
+        }
+
+        @Override
+        public CardPaymentCharge chargeCard(String method, Money amount, String description) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<CardPaymentCharge> chargeCardAsync(String method, Money amount, String description) {
+            throw new UnsupportedOperationException();
+        }
+
+        void completeAll() {
+            charges.forEach(charge -> charge.complete(CardPaymentCharge.builder().isCardDebited(true).build()));
+        }
+    }
+}
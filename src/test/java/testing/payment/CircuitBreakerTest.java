@@ -0,0 +1,106 @@
+package testing.payment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = Duration.ofSeconds(3).toNanos();
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final CircuitBreaker underTest = new CircuitBreaker(
+            4, 0.5, Duration.ofSeconds(1), Duration.ofSeconds(30), 2, now::get);
+
+    @Test
+    void itShouldStayClosedBelowTheUnhealthyRate() {
+        //When
+        call(false, FAST);
+        call(false, FAST);
+        call(false, FAST);
+        call(true, FAST);
+
+        //Then
+        assertThat(underTest.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(underTest.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void itShouldOpenOnSlowCallsAndRefuseCalls() {
+        //When
+        call(false, FAST);
+        call(false, SLOW);
+        call(false, FAST);
+        call(false, SLOW);
+
+        //Then
+        assertThat(underTest.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(underTest.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void itShouldOnlyJudgeTheLastWindowOfCalls() {
+        //Given
+        call(true, FAST);
+        call(false, FAST);
+        call(false, FAST);
+        call(false, FAST);
+
+        //When the failure slides out of the window
+        call(false, FAST);
+        call(true, FAST);
+
+        //Then
+        assertThat(underTest.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void itShouldLetTrialCallsThroughAfterOpenDurationAndClose() {
+        //Given
+        open();
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        //When
+        boolean first = underTest.tryAcquire();
+        boolean second = underTest.tryAcquire();
+        boolean third = underTest.tryAcquire();
+        underTest.onResult(false, FAST);
+        underTest.onResult(false, FAST);
+
+        //Then
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        assertThat(third).isFalse();
+        assertThat(underTest.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void itShouldReopenWhenATrialCallFails() {
+        //Given
+        open();
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        //When
+        call(true, FAST);
+
+        //Then
+        assertThat(underTest.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(underTest.tryAcquire()).isFalse();
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++)
+            call(true, FAST);
+        assertThat(underTest.state()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    private void call(boolean failed, long latencyNanos) {
+        assertThat(underTest.tryAcquire()).isTrue();
+        underTest.onResult(failed, latencyNanos);
+    }
+}
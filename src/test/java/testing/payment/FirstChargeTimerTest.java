@@ -0,0 +1,41 @@
+package testing.payment;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FirstChargeTimerTest {
+
+    private final AtomicLong uptime = new AtomicLong();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final FirstChargeTimer underTest = new FirstChargeTimer(uptime::get);
+
+    @Test
+    void itShouldReportNothingBeforeTheFirstCharge() {
+        //When
+        underTest.bindTo(meterRegistry);
+
+        //Then
+        assertThat(meterRegistry.get("payment.first_charge.time").gauge().value()).isNaN();
+    }
+
+    @Test
+    void itShouldKeepTheTimeOfTheFirstCharge() {
+        //Given
+        underTest.bindTo(meterRegistry);
+
+        //When
+        uptime.set(2500);
+        underTest.chargeSucceeded();
+        uptime.set(9000);
+        underTest.chargeSucceeded();
+
+        //Then
+        assertThat(meterRegistry.get("payment.first_charge.time").gauge().value()).isEqualTo(2.5);
+    }
+}
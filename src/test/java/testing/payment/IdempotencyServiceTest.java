@@ -0,0 +1,281 @@
+package testing.payment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED) //claims commit on their own, like on separate instances
+class IdempotencyServiceTest {
+
+    private static final Instant NOW = Instant.parse("2024-06-01T10:00:00Z");
+    private static final Duration TTL = Duration.ofHours(24);
+    private static final Duration PENDING_TIMEOUT = Duration.ofMinutes(1);
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    private IdempotencyService underTest;
+
+    private final UUID customerId = UUID.randomUUID();
+    private final PaymentRequest request = request(new BigDecimal("10.00"), Currency.EUR);
+
+    @BeforeEach
+    void setUp() {
+        underTest = instance(PENDING_TIMEOUT);
+    }
+
+    @AfterEach
+    void tearDown() {
+        idempotencyRecordRepository.deleteAll();
+    }
+
+    @Test
+    void itShouldChargeAndRememberKey() {
+        //When
+        IdempotencyRecord record = underTest.execute("key", customerId, request, () -> payment(7L));
+
+        //Then
+        assertThat(record.getPaymentId()).isEqualTo(7L);
+        assertThat(idempotencyRecordRepository.findById("key")).hasValueSatisfying(stored -> {
+            assertThat(stored.getStatus()).isEqualTo(IdempotencyRecord.Status.COMPLETED);
+            assertThat(stored.getPaymentId()).isEqualTo(7L);
+            assertThat(stored.getCustomerId()).isEqualTo(customerId);
+            assertThat(stored.getCreatedAt()).isEqualTo(NOW);
+        });
+    }
+
+    @Test
+    void itShouldNotChargeAgainWhenKeyIsCompleted() {
+        //Given
+        underTest.execute("key", customerId, request, () -> payment(7L));
+
+        //When
+        //same amount written differently
+        IdempotencyRecord record = underTest.execute("key", customerId, request(BigDecimal.TEN, Currency.EUR), () -> {
+            throw new AssertionError("should not charge");
+        });
+
+        //Then
+        assertThat(record.getPaymentId()).isEqualTo(7L);
+    }
+
+    @Test
+    void itShouldChargeAgainWhenKeyIsExpired() {
+        //Given
+        idempotencyRecordRepository.save(new IdempotencyRecord("key", customerId,
+                IdempotencyService.requestHash(request), IdempotencyRecord.Status.COMPLETED, 7L,
+                NOW.minus(Duration.ofHours(25))));
+
+        //When
+        IdempotencyRecord record = underTest.execute("key", customerId, request, () -> payment(8L));
+
+        //Then
+        assertThat(record.getPaymentId()).isEqualTo(8L);
+        assertThat(idempotencyRecordRepository.findById("key")).get()
+                .extracting(IdempotencyRecord::getPaymentId).isEqualTo(8L);
+    }
+
+    @Test
+    void itShouldThrowWhenKeyWasUsedForAnotherCustomer() {
+        //Given
+        underTest.execute("key", customerId, request, () -> payment(7L));
+
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.execute("key", UUID.randomUUID(), request, () -> payment(8L)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Idempotency key [key] was already used for another customer");
+    }
+
+    @Test
+    void itShouldThrowWhenKeyWasUsedForAnotherAmountOrCurrency() {
+        //Given
+        underTest.execute("key", customerId, request, () -> payment(7L));
+
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.execute("key", customerId,
+                request(new BigDecimal("11.00"), Currency.EUR), () -> payment(8L)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Idempotency key [key] was already used for a different payment");
+        assertThatThrownBy(() -> underTest.execute("key", customerId,
+                request(new BigDecimal("10.00"), Currency.USD), () -> payment(8L)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Idempotency key [key] was already used for a different payment");
+    }
+
+    @Test
+    void itShouldThrowWhenKeyIsBlank() {
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.execute(" ", customerId, request, () -> null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Idempotency key must have between 1 and 255 characters");
+    }
+
+    @Test
+    void itShouldChargeOnceForConcurrentDuplicates() throws Exception {
+        //Given
+        AtomicInteger charges = new AtomicInteger();
+        CountDownLatch charging = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<IdempotencyRecord> first = CompletableFuture.supplyAsync(() ->
+                underTest.execute("key", customerId, request, () -> {
+                    charges.incrementAndGet();
+                    charging.countDown();
+                    await(release);
+                    return payment(7L);
+                }));
+        assertThat(charging.await(5, TimeUnit.SECONDS)).isTrue();
+
+        //When
+        CompletableFuture<IdempotencyRecord> duplicate = CompletableFuture.supplyAsync(() ->
+                underTest.execute("key", customerId, request, () -> {
+                    charges.incrementAndGet();
+                    return payment(8L);
+                }));
+        release.countDown();
+
+        //Then
+        assertThat(first.get(5, TimeUnit.SECONDS).getPaymentId()).isEqualTo(7L);
+        assertThat(duplicate.get(5, TimeUnit.SECONDS).getPaymentId()).isEqualTo(7L);
+        assertThat(charges).hasValue(1);
+    }
+
+    @Test
+    void itShouldChargeOnceForDuplicatesOnAnotherInstance() throws Exception {
+        //Given
+        IdempotencyService otherInstance = instance(PENDING_TIMEOUT);
+        AtomicInteger charges = new AtomicInteger();
+        CountDownLatch charging = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<IdempotencyRecord> first = CompletableFuture.supplyAsync(() ->
+                underTest.execute("key", customerId, request, () -> {
+                    charges.incrementAndGet();
+                    charging.countDown();
+                    await(release);
+                    return payment(7L);
+                }));
+        assertThat(charging.await(5, TimeUnit.SECONDS)).isTrue();
+
+        //When
+        CompletableFuture<IdempotencyRecord> duplicate = CompletableFuture.supplyAsync(() ->
+                otherInstance.execute("key", customerId, request, () -> {
+                    charges.incrementAndGet();
+                    return payment(8L);
+                }));
+        //the duplicate polls the pending claim
+        Thread.sleep(100);
+        release.countDown();
+
+        //Then
+        assertThat(first.get(5, TimeUnit.SECONDS).getPaymentId()).isEqualTo(7L);
+        assertThat(duplicate.get(5, TimeUnit.SECONDS).getPaymentId()).isEqualTo(7L);
+        assertThat(charges).hasValue(1);
+    }
+
+    @Test
+    void itShouldThrowWhenDuplicateIsStillInProgressOnAnotherInstance() {
+        //Given
+        idempotencyRecordRepository.insertPending("key", customerId, IdempotencyService.requestHash(request), NOW);
+        IdempotencyService otherInstance = instance(Duration.ofMillis(100));
+
+        //When
+        //Then
+        assertThatThrownBy(() -> otherInstance.execute("key", customerId, request, () -> payment(8L)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Payment with idempotency key [key] is still in progress");
+    }
+
+    @Test
+    void itShouldTakeOverAbandonedClaim() {
+        //Given
+        idempotencyRecordRepository.insertPending("key", customerId, IdempotencyService.requestHash(request),
+                NOW.minus(PENDING_TIMEOUT).minusSeconds(1));
+
+        //When
+        IdempotencyRecord record = underTest.execute("key", customerId, request, () -> payment(8L));
+
+        //Then
+        assertThat(record.getPaymentId()).isEqualTo(8L);
+        assertThat(idempotencyRecordRepository.findById("key")).get()
+                .extracting(IdempotencyRecord::getStatus).isEqualTo(IdempotencyRecord.Status.COMPLETED);
+    }
+
+    @Test
+    void itShouldReleaseKeyWhenChargeFails() {
+        //Given
+        assertThatThrownBy(() -> underTest.execute("key", customerId, request, () -> {
+            throw new IllegalStateException("Card not debited");
+        })).isInstanceOf(IllegalStateException.class);
+
+        //When
+        IdempotencyRecord record = underTest.execute("key", customerId, request, () -> payment(7L));
+
+        //Then
+        assertThat(record.getPaymentId()).isEqualTo(7L);
+    }
+
+    @Test
+    void itShouldPurgeExpiredKeys() {
+        //Given
+        underTest.execute("fresh", customerId, request, () -> payment(7L));
+        idempotencyRecordRepository.insertPending("expired", customerId, IdempotencyService.requestHash(request),
+                NOW.minus(Duration.ofHours(25)));
+
+        //When
+        underTest.purgeExpired();
+
+        //Then
+        assertThat(idempotencyRecordRepository.findAll())
+                .extracting(IdempotencyRecord::getIdempotencyKey)
+                .containsExactly("fresh");
+    }
+
+    private IdempotencyService instance(Duration pendingTimeout) {
+        return new IdempotencyService(idempotencyRecordRepository, TTL, pendingTimeout,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    private static PaymentRequest request(BigDecimal amount, Currency currency) {
+        return PaymentRequest.builder()
+                .paymentMethod("card")
+                .paymentDescription("subscription")
+                .amount(amount)
+                .currency(currency)
+                .build();
+    }
+
+    private static Payment payment(long paymentId) {
+        return Payment.builder().paymentId(paymentId).build();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
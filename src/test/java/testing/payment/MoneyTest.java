@@ -0,0 +1,63 @@
+package testing.payment;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static testing.payment.Currency.EUR;
+import static testing.payment.Currency.USD;
+
+class MoneyTest {
+
+    @Test
+    void itShouldConvertDecimalAmountToMinorUnits() {
+        //When
+        Money money = Money.of(new BigDecimal("10.50"), EUR);
+
+        //Then
+        assertThat(money).isEqualTo(new Money(1050, EUR));
+    }
+
+    @Test
+    void itShouldConvertWholeAmountToMinorUnits() {
+        //When
+        //Then
+        assertThat(Money.of(new BigDecimal(10), USD).minorUnits()).isEqualTo(1000);
+        assertThat(Money.of(new BigDecimal("1E+2"), USD).minorUnits()).isEqualTo(10000);
+    }
+
+    @Test
+    void itShouldConvertBackToDecimalAmount() {
+        //When
+        //Then
+        assertThat(new Money(1050, EUR).toBigDecimal()).isEqualTo(new BigDecimal("10.50"));
+    }
+
+    @Test
+    void itShouldRejectAmountWithMoreDecimalsThanCurrency() {
+        //When
+        //Then
+        assertThatThrownBy(() -> Money.of(new BigDecimal("10.505"), EUR))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Amount [10.505] is not a valid [EUR] amount");
+    }
+
+    @Test
+    void itShouldRejectAmountThatDoesNotFitMinorUnits() {
+        //When
+        //Then
+        assertThatThrownBy(() -> Money.of(new BigDecimal("1E+20"), EUR))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void itShouldRejectMissingAmount() {
+        //When
+        //Then
+        assertThatThrownBy(() -> Money.of(null, EUR))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Amount cannot be null");
+    }
+}
@@ -0,0 +1,121 @@
+package testing.payment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static testing.payment.Currency.EUR;
+import static testing.payment.Currency.USD;
+
+class PaymentArchiveFileTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void itShouldReadBackEveryPaymentAcrossRowGroups() {
+        //Given
+        Path file = directory.resolve("payments.parc.gz");
+        UUID customerId = UUID.randomUUID();
+        Instant start = Instant.parse("2024-01-01T00:00:00.123456Z");
+        List<Payment> payments = IntStream.range(0, 7)
+                .mapToObj(i -> new Payment(100 + i, "card", "payment " + i, 1000L * i, i % 2 == 0 ? EUR : USD,
+                        customerId, start.plus(Duration.ofMinutes(i))))
+                .toList();
+
+        //When
+        try (PaymentArchiveFile.Writer writer = new PaymentArchiveFile.Writer(file, 3)) {
+            payments.forEach(writer::add);
+        }
+
+        //Then
+        assertThat(read(file)).usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(payments);
+    }
+
+    @Test
+    void itShouldKeepNullFields() {
+        //Given
+        Path file = directory.resolve("payments.parc.gz");
+        Payment payment = new Payment(1, null, null, 0, null, null, Instant.parse("2024-01-01T00:00:00Z"));
+
+        //When
+        try (PaymentArchiveFile.Writer writer = new PaymentArchiveFile.Writer(file)) {
+            writer.add(payment);
+        }
+
+        //Then
+        assertThat(read(file)).singleElement().usingRecursiveComparison().isEqualTo(payment);
+    }
+
+    @Test
+    void itShouldReadAnEmptyArchive() {
+        //Given
+        Path file = directory.resolve("payments.parc.gz");
+
+        //When
+        new PaymentArchiveFile.Writer(file).close();
+
+        //Then
+        assertThat(read(file)).isEmpty();
+    }
+
+    @Test
+    void itShouldCompressBetterThanRowByRow() {
+        //Given
+        Path file = directory.resolve("payments.parc.gz");
+        List<UUID> customers = IntStream.range(0, 100).mapToObj(i -> UUID.randomUUID()).toList();
+        Instant start = Instant.parse("2024-01-01T00:00:00Z");
+
+        //When
+        try (PaymentArchiveFile.Writer writer = new PaymentArchiveFile.Writer(file)) {
+            for (int i = 0; i < 10_000; i++)
+                writer.add(new Payment(i + 1, "card", "subscription", 999, EUR,
+                        customers.get(i % customers.size()), start.plusSeconds(i)));
+        }
+
+        //Then
+        // ... a payment takes well over 60 bytes uncompressed
+        assertThat(size(file)).isLessThan(10_000 * 10L);
+    }
+
+    @Test
+    void itShouldThrowWhenFileIsNotAnArchive() throws IOException {
+        //Given
+        Path file = directory.resolve("journal.dat");
+        try (var out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write(new byte[16]);
+        }
+
+        //When
+        //Then
+        assertThatThrownBy(() -> read(file))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("is not a payment archive");
+    }
+
+    private static List<Payment> read(Path file) {
+        List<Payment> payments = new ArrayList<>();
+        PaymentArchiveFile.read(file, payments::add);
+        return payments;
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package testing.payment;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static testing.payment.Currency.EUR;
+import static testing.payment.Currency.USD;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED) //the archive commits its own transactions
+class PaymentArchiveTest {
+
+    // three hot months: March, April and May stay in the table
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2024-05-20T12:00:00Z"), ZoneOffset.UTC);
+    private static final Duration LOCK_LEASE = Duration.ofHours(1);
+
+    @TempDir
+    private Path directory;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PaymentArchiveLockRepository lockRepository;
+
+    private final UUID customerId = UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        paymentRepository.deleteAll(payments());
+        lockRepository.deleteAll();
+    }
+
+    @Test
+    void itShouldMoveColdMonthsToTheArchive() {
+        //Given
+        save("january", "2024-01-10T00:00:00Z", EUR);
+        save("february", "2024-02-29T23:59:59Z", USD);
+        save("march", "2024-03-01T00:00:00Z", EUR);
+        PaymentArchive underTest = archive();
+
+        //When
+        underTest.archiveColdMonths();
+
+        //Then
+        assertThat(payments()).extracting(Payment::getPaymentDescription).containsExactly("march");
+        assertThat(underTest.archivedMonths()).containsExactly(YearMonth.of(2024, 1), YearMonth.of(2024, 2));
+        assertThat(archived(underTest, PaymentFilter.builder().customerId(customerId).build()))
+                .extracting(Payment::getPaymentDescription)
+                .containsExactly("january", "february");
+    }
+
+    @Test
+    void itShouldOnlyReadTheArchivedMonthsInTheTimeRange() {
+        //Given
+        save("january", "2024-01-10T00:00:00Z", EUR);
+        save("february", "2024-02-10T00:00:00Z", EUR);
+        save("february usd", "2024-02-11T00:00:00Z", USD);
+        PaymentArchive underTest = archive();
+        underTest.archiveColdMonths();
+
+        //When
+        List<Payment> february = archived(underTest, PaymentFilter.builder()
+                .customerId(customerId)
+                .currency(EUR)
+                .from(Instant.parse("2024-02-01T00:00:00Z"))
+                .to(Instant.parse("2024-03-01T00:00:00Z"))
+                .build());
+
+        //Then
+        assertThat(february).singleElement().satisfies(payment -> {
+            assertThat(payment.getPaymentDescription()).isEqualTo("february");
+            assertThat(payment.getCreatedAt()).isEqualTo(Instant.parse("2024-02-10T00:00:00Z"));
+            assertThat(payment.getAmount()).isEqualTo(1000);
+        });
+    }
+
+    @Test
+    void itShouldAddLatePaymentsToAnArchivedMonth() {
+        //Given
+        save("january", "2024-01-10T00:00:00Z", EUR);
+        PaymentArchive underTest = archive();
+        underTest.archiveColdMonths();
+
+        //When
+        save("late january", "2024-01-11T00:00:00Z", EUR);
+        underTest.archiveColdMonths();
+
+        //Then
+        assertThat(payments()).isEmpty();
+        assertThat(archived(underTest, PaymentFilter.builder().customerId(customerId).build()))
+                .extracting(Payment::getPaymentDescription)
+                .containsExactly("january", "late january");
+    }
+
+    @Test
+    void itShouldNotArchiveWhenDisabled() {
+        //Given
+        save("january", "2024-01-10T00:00:00Z", EUR);
+        PaymentArchive underTest = new PaymentArchive(paymentRepository, transactionManager, entityManager,
+                lockRepository, new SimpleMeterRegistry(), false, directory, 3, LOCK_LEASE, CLOCK);
+
+        //When
+        underTest.archiveColdMonths();
+
+        //Then
+        assertThat(payments()).hasSize(1);
+        assertThat(underTest.archivedMonths()).isEmpty();
+    }
+
+    @Test
+    void itShouldNotArchiveWhileAnotherInstanceHoldsTheLock() {
+        //Given
+        save("january", "2024-01-10T00:00:00Z", EUR);
+        lockRepository.insert("payment-archive", "other instance", CLOCK.instant().plusSeconds(60));
+        PaymentArchive underTest = archive();
+
+        //When
+        underTest.archiveColdMonths();
+
+        //Then
+        assertThat(payments()).hasSize(1);
+        assertThat(underTest.archivedMonths()).isEmpty();
+    }
+
+    @Test
+    void itShouldTakeOverTheLockOfAnInstanceThatStoppedRenewingIt() {
+        //Given
+        save("january", "2024-01-10T00:00:00Z", EUR);
+        lockRepository.insert("payment-archive", "dead instance", CLOCK.instant().minusSeconds(1));
+        PaymentArchive underTest = archive();
+
+        //When
+        underTest.archiveColdMonths();
+
+        //Then
+        assertThat(payments()).isEmpty();
+        assertThat(underTest.archivedMonths()).containsExactly(YearMonth.of(2024, 1));
+        // ... and released it for the next run
+        assertThat(lockRepository.findById("payment-archive")).hasValueSatisfying(lock ->
+                assertThat(lock.getLockedUntil()).isEqualTo(CLOCK.instant()));
+    }
+
+    @Test
+    void itShouldThrowWhenTimeRangeEndsBeforeItStarts() {
+        //Given
+        PaymentArchive underTest = archive();
+        PaymentFilter filter = PaymentFilter.builder()
+                .from(Instant.parse("2024-02-01T00:00:00Z"))
+                .to(Instant.parse("2024-01-01T00:00:00Z"))
+                .build();
+
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.stream(filter, payment -> {}))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("must start before it ends");
+    }
+
+    private PaymentArchive archive() {
+        return new PaymentArchive(paymentRepository, transactionManager, entityManager,
+                lockRepository, new SimpleMeterRegistry(), true, directory, 3, LOCK_LEASE, CLOCK);
+    }
+
+    private void save(String description, String createdAt, Currency currency) {
+        paymentRepository.save(Payment.builder()
+                .paymentMethod("card")
+                .paymentDescription(description)
+                .amount(1000)
+                .currency(currency)
+                .customerId(customerId)
+                .createdAt(Instant.parse(createdAt))
+                .build());
+    }
+
+    private List<Payment> payments() {
+        return paymentRepository.findPage(0, customerId, null, null, null, Limit.of(100));
+    }
+
+    private static List<Payment> archived(PaymentArchive archive, PaymentFilter filter) {
+        List<Payment> payments = new ArrayList<>();
+        archive.stream(filter, payments::add);
+        return payments;
+    }
+}
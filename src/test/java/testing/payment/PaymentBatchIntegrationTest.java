@@ -0,0 +1,71 @@
+package testing.payment;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import testing.customer.Customer;
+import testing.customer.CustomerRepository;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static testing.payment.Currency.EUR;
+
+@SpringBootTest(properties = {
+        "rate-limit.global.permits-per-second=1",
+        "rate-limit.global.burst=5"
+})
+@AutoConfigureMockMvc
+class PaymentBatchIntegrationTest {
+
+    private static final int GLOBAL_BURST = 5;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void itShouldAcceptABatchBiggerThanTheGlobalBurst() throws Exception {
+        //Given
+        Customer customer = customerRepository.save(new Customer("Amador", "+34660000009"));
+        PaymentRequest payment = PaymentRequest.builder()
+                .paymentMethod("card")
+                .paymentDescription("settlement")
+                .amount(new BigDecimal("10.00"))
+                .currency(EUR)
+                .build();
+        List<BatchPaymentRequest> batch = IntStream.range(0, GLOBAL_BURST * 4)
+                .mapToObj(i -> BatchPaymentRequest.builder().customerId(customer.getId()).payment(payment).build())
+                .toList();
+
+        //When
+        String json = mockMvc.perform(post("/api/v1/payment/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(batch)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        //Then
+        List<BatchPaymentResult> results = objectMapper.readValue(json, new TypeReference<>() {});
+        assertThat(results).hasSize(GLOBAL_BURST * 4).allMatch(BatchPaymentResult::isCharged);
+        // ... the batch took a single global token, single payments still go through
+        mockMvc.perform(post("/api/v1/payment/{customerId}", customer.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(payment)))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,204 @@
+package testing.payment;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import testing.customer.Customer;
+import testing.customer.CustomerRepository;
+import testing.replica.ReadYourWrites;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+import static testing.payment.Currency.*;
+
+@ExtendWith(MockitoExtension.class)
+class PaymentBatchServiceTest {
+
+    @Captor
+    private ArgumentCaptor<List<Payment>> paymentsArgumentCaptor;
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    @Mock
+    private PaymentRecorder paymentRecorder;
+
+    @Mock
+    private CardPaymentCharger cardPaymentCharger;
+
+    @Mock
+    private ReadYourWrites readYourWrites;
+
+    @Mock
+    private FirstChargeTimer firstChargeTimer;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ExecutorService chargeExecutor;
+
+    private PaymentBatchService underTest;
+
+    @BeforeEach
+    public void setUp() {
+        chargeExecutor = Executors.newFixedThreadPool(4);
+        underTest = new PaymentBatchService(customerRepository, paymentRecorder, cardPaymentCharger, readYourWrites,
+                firstChargeTimer, chargeExecutor, meterRegistry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        chargeExecutor.shutdownNow();
+    }
+
+    @Test
+    void itShouldChargeBatchAndReportEachItem() {
+        //Given
+        UUID customerId = UUID.randomUUID();
+        UUID unknownCustomerId = UUID.randomUUID();
+
+        // .. only one of the customers exists, resolved in a single query
+        given(customerRepository.findAllById(Set.of(customerId, unknownCustomerId)))
+                .willReturn(List.of(Customer.builder().id(customerId).build()));
+
+        // .. the provider takes everything but pounds
+        given(cardPaymentCharger.supports(any()))
+                .willAnswer(invocation -> invocation.getArgument(0) != GBP);
+
+        // .. the second card is declined
+        given(cardPaymentCharger.chargeCard(any(), any(), eq("first")))
+                .willReturn(new CardPaymentCharge(true));
+        given(cardPaymentCharger.chargeCard(any(), any(), eq("declined")))
+                .willReturn(new CardPaymentCharge(false));
+
+        given(paymentRecorder.recordAll(anyList())).willAnswer(invocation -> {
+            List<Payment> payments = invocation.getArgument(0);
+            payments.forEach(p -> p.setPaymentId(42L));
+            return payments;
+        });
+
+        List<BatchPaymentRequest> requests = List.of(
+                batchRequest(customerId, "first", EUR),
+                batchRequest(customerId, "declined", USD),
+                batchRequest(unknownCustomerId, "unknown", EUR),
+                batchRequest(customerId, "pounds", GBP)
+        );
+
+        //When
+        List<BatchPaymentResult> results = underTest.chargePayments(requests);
+
+        //Then
+        assertThat(results).hasSize(4);
+        assertThat(results.get(0).isCharged()).isTrue();
+        assertThat(results.get(0).getPaymentId()).isEqualTo(42L);
+        assertThat(results.get(1).getError())
+                .isEqualTo(String.format("Card not debited for customer [%s]", customerId));
+        assertThat(results.get(2).getError())
+                .isEqualTo(String.format("Customer [%s] does not exist", unknownCustomerId));
+        assertThat(results.get(3).getError()).isEqualTo("Currency [GBP] not supported");
+
+        then(paymentRecorder).should().recordAll(paymentsArgumentCaptor.capture());
+        assertThat(paymentsArgumentCaptor.getValue())
+                .singleElement()
+                .satisfies(p -> {
+                    assertThat(p.getPaymentDescription()).isEqualTo("first");
+                    assertThat(p.getCustomerId()).isEqualTo(customerId);
+                });
+        // ... and the customer reads its payment from the primary
+        then(readYourWrites).should().wrote(customerId);
+        then(firstChargeTimer).should().chargeSucceeded();
+        // ... the rejections counted like single payments
+        assertThat(meterRegistry.find("payment.charge.rejected").counters())
+                .extracting(counter -> counter.getId().getTag("reason"), counter -> counter.count())
+                .containsExactlyInAnyOrder(
+                        tuple("card_not_debited", 1.0),
+                        tuple("customer_not_found", 1.0),
+                        tuple("currency_not_supported", 1.0));
+    }
+
+    @Test
+    void itShouldRejectAmountWithTooManyDecimals() {
+        //Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.findAllById(Set.of(customerId)))
+                .willReturn(List.of(Customer.builder().id(customerId).build()));
+        BatchPaymentRequest request = batchRequest(customerId, "description", EUR);
+        request.getPayment().setAmount(new BigDecimal("10.505"));
+        given(cardPaymentCharger.supports(EUR)).willReturn(true);
+
+        //When
+        List<BatchPaymentResult> results = underTest.chargePayments(List.of(request));
+
+        //Then
+        assertThat(results).singleElement()
+                .satisfies(r -> assertThat(r.getError()).isEqualTo("Amount [10.505] is not a valid [EUR] amount"));
+        then(cardPaymentCharger).should(never()).chargeCard(any(), any(), any());
+        then(readYourWrites).shouldHaveNoInteractions();
+        then(firstChargeTimer).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void itShouldReportChargerFailureWithoutFailingTheBatch() {
+        //Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.findAllById(Set.of(customerId)))
+                .willReturn(List.of(Customer.builder().id(customerId).build()));
+        given(cardPaymentCharger.supports(EUR)).willReturn(true);
+        given(cardPaymentCharger.chargeCard(any(), any(), any()))
+                .willThrow(new IllegalStateException("Can not make Stripe charge"));
+
+        //When
+        List<BatchPaymentResult> results = underTest.chargePayments(
+                List.of(batchRequest(customerId, "description", EUR)));
+
+        //Then
+        assertThat(results).singleElement()
+                .satisfies(r -> {
+                    assertThat(r.isCharged()).isFalse();
+                    assertThat(r.getError()).isEqualTo("Can not make Stripe charge");
+                });
+    }
+
+    @Test
+    void itShouldThrowExceptionWhenBatchIsEmpty() {
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.chargePayments(List.of()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Batch cannot be empty");
+
+        then(cardPaymentCharger).shouldHaveNoInteractions();
+    }
+
+    private static BatchPaymentRequest batchRequest(UUID customerId, String description, Currency currency) {
+        return BatchPaymentRequest.builder()
+                .customerId(customerId)
+                .payment(PaymentRequest.builder()
+                        .paymentMethod("card")
+                        .paymentDescription(description)
+                        .amount(new BigDecimal(10))
+                        .currency(currency)
+                        .build())
+                .build();
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
@@ -13,6 +14,11 @@ import org.springframework.test.web.servlet.ResultActions;
 import testing.customer.Customer;
 import testing.customer.CustomerRegistrationRequest;
 import testing.customer.CustomerRepository;
+import testing.payment.event.PaymentEvent;
+import testing.payment.event.PaymentEventMessage;
+import testing.payment.event.PaymentEventRecord;
+import testing.payment.event.PaymentEventRelay;
+import testing.payment.event.PaymentEventSink;
 
 import java.math.BigDecimal;
 import java.util.List;
@@ -22,16 +28,28 @@ import java.util.UUID;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static testing.payment.Currency.EUR;
 
 @SpringBootTest
 @AutoConfigureMockMvc
+@AutoConfigureObservability //metrics export is disabled in tests otherwise
 class PaymentIntegrationTest {
 
     @Autowired
     private CustomerRepository customerRepository;
 
+    @Autowired
+    private PaymentEventRelay paymentEventRelay;
+
+    @Autowired
+    private PaymentEventSink paymentEventSink;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /*@Autowired
     private PaymentRepository paymentRepository;*/
 
@@ -52,7 +70,7 @@ class PaymentIntegrationTest {
         // a payment request
         String method = "method";
         String description = "description";
-        BigDecimal amount = new BigDecimal(10);
+        BigDecimal amount = new BigDecimal("10.50");
         Currency currency = EUR;
         PaymentRequest paymentRequest = PaymentRequest.builder()
                 .paymentMethod(method)
@@ -68,7 +86,8 @@ class PaymentIntegrationTest {
         );
 
         // get the customerId after insertion in db (client does not send any id)
-        Optional<Customer> optionalCustomer = customerRepository.findCustomerByPhoneNumberNative(phoneNumber);
+        // .. phone numbers are stored in E.164 format
+        Optional<Customer> optionalCustomer = customerRepository.findCustomerByPhoneNumberNative("+34" + phoneNumber);
         UUID customerId = null;
         if (optionalCustomer.isPresent())
             customerId = optionalCustomer.get().getId();
@@ -76,12 +95,21 @@ class PaymentIntegrationTest {
 
         ResultActions resultPaymentActions = mockMvc.perform(post("/api/v1/payment/{customerId}", customerId)
                 .contentType(MediaType.APPLICATION_JSON)
+                .header(PaymentController.IDEMPOTENCY_KEY_HEADER, "payment-1")
+                .content(new ObjectMapper().writeValueAsString(paymentRequest))
+        );
+
+        // a retry with the same idempotency key does not charge again
+        ResultActions resultRetryActions = mockMvc.perform(post("/api/v1/payment/{customerId}", customerId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(PaymentController.IDEMPOTENCY_KEY_HEADER, "payment-1")
                 .content(new ObjectMapper().writeValueAsString(paymentRequest))
         );
 
         //Then
         resultCustomerRequestActions.andExpect(status().isOk());
         resultPaymentActions.andExpect(status().isOk());
+        resultRetryActions.andExpect(status().isOk());
 
         //assertions using PaymentRepository
         
@@ -98,17 +126,56 @@ class PaymentIntegrationTest {
 
         String jsonResponse = mvcResult.getResponse().getContentAsString();
 
-        List<Payment> payments = new ObjectMapper().readValue(jsonResponse, new TypeReference<>() {});
+        List<PaymentResponse> payments = objectMapper.readValue(jsonResponse, new TypeReference<>() {});
 
         assertThat(payments.size()).isEqualTo(1);
         //get the payment
-        Payment payment = payments.get(0);
+        PaymentResponse payment = payments.get(0);
 
         assertThat(payment.getPaymentDescription()).isEqualTo(description);
+        assertThat(payment.getCreatedAt()).isNotNull();
         assertThat(payment.getPaymentMethod()).isEqualTo(method);
-        assertThat(payment.getAmount().longValue()).isEqualTo(amount.longValue());
+        // .. stored in cents, the decimals survive the round trip
+        assertThat(payment.getAmount()).isEqualByComparingTo(amount);
         assertThat(payment.getCurrency()).isEqualTo(currency);
         assertThat(payment.getCustomerId()).isEqualTo(customerId);
 
+        // totals come from the rollup updated with the payment
+        String summaryJson = mockMvc.perform(get("/api/v1/payment/summary/{customerId}", customerId))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        List<PaymentSummaryResponse> summaries = new ObjectMapper().readValue(summaryJson, new TypeReference<>() {});
+        assertThat(summaries).singleElement().satisfies(summary -> {
+            assertThat(summary.getCurrency()).isEqualTo(currency);
+            assertThat(summary.getPaymentCount()).isEqualTo(1);
+            assertThat(summary.getTotalAmount()).isEqualByComparingTo(amount);
+        });
+
+        // consumers get the payment from the event stream instead of polling every payment
+        paymentEventRelay.relay();
+        int partition = paymentEventSink.partitionOf(customerId);
+        String eventsJson = mockMvc.perform(get("/api/v1/payment/events/{partition}", partition)
+                        .param("consumer", "ledger"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        List<PaymentEventRecord> events = objectMapper.readValue(eventsJson, new TypeReference<>() {});
+        assertThat(events).hasSize(1);
+        PaymentEventMessage event = events.get(0).event();
+        assertThat(event.type()).isEqualTo(PaymentEvent.PAYMENT_CREATED);
+        assertThat(event.customerId()).isEqualTo(customerId);
+        assertThat(event.amount()).isEqualByComparingTo(amount);
+        // .. once committed they are not read again
+        mockMvc.perform(put("/api/v1/payment/events/{partition}/offset", partition)
+                        .param("consumer", "ledger")
+                        .param("offset", String.valueOf(events.get(0).offset() + 1)))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/v1/payment/events/{partition}", partition).param("consumer", "ledger"))
+                .andExpect(content().json("[]"));
+
+        // the charge stages are exposed to prometheus
+        String metrics = mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertThat(metrics).contains("payment_charge_stage_seconds_count{charger=\"MockStripeService\",currency=\"EUR\",stage=\"card_charge\"}");
     }
 }
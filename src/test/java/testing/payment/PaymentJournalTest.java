@@ -0,0 +1,155 @@
+package testing.payment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static testing.payment.Currency.EUR;
+
+class PaymentJournalTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void itShouldReadAppendedPaymentsAfterReopening() {
+        //Given
+        Path file = directory.resolve("journal.dat");
+        Payment first = payment("first");
+        Payment second = payment("second");
+        // ... one stamped when charged, one without a time
+        first.setCreatedAt(Instant.parse("2024-01-31T23:59:59.123456789Z"));
+
+        //When
+        try (PaymentJournal journal = new PaymentJournal(file, 4096)) {
+            assertThat(journal.append(first)).isEqualTo(1);
+            assertThat(journal.append(second)).isEqualTo(2);
+        }
+
+        //Then
+        try (PaymentJournal journal = new PaymentJournal(file, 4096)) {
+            List<PaymentJournal.Entry> entries = journal.readAll();
+            assertThat(entries).extracting(PaymentJournal.Entry::sequence).containsExactly(1L, 2L);
+            assertThat(entries.get(0).payment()).isEqualTo(first);
+            assertThat(entries.get(1).payment()).isEqualTo(second);
+        }
+    }
+
+    @Test
+    void itShouldKeepSequenceAfterClearing() {
+        //Given
+        Path file = directory.resolve("journal.dat");
+        try (PaymentJournal journal = new PaymentJournal(file, 4096)) {
+            journal.append(payment("first"));
+
+            //When
+            journal.clear();
+
+            //Then
+            assertThat(journal.isEmpty()).isTrue();
+            assertThat(journal.readAll()).isEmpty();
+            assertThat(journal.append(payment("second"))).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void itShouldDropFlushedRecordsWhenCompacting() {
+        //Given
+        Path file = directory.resolve("journal.dat");
+        PaymentJournal journal = new PaymentJournal(file, 4096);
+        journal.append(payment("flushed"));
+        journal.append(payment("pending"));
+        int size = journal.size();
+
+        //When
+        journal = journal.compact(1);
+
+        //Then
+        try (PaymentJournal compacted = journal) {
+            assertThat(compacted.size()).isLessThan(size);
+            assertThat(compacted.readAll())
+                    .extracting(entry -> entry.sequence(), entry -> entry.payment().getPaymentDescription())
+                    .containsExactly(tuple(2L, "pending"));
+            assertThat(compacted.append(payment("next"))).isEqualTo(3);
+        }
+        // ... and the compacted journal is the one read on the next start
+        try (PaymentJournal reopened = new PaymentJournal(file, 4096)) {
+            assertThat(reopened.readAll()).extracting(PaymentJournal.Entry::sequence).containsExactly(2L, 3L);
+        }
+    }
+
+    @Test
+    void itShouldRefuseAppendWhenFull() {
+        //Given
+        try (PaymentJournal journal = new PaymentJournal(directory.resolve("journal.dat"), 200)) {
+            //When
+            long first = journal.append(payment("first"));
+            long second = journal.append(payment("second"));
+
+            //Then
+            assertThat(first).isEqualTo(1);
+            assertThat(second).isEqualTo(-1);
+            assertThat(journal.readAll()).hasSize(1);
+        }
+    }
+
+    @Test
+    void itShouldStopReadingAtCorruptedRecord() throws Exception {
+        //Given
+        Path file = directory.resolve("journal.dat");
+        try (PaymentJournal journal = new PaymentJournal(file, 4096)) {
+            journal.append(payment("first"));
+            journal.append(payment("second"));
+        }
+        // ... flip a byte in the last record
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(PaymentJournal.HEADER_SIZE + 120);
+            raf.write(0x7f);
+        }
+
+        //When
+        try (PaymentJournal journal = new PaymentJournal(file, 4096)) {
+            //Then
+            assertThat(journal.readAll()).extracting(PaymentJournal.Entry::sequence).containsExactly(1L);
+        }
+    }
+
+    @Test
+    void itShouldAdvanceSequence() {
+        //Given
+        try (PaymentJournal journal = new PaymentJournal(directory.resolve("journal.dat"), 4096)) {
+            //When
+            journal.advanceSequencePast(41);
+
+            //Then
+            assertThat(journal.append(payment("first"))).isEqualTo(42);
+        }
+    }
+
+    @Test
+    void itShouldThrowWhenCapacityIsTooSmall() {
+        //When
+        //Then
+        assertThatThrownBy(() -> new PaymentJournal(directory.resolve("journal.dat"), 10))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Journal capacity must be greater than 64 bytes");
+    }
+
+    private static Payment payment(String description) {
+        return Payment.builder()
+                .paymentMethod("card")
+                .paymentDescription(description)
+                .amount(1050)
+                .currency(EUR)
+                .customerId(UUID.randomUUID())
+                .build();
+    }
+}
@@ -4,9 +4,13 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 
-import java.math.BigDecimal;
+import org.springframework.data.domain.Limit;
+
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static testing.payment.Currency.*;
@@ -24,20 +28,118 @@ class PaymentRepositoryTest {
         Payment payment = new Payment(paymentId,
                 "card",
                 "donation",
-                new BigDecimal(10),
+                1000,
                 EUR,
-                UUID.randomUUID());
+                UUID.randomUUID(),
+                Instant.parse("2024-01-15T10:00:00Z"));
 
         //When
-        underTest.save(payment);
+        // the id is generated from a sequence shared by every test in the context
+        Payment saved = underTest.save(payment);
 
         //Then
-        Optional<Payment> optionalPayment = underTest.findById(paymentId);
+        Optional<Payment> optionalPayment = underTest.findById(saved.getPaymentId());
         assertThat(optionalPayment)
                 .isPresent()
                 .hasValueSatisfying(
-                        p -> assertThat(p).usingRecursiveComparison().isEqualTo(payment)
+                        p -> assertThat(p).usingRecursiveComparison()
+                                .ignoringFields("paymentId")
+                                .isEqualTo(payment)
                 );
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void itShouldSelectPaymentsAfterCursor() {
+        //Given
+        UUID customerId = UUID.randomUUID();
+        List<Payment> saved = underTest.saveAll(List.of(
+                new Payment(0, "card", "first", 1000, EUR, customerId, null),
+                new Payment(0, "card", "second", 2000, USD, customerId, null),
+                new Payment(0, "card", "third", 3000, EUR, customerId, null),
+                new Payment(0, "card", "other", 4000, EUR, UUID.randomUUID(), null)
+        ));
+        long firstId = saved.get(0).getPaymentId();
+
+        //When
+        List<Payment> page = underTest.findPage(firstId, customerId, null, null, null, Limit.of(10));
+        List<Payment> eurPage = underTest.findPage(0, customerId, EUR, null, null, Limit.of(1));
+
+        //Then
+        assertThat(page)
+                .extracting(Payment::getPaymentDescription)
+                .containsExactly("second", "third");
+        assertThat(eurPage)
+                .extracting(Payment::getPaymentDescription)
+                .containsExactly("first");
+    }
+
+    @Test
+    void itShouldStreamFilteredPaymentsInIdOrder() {
+        //Given
+        UUID customerId = UUID.randomUUID();
+        underTest.saveAll(List.of(
+                new Payment(0, "card", "first", 1000, EUR, customerId, null),
+                new Payment(0, "card", "other", 2000, EUR, UUID.randomUUID(), null),
+                new Payment(0, "card", "second", 3000, USD, customerId, null)
+        ));
+
+        //When
+        List<String> descriptions;
+        try (Stream<Payment> payments = underTest.streamAll(customerId, null, null, null)) {
+            descriptions = payments.map(Payment::getPaymentDescription).toList();
+        }
+
+        //Then
+        assertThat(descriptions).containsExactly("first", "second");
+    }
+
+    @Test
+    void itShouldSelectPaymentsCreatedInTimeRange() {
+        //Given
+        UUID customerId = UUID.randomUUID();
+        underTest.saveAll(List.of(
+                payment(customerId, "december", Instant.parse("2023-12-31T23:59:59Z")),
+                payment(customerId, "january", Instant.parse("2024-01-01T00:00:00Z")),
+                payment(customerId, "february", Instant.parse("2024-02-01T00:00:00Z"))
+        ));
+        Instant from = Instant.parse("2024-01-01T00:00:00Z");
+        Instant to = Instant.parse("2024-02-01T00:00:00Z");
+
+        //When
+        List<Payment> page = underTest.findPage(0, customerId, null, from, to, Limit.of(10));
+        List<String> streamed;
+        try (Stream<Payment> payments = underTest.streamAll(customerId, null, from, null)) {
+            streamed = payments.map(Payment::getPaymentDescription).toList();
+        }
+
+        //Then
+        // ... from inclusive, to exclusive
+        assertThat(page).extracting(Payment::getPaymentDescription).containsExactly("january");
+        assertThat(streamed).containsExactly("january", "february");
+    }
+
+    @Test
+    void itShouldSetCreationTimeOnInsert() {
+        //Given
+        Instant before = Instant.now();
+
+        //When
+        Payment saved = underTest.save(new Payment(0, "card", "now", 1000, EUR, UUID.randomUUID(), null));
+
+        //Then
+        assertThat(saved.getCreatedAt()).isAfterOrEqualTo(before);
+        assertThat(underTest.findOldestCreatedAt()).isNotNull();
+    }
+
+    private static Payment payment(UUID customerId, String description, Instant createdAt) {
+        return Payment.builder()
+                .paymentMethod("card")
+                .paymentDescription(description)
+                .amount(1000)
+                .currency(EUR)
+                .customerId(customerId)
+                .createdAt(createdAt)
+                .build();
+    }
+}
@@ -1,27 +1,34 @@
 package testing.payment;
 
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import testing.customer.Customer;
-import testing.customer.CustomerRepository;
+import testing.customer.CustomerExistenceCache;
+import testing.replica.ReadYourWrites;
 
 import java.math.BigDecimal;
-import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
-import static org.mockito.Mockito.mock;
+import static org.mockito.BDDMockito.willReturn;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static testing.payment.Currency.*;
 
 
@@ -32,14 +39,33 @@ class PaymentServiceTest {
     private ArgumentCaptor<Payment> paymentArgumentCaptor;
 
     @Mock
-    private CustomerRepository customerRepository;
+    private CustomerExistenceCache customerExistenceCache;
 
     @Mock
     private PaymentRepository paymentRepository;
 
-    @Mock
+    //keeps the default name() used to tag metrics
+    @Mock(answer = Answers.CALLS_REAL_METHODS)
     private CardPaymentCharger cardPaymentCharger;
 
+    @Mock
+    private PaymentWriteBehind paymentWriteBehind;
+
+    @Mock
+    private PaymentRecorder paymentRecorder;
+
+    @Mock
+    private FirstChargeTimer firstChargeTimer;
+
+    @Mock
+    private ReadYourWrites readYourWrites;
+
+    @Mock
+    private PaymentSummaryRepository paymentSummaryRepository;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @InjectMocks
     private PaymentService underTest;
 
@@ -53,8 +79,7 @@ class PaymentServiceTest {
         Currency currency = EUR;
 
         // ... customer exists
-        given(customerRepository.findById(customerId))
-                .willReturn(Optional.ofNullable(mock(Customer.class)));
+        given(customerExistenceCache.exists(customerId)).willReturn(true);
 
         // .. payment request
         PaymentRequest request = new PaymentRequest(
@@ -65,28 +90,118 @@ class PaymentServiceTest {
         );
 
         // .. card charged succesfully
-        given(cardPaymentCharger.chargeCard(
-                request.getPaymentMethod(),
-                request.getAmount(),
-                request.getCurrency(),
-                request.getPaymentDescription()
-        )).willReturn(new CardPaymentCharge(true));
+        given(cardPaymentCharger.chargeCardAsync(
+                eq(request.getPaymentMethod()),
+                eq(new Money(1000, currency)),
+                eq(request.getPaymentDescription()),
+                anyString()
+        )).willReturn(CompletableFuture.completedFuture(new CardPaymentCharge(true)));
 
         //When
         underTest.chargePayment(customerId, request);
 
         //Then
-        then(paymentRepository).should().save(paymentArgumentCaptor.capture());
+        then(paymentRecorder).should().record(paymentArgumentCaptor.capture());
 
         Payment paymentArgumentCaptorValue = paymentArgumentCaptor.getValue();
 
         assertThat(paymentArgumentCaptorValue).isNotNull();
         assertThat(paymentArgumentCaptorValue.getPaymentDescription()).isEqualTo(paymentDescription);
         assertThat(paymentArgumentCaptorValue.getPaymentMethod()).isEqualTo(paymentMethod);
-        assertThat(paymentArgumentCaptorValue.getAmount()).isEqualTo(amount);
+        // .. 10 EUR in cents
+        assertThat(paymentArgumentCaptorValue.getAmount()).isEqualTo(1000);
         assertThat(paymentArgumentCaptorValue.getCurrency()).isEqualTo(currency);
         assertThat(paymentArgumentCaptorValue.getCustomerId()).isEqualTo(customerId);
 
+        // .. every stage is timed
+        assertThat(meterRegistry.get("payment.charge.stage").tag("currency", "EUR").timers())
+                .extracting(timer -> timer.getId().getTag("stage"))
+                .containsExactlyInAnyOrder("customer_lookup", "card_charge", "persist");
+    }
+
+    @Test
+    void itShouldTagTheCardStageWithTheProviderThatCharged() {
+        //Given
+        UUID customerId = UUID.randomUUID();
+        PaymentRequest request = new PaymentRequest("card", "description", new BigDecimal(10), EUR);
+        given(customerExistenceCache.exists(customerId)).willReturn(true);
+        // .. routed to one of several providers
+        given(cardPaymentCharger.chargeCardAsync(any(), any(), any(), any()))
+                .willReturn(CompletableFuture.completedFuture(new CardPaymentCharge(true, "adyen")));
+
+        //When
+        underTest.chargePayment(customerId, request);
+
+        //Then
+        assertThat(meterRegistry.get("payment.charge.stage").tag("stage", "card_charge").timer().getId()
+                .getTag("charger")).isEqualTo("adyen");
+    }
+
+    @Test
+    void itShouldJournalPaymentWhenWriteBehindIsEnabled() {
+        //Given
+        UUID customerId = UUID.randomUUID();
+        PaymentRequest request = new PaymentRequest("card", "description", new BigDecimal(10), EUR);
+        given(customerExistenceCache.exists(customerId)).willReturn(true);
+        given(cardPaymentCharger.chargeCardAsync(any(), any(), any(), any()))
+                .willReturn(CompletableFuture.completedFuture(new CardPaymentCharge(true)));
+        given(paymentWriteBehind.isEnabled()).willReturn(true);
+        given(paymentWriteBehind.append(any())).willReturn(true);
+
+        //When
+        underTest.chargePayment(customerId, request);
+
+        //Then
+        then(paymentWriteBehind).should().append(paymentArgumentCaptor.capture());
+        assertThat(paymentArgumentCaptor.getValue().getCustomerId()).isEqualTo(customerId);
+        // ... stamped when charged, not when the background insert runs
+        assertThat(paymentArgumentCaptor.getValue().getCreatedAt()).isNotNull();
+        then(paymentRecorder).should(never()).record(any());
+    }
+
+    @Test
+    void itShouldSavePaymentWhenJournalIsFull() {
+        //Given
+        UUID customerId = UUID.randomUUID();
+        PaymentRequest request = new PaymentRequest("card", "description", new BigDecimal(10), EUR);
+        given(customerExistenceCache.exists(customerId)).willReturn(true);
+        given(cardPaymentCharger.chargeCardAsync(any(), any(), any(), any()))
+                .willReturn(CompletableFuture.completedFuture(new CardPaymentCharge(true)));
+        given(paymentWriteBehind.isEnabled()).willReturn(true);
+        given(paymentWriteBehind.append(any())).willReturn(false);
+
+        //When
+        underTest.chargePayment(customerId, request);
+
+        //Then
+        then(paymentRecorder).should().record(any());
+    }
+
+    @Test
+    void itShouldChargeRetriesOfClientKeyWithSameProviderKey() {
+        //Given
+        UUID customerId = UUID.randomUUID();
+        PaymentRequest request = new PaymentRequest("card", "description", new BigDecimal(10), EUR);
+        given(customerExistenceCache.exists(customerId)).willReturn(true);
+        //stubbed without calling the real default method, which would count as a charge
+        willReturn(CompletableFuture.completedFuture(new CardPaymentCharge(true)))
+                .given(cardPaymentCharger).chargeCardAsync(any(), any(), any(), any());
+        ArgumentCaptor<String> providerKeys = ArgumentCaptor.forClass(String.class);
+
+        //When
+        underTest.chargePayment(customerId, request, "client-key");
+        underTest.chargePayment(customerId, request, "client-key");
+        underTest.chargePayment(customerId, request);
+
+        //Then
+        then(cardPaymentCharger).should(times(3))
+                .chargeCardAsync(any(), any(), any(), providerKeys.capture());
+        assertThat(providerKeys.getAllValues()).hasSize(3).doesNotContainNull();
+        assertThat(providerKeys.getAllValues().get(0))
+                .isEqualTo(providerKeys.getAllValues().get(1))
+                .isEqualTo(IdempotencyService.providerKey(customerId, "client-key"))
+                .isNotEqualTo(IdempotencyService.providerKey(UUID.randomUUID(), "client-key"));
+        assertThat(providerKeys.getAllValues().get(2)).isNotEqualTo(providerKeys.getAllValues().get(0));
     }
 
     @Test
@@ -98,8 +213,7 @@ class PaymentServiceTest {
 
         UUID customerId = UUID.randomUUID();
 
-        given(customerRepository.findById(customerId))
-                .willReturn(Optional.empty());
+        given(customerExistenceCache.exists(customerId)).willReturn(false);
 
         PaymentRequest request = PaymentRequest.builder()
                 .paymentMethod(paymentMethod)
@@ -114,8 +228,12 @@ class PaymentServiceTest {
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessageContaining(String.format("Customer [%s] does not exist", customerId));
 
-        then(paymentRepository).should(never()).save(any());
+        then(paymentRecorder).should(never()).record(any());
         then(paymentRepository).shouldHaveNoMoreInteractions();
+
+        assertThat(meterRegistry.get("payment.charge.rejected")
+                .tag("reason", "customer_not_found")
+                .counter().count()).isEqualTo(1);
     }
 
     @Test
@@ -127,8 +245,10 @@ class PaymentServiceTest {
         BigDecimal amount = new BigDecimal(10);
 
         // customer exists
-        given(customerRepository.findById(customerId)).
-                willReturn(Optional.of(mock(Customer.class)));
+        given(customerExistenceCache.exists(customerId)).willReturn(true);
+
+        // no card provider takes pounds
+        given(cardPaymentCharger.supports(GBP)).willReturn(false);
 
         // payment request
         PaymentRequest request = PaymentRequest.builder()
@@ -145,8 +265,8 @@ class PaymentServiceTest {
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessageContaining(String.format("Currency [%s] not supported", request.getCurrency()));
 
-        then(cardPaymentCharger).shouldHaveNoMoreInteractions();
-        then(paymentRepository).should(never()).save(any(Payment.class));
+        then(cardPaymentCharger).should(never()).chargeCardAsync(any(), any(), any(), any());
+        then(paymentRecorder).should(never()).record(any(Payment.class));
     }
 
     @Test
@@ -159,8 +279,7 @@ class PaymentServiceTest {
         Currency currency = EUR;
 
         // customet exists
-        given(customerRepository.findById(customerId))
-                .willReturn(Optional.of(mock(Customer.class)));
+        given(customerExistenceCache.exists(customerId)).willReturn(true);
 
         // payment request
         PaymentRequest request = PaymentRequest.builder()
@@ -171,12 +290,12 @@ class PaymentServiceTest {
                 .build();
 
         // card charge fail
-        given(cardPaymentCharger.chargeCard(
-                paymentMethod,
-                amount,
-                currency,
-                paymentDescription
-        )).willReturn(new CardPaymentCharge(false));
+        given(cardPaymentCharger.chargeCardAsync(
+                eq(paymentMethod),
+                eq(new Money(1000, currency)),
+                eq(paymentDescription),
+                anyString()
+        )).willReturn(CompletableFuture.completedFuture(new CardPaymentCharge(false)));
 
 
         //When
@@ -185,6 +304,20 @@ class PaymentServiceTest {
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessageContaining(String.format("Card not debited for customer [%s]", customerId));
 
-        then(paymentRepository).should(never()).save(any(Payment.class));
+        then(paymentRecorder).should(never()).record(any(Payment.class));
+    }
+
+    @Test
+    void itShouldThrowExceptionWhenPageSizeIsOutOfRange() {
+        //Given
+        PaymentFilter filter = PaymentFilter.builder().build();
+
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.getPayments(filter, 0, PaymentService.MAX_PAGE_SIZE + 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Page size must be between 1 and");
+
+        then(paymentRepository).shouldHaveNoInteractions();
     }
-}
\ No newline at end of file
+}
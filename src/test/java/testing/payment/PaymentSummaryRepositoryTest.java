@@ -0,0 +1,76 @@
+package testing.payment;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static testing.payment.Currency.EUR;
+import static testing.payment.Currency.USD;
+
+@DataJpaTest
+class PaymentSummaryRepositoryTest {
+
+    @Autowired
+    private PaymentSummaryRepository underTest;
+
+    @Test
+    void itShouldCreateSummaryPerCustomerAndCurrency() {
+        //Given
+        UUID customerId = UUID.randomUUID();
+        UUID otherCustomerId = UUID.randomUUID();
+
+        //When
+        underTest.addToSummaries(List.of(
+                payment(customerId, 1000, EUR),
+                payment(customerId, 250, EUR),
+                payment(customerId, 700, USD),
+                payment(otherCustomerId, 5000, EUR)
+        ));
+
+        //Then
+        assertThat(underTest.findByCustomerIdOrderByCurrency(customerId)).containsExactly(
+                new PaymentSummary(customerId, EUR, 2, 1250, 250, 1000),
+                new PaymentSummary(customerId, USD, 1, 700, 700, 700)
+        );
+        assertThat(underTest.findByCustomerIdOrderByCurrency(otherCustomerId)).containsExactly(
+                new PaymentSummary(otherCustomerId, EUR, 1, 5000, 5000, 5000)
+        );
+    }
+
+    @Test
+    void itShouldAddToExistingSummary() {
+        //Given
+        UUID customerId = UUID.randomUUID();
+        underTest.addToSummaries(List.of(payment(customerId, 1000, EUR)));
+
+        //When
+        underTest.addToSummaries(List.of(payment(customerId, 100, EUR)));
+        underTest.addToSummaries(List.of(payment(customerId, 9000, EUR)));
+
+        //Then
+        assertThat(underTest.findByCustomerIdOrderByCurrency(customerId)).containsExactly(
+                new PaymentSummary(customerId, EUR, 3, 10100, 100, 9000)
+        );
+    }
+
+    @Test
+    void itShouldNotFindSummaryWithoutPayments() {
+        //When
+        //Then
+        assertThat(underTest.findByCustomerIdOrderByCurrency(UUID.randomUUID())).isEmpty();
+    }
+
+    private static Payment payment(UUID customerId, long amount, Currency currency) {
+        return Payment.builder()
+                .paymentMethod("card")
+                .paymentDescription("description")
+                .amount(amount)
+                .currency(currency)
+                .customerId(customerId)
+                .build();
+    }
+}
@@ -0,0 +1,174 @@
+package testing.payment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+import testing.payment.event.PaymentEvent;
+import testing.payment.event.PaymentEventRepository;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static testing.payment.Currency.EUR;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED) //the writer commits its own transactions
+class PaymentWriteBehindTest {
+
+    @TempDir
+    private Path directory;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private PaymentSummaryRepository paymentSummaryRepository;
+
+    @Autowired
+    private PaymentJournalCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private PaymentEventRepository paymentEventRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final UUID customerId = UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        paymentRepository.deleteAll(payments());
+        checkpointRepository.deleteAll();
+        paymentSummaryRepository.deleteAll();
+        paymentEventRepository.deleteAll();
+    }
+
+    @Test
+    void itShouldInsertJournaledPaymentsOnFlush() throws Exception {
+        //Given
+        PaymentWriteBehind underTest = writeBehind();
+        underTest.start();
+
+        //When
+        assertThat(underTest.append(payment("first"))).isTrue();
+        assertThat(underTest.append(payment("second"))).isTrue();
+        underTest.flush();
+
+        //Then
+        assertThat(payments()).extracting(Payment::getPaymentDescription).containsExactly("first", "second");
+        assertThat(checkpointRepository.findById("journal.dat"))
+                .hasValueSatisfying(checkpoint -> assertThat(checkpoint.getFlushedSequence()).isEqualTo(2));
+        assertThat(paymentSummaryRepository.findByCustomerIdOrderByCurrency(customerId))
+                .singleElement()
+                .satisfies(summary -> assertThat(summary.getPaymentCount()).isEqualTo(2));
+        // ... with their outbox events
+        assertThat(paymentEventRepository.findAll())
+                .extracting(PaymentEvent::getPaymentId, PaymentEvent::getCreatedAt)
+                .containsExactlyInAnyOrderElementsOf(payments().stream()
+                        .map(payment -> tuple(payment.getPaymentId(), payment.getCreatedAt()))
+                        .toList());
+        underTest.stop();
+
+        // ... nothing left to replay
+        try (PaymentJournal journal = new PaymentJournal(directory.resolve("journal.dat"), 4096)) {
+            assertThat(journal.isEmpty()).isTrue();
+        }
+    }
+
+    @Test
+    void itShouldReclaimJournalSpaceWhilePaymentsKeepComing() throws Exception {
+        //Given
+        // ... a payment is charged while each batch is inserted, so the queue is never empty after a flush
+        AtomicReference<PaymentWriteBehind> writeBehind = new AtomicReference<>();
+        PaymentRecorder paymentRecorder =
+                new PaymentRecorder(paymentRepository, paymentSummaryRepository, paymentEventRepository) {
+                    @Override
+                    public List<Payment> recordAll(List<Payment> payments) {
+                        writeBehind.get().append(payment("during flush"));
+                        return super.recordAll(payments);
+                    }
+                };
+        PaymentWriteBehind underTest = writeBehind(paymentRecorder);
+        writeBehind.set(underTest);
+        underTest.start();
+
+        //When
+        // ... more payments than the 4 KB journal holds at once
+        for (int i = 0; i < 30; i++) {
+            assertThat(underTest.append(payment("steady"))).isTrue();
+            underTest.flush();
+        }
+        underTest.stop();
+
+        //Then
+        assertThat(payments()).hasSize(60);
+        long flushedSequence = checkpointRepository.findById("journal.dat").orElseThrow().getFlushedSequence();
+        try (PaymentJournal journal = new PaymentJournal(directory.resolve("journal.dat"), 4096)) {
+            assertThat(journal.size()).isLessThanOrEqualTo(journal.capacity() / 2);
+            // ... still holding the payment charged during the last flush
+            assertThat(journal.readAll()).last()
+                    .satisfies(entry -> assertThat(entry.sequence()).isGreaterThan(flushedSequence));
+        }
+    }
+
+    @Test
+    void itShouldReplayPaymentsNotInsertedBeforeCrash() throws Exception {
+        //Given
+        // ... the first payment was inserted, the process died before the second
+        Payment journaled = payment("journaled");
+        journaled.setCreatedAt(Instant.parse("2024-01-31T23:59:59.123456Z"));
+        try (PaymentJournal journal = new PaymentJournal(directory.resolve("journal.dat"), 4096)) {
+            journal.append(payment("inserted"));
+            journal.append(journaled);
+        }
+        checkpointRepository.save(new PaymentJournalCheckpoint("journal.dat", 1));
+
+        //When
+        PaymentWriteBehind underTest = writeBehind();
+        underTest.start();
+
+        //Then
+        // ... in the month it was charged, not the one it was replayed in
+        assertThat(payments()).extracting(Payment::getPaymentDescription, Payment::getCreatedAt)
+                .containsExactly(tuple("journaled", journaled.getCreatedAt()));
+        assertThat(underTest.append(payment("next"))).isTrue();
+        underTest.stop();
+        assertThat(payments()).extracting(Payment::getPaymentDescription).containsExactly("journaled", "next");
+    }
+
+    private PaymentWriteBehind writeBehind() {
+        return writeBehind(new PaymentRecorder(paymentRepository, paymentSummaryRepository, paymentEventRepository));
+    }
+
+    private PaymentWriteBehind writeBehind(PaymentRecorder paymentRecorder) {
+        return new PaymentWriteBehind(paymentRecorder, checkpointRepository, transactionManager, true,
+                directory.resolve("journal.dat"), DataSize.ofKilobytes(4), 500, Duration.ofHours(1));
+    }
+
+    private List<Payment> payments() {
+        return paymentRepository.findPage(0, customerId, null, null, null, Limit.of(100));
+    }
+
+    private Payment payment(String description) {
+        return Payment.builder()
+                .paymentMethod("card")
+                .paymentDescription(description)
+                .amount(1000)
+                .currency(EUR)
+                .customerId(customerId)
+                .build();
+    }
+}
@@ -0,0 +1,205 @@
+package testing.payment;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.times;
+import static testing.payment.Currency.EUR;
+
+@ExtendWith(MockitoExtension.class)
+class ResilientCardPaymentChargerTest {
+
+    private static final Money AMOUNT = new Money(1000, EUR);
+
+    @Mock
+    private CardPaymentCharger delegate;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        given(delegate.name()).willReturn("FakeCharger");
+    }
+
+    @Test
+    void itShouldRejectChargesBeyondTheBulkhead() {
+        //Given
+        ResilientCardPaymentCharger underTest = charger(ResilientCardPaymentCharger.Settings.builder()
+                .maxConcurrentCharges(2));
+        given(delegate.chargeCardAsync(any(), any(), any(), any()))
+                .willAnswer(invocation -> new CompletableFuture<CardPaymentCharge>());
+        underTest.chargeCardAsync("card", AMOUNT, "first");
+        underTest.chargeCardAsync("card", AMOUNT, "second");
+
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.chargeCardAsync("card", AMOUNT, "third"))
+                .isInstanceOf(CardChargeRejectedException.class)
+                .hasMessageContaining("Too many charges in flight for [FakeCharger]");
+        then(delegate).should(times(2)).chargeCardAsync(any(), any(), any(), any());
+        assertThat(rejected("bulkhead_full")).isEqualTo(1);
+        assertThat(gauge("payment.charger.bulkhead.available")).isZero();
+    }
+
+    @Test
+    void itShouldFreeTheBulkheadWhenAChargeCompletes() {
+        //Given
+        ResilientCardPaymentCharger underTest = charger(ResilientCardPaymentCharger.Settings.builder()
+                .maxConcurrentCharges(1));
+        CompletableFuture<CardPaymentCharge> charge = new CompletableFuture<>();
+        given(delegate.chargeCardAsync(any(), any(), any(), any()))
+                .willReturn(charge)
+                .willReturn(CompletableFuture.completedFuture(new CardPaymentCharge(true)));
+        CompletableFuture<CardPaymentCharge> first = underTest.chargeCardAsync("card", AMOUNT, "first");
+
+        //When
+        charge.complete(new CardPaymentCharge(true));
+        CardPaymentCharge second = underTest.chargeCard("card", AMOUNT, "second");
+
+        //Then
+        assertThat(first.join().isCardDebited()).isTrue();
+        assertThat(second.isCardDebited()).isTrue();
+        assertThat(gauge("payment.charger.bulkhead.available")).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldFailFastOnceTheCircuitOpens() {
+        //Given
+        ResilientCardPaymentCharger underTest = charger(ResilientCardPaymentCharger.Settings.builder()
+                .windowSize(2));
+        given(delegate.chargeCardAsync(any(), any(), any(), any()))
+                .willReturn(CompletableFuture.failedFuture(new IllegalStateException("Stripe is down")));
+        for (int i = 0; i < 2; i++)
+            assertThatThrownBy(() -> underTest.chargeCard("card", AMOUNT, "failing"))
+                    .hasMessage("Stripe is down");
+
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.chargeCard("card", AMOUNT, "rejected"))
+                .isInstanceOf(CardChargeRejectedException.class)
+                .hasMessageContaining("Circuit for [FakeCharger] is open");
+        then(delegate).should(times(2)).chargeCardAsync(any(), any(), any(), any());
+        assertThat(underTest.circuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(gauge("payment.charger.circuit.state")).isEqualTo(1);
+        assertThat(rejected("circuit_open")).isEqualTo(1);
+        //a refused charge gives its bulkhead permit back
+        assertThat(gauge("payment.charger.bulkhead.available")).isEqualTo(50);
+    }
+
+    @Test
+    void itShouldNotOpenTheCircuitForInvalidCharges() {
+        //Given
+        ResilientCardPaymentCharger underTest = charger(ResilientCardPaymentCharger.Settings.builder()
+                .windowSize(2));
+        given(delegate.chargeCardAsync(any(), any(), any(), any()))
+                .willReturn(CompletableFuture.failedFuture(new InvalidCardChargeException("Invalid card")));
+
+        //When
+        for (int i = 0; i < 5; i++)
+            assertThatThrownBy(() -> underTest.chargeCard("card", AMOUNT, "invalid"))
+                    .isInstanceOf(InvalidCardChargeException.class);
+
+        //Then
+        assertThat(underTest.circuitState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        then(delegate).should(times(5)).chargeCardAsync(any(), any(), any(), any());
+    }
+
+    @Test
+    void itShouldTimeOutAndCancelSlowCharges() {
+        //Given
+        ResilientCardPaymentCharger underTest = charger(ResilientCardPaymentCharger.Settings.builder()
+                .minTimeout(Duration.ofMillis(10))
+                .maxTimeout(Duration.ofMillis(50)));
+        CompletableFuture<CardPaymentCharge> charge = new CompletableFuture<>();
+        given(delegate.chargeCardAsync(any(), any(), any(), any())).willReturn(charge);
+
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.chargeCard("card", AMOUNT, "slow"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Card charge timed out after [50] ms");
+        assertThat(charge).isCompletedExceptionally();
+        assertThat(meterRegistry.get("payment.charger.timeouts").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldCancelTheChargeWhenTheCallerGivesUp() {
+        //Given
+        ResilientCardPaymentCharger underTest = charger(ResilientCardPaymentCharger.Settings.builder());
+        CompletableFuture<CardPaymentCharge> charge = new CompletableFuture<>();
+        given(delegate.chargeCardAsync(any(), any(), any(), any())).willReturn(charge);
+
+        //When
+        underTest.chargeCardAsync("card", AMOUNT, "abandoned").cancel(true);
+
+        //Then
+        assertThat(charge).isCancelled();
+        assertThat(gauge("payment.charger.bulkhead.available")).isEqualTo(50);
+    }
+
+    @Test
+    void itShouldReleaseThePermitWhenTheChargerThrows() {
+        //Given
+        ResilientCardPaymentCharger underTest = charger(ResilientCardPaymentCharger.Settings.builder()
+                .maxConcurrentCharges(1));
+        given(delegate.chargeCardAsync(any(), any(), any(), any()))
+                .willThrow(new IllegalArgumentException("Invalid card"));
+
+        //When
+        //Then
+        for (int i = 0; i < 2; i++)
+            assertThatThrownBy(() -> underTest.chargeCardAsync("card", AMOUNT, "invalid"))
+                    .isInstanceOf(IllegalArgumentException.class);
+        assertThat(gauge("payment.charger.bulkhead.available")).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldPassTheIdempotencyKeyOn() {
+        //Given
+        ResilientCardPaymentCharger underTest = charger(ResilientCardPaymentCharger.Settings.builder());
+        given(delegate.chargeCardAsync(any(), any(), any(), any()))
+                .willReturn(CompletableFuture.completedFuture(new CardPaymentCharge(true)));
+
+        //When
+        underTest.chargeCardAsync("card", AMOUNT, "retried", "payment-key").join();
+
+        //Then
+        //a retry after a timeout reaches the provider with the key of the first attempt
+        then(delegate).should().chargeCardAsync("card", AMOUNT, "retried", "payment-key");
+    }
+
+    @Test
+    void itShouldReportTheDelegateName() {
+        //Given
+        ResilientCardPaymentCharger underTest = charger(ResilientCardPaymentCharger.Settings.builder());
+
+        //When
+        //Then
+        assertThat(underTest.name()).isEqualTo("FakeCharger");
+    }
+
+    private ResilientCardPaymentCharger charger(ResilientCardPaymentCharger.Settings.SettingsBuilder settings) {
+        return new ResilientCardPaymentCharger(delegate, settings.build(), meterRegistry);
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).tag("charger", "FakeCharger").gauge().value();
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.get("payment.charger.rejected").tag("reason", reason).counter().count();
+    }
+}
@@ -0,0 +1,265 @@
+package testing.payment;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static testing.payment.Currency.EUR;
+import static testing.payment.Currency.GBP;
+import static testing.payment.Currency.USD;
+
+class RoutingCardPaymentChargerTest {
+
+    private static final Money EUROS = new Money(1000, EUR);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong now = new AtomicLong();
+    private double random = 1;
+
+    @Test
+    void itShouldRouteByCurrency() {
+        //Given
+        FakeProvider euros = new FakeProvider("euros", Set.of(EUR, USD));
+        FakeProvider pounds = new FakeProvider("pounds", Set.of(GBP));
+        RoutingCardPaymentCharger underTest = router(euros, pounds);
+
+        //When
+        underTest.chargeCard("card", new Money(1000, GBP), "tea");
+
+        //Then
+        assertThat(underTest.supports(GBP)).isTrue();
+        assertThat(pounds.charges).isEqualTo(1);
+        assertThat(euros.charges).isZero();
+    }
+
+    @Test
+    void itShouldRejectCurrenciesNoProviderSupports() {
+        //Given
+        RoutingCardPaymentCharger underTest = router(new FakeProvider("euros", Set.of(EUR)));
+
+        //When
+        //Then
+        assertThat(underTest.supports(GBP)).isFalse();
+        assertThatThrownBy(() -> underTest.chargeCardAsync("card", new Money(1000, GBP), "tea"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Currency [GBP] not supported");
+    }
+
+    @Test
+    void itShouldPreferTheFasterProvider() {
+        //Given
+        FakeProvider slow = new FakeProvider("slow", Set.of(EUR)).taking(Duration.ofMillis(800));
+        FakeProvider fast = new FakeProvider("fast", Set.of(EUR)).taking(Duration.ofMillis(100));
+        RoutingCardPaymentCharger underTest = router(slow, fast);
+        //one sample each
+        underTest.chargeCard("card", EUROS, "first");
+        underTest.chargeCard("card", EUROS, "second");
+
+        //When
+        for (int i = 0; i < 10; i++)
+            underTest.chargeCardAsync("card", EUROS, "charge " + i).join();
+
+        //Then
+        assertThat(slow.charges).isEqualTo(1);
+        assertThat(fast.charges).isEqualTo(11);
+        assertThat(meterRegistry.get("payment.charger.route.latency").tag("charger", "fast").gauge().value())
+                .isEqualTo(0.1);
+    }
+
+    @Test
+    void itShouldNotCountInvalidChargesAsProviderErrors() {
+        //Given
+        FakeProvider provider = new FakeProvider("stripe", Set.of(EUR))
+                .answering(() -> CompletableFuture.failedFuture(new InvalidCardChargeException("Invalid card")));
+        RoutingCardPaymentCharger underTest = router(provider);
+
+        //When
+        for (int i = 0; i < 5; i++)
+            assertThatThrownBy(() -> underTest.chargeCardAsync("card", EUROS, "invalid").join())
+                    .hasCauseInstanceOf(InvalidCardChargeException.class);
+
+        //Then
+        assertThat(meterRegistry.get("payment.charger.route.error_rate").tag("charger", "stripe").gauge().value())
+                .isZero();
+        assertThat(meterRegistry.get("payment.charger.route").tag("outcome", "invalid_charge").counter().count())
+                .isEqualTo(5);
+    }
+
+    @Test
+    void itShouldAvoidAProviderThatKeepsFailing() {
+        //Given
+        FakeProvider failing = new FakeProvider("failing", Set.of(EUR))
+                .answering(() -> CompletableFuture.failedFuture(new IllegalStateException("Provider error")));
+        FakeProvider healthy = new FakeProvider("healthy", Set.of(EUR)).taking(Duration.ofMillis(100));
+        RoutingCardPaymentCharger underTest = router(failing, healthy);
+        assertThatThrownBy(() -> underTest.chargeCardAsync("card", EUROS, "failed").join())
+                .hasCauseInstanceOf(IllegalStateException.class);
+
+        //When
+        underTest.chargeCardAsync("card", EUROS, "healthy").join();
+        underTest.chargeCardAsync("card", EUROS, "healthy again").join();
+
+        //Then
+        assertThat(failing.charges).isEqualTo(1);
+        assertThat(healthy.charges).isEqualTo(2);
+        assertThat(meterRegistry.get("payment.charger.route").tag("charger", "failing").tag("outcome", "failure")
+                .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldFailOverWhenTheProviderRefusesTheCharge() {
+        //Given
+        FakeProvider refusing = new FakeProvider("refusing", Set.of(EUR))
+                .answering(() -> {
+                    throw new CardChargeRejectedException("Circuit for [refusing] is open");
+                });
+        FakeProvider other = new FakeProvider("other", Set.of(EUR));
+        RoutingCardPaymentCharger underTest = router(refusing, other);
+
+        //When
+        CardPaymentCharge charge = underTest.chargeCardAsync("card", EUROS, "failover").join();
+
+        //Then
+        assertThat(charge.isCardDebited()).isTrue();
+        assertThat(charge.getCharger()).isEqualTo("other");
+        assertThat(other.charges).isEqualTo(1);
+        assertThat(meterRegistry.get("payment.charger.route").tag("charger", "refusing")
+                .tag("outcome", "not_attempted").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldFailOverWhenTheProviderCannotBeReached() {
+        //Given
+        FakeProvider unreachable = new FakeProvider("unreachable", Set.of(EUR))
+                .answering(() -> CompletableFuture.failedFuture(new ConnectException("Connection refused")));
+        FakeProvider other = new FakeProvider("other", Set.of(EUR));
+        RoutingCardPaymentCharger underTest = router(unreachable, other);
+
+        //When
+        CardPaymentCharge charge = underTest.chargeCard("card", EUROS, "sync failover");
+
+        //Then
+        assertThat(charge.isCardDebited()).isTrue();
+        assertThat(charge.getCharger()).isEqualTo("other");
+        assertThat(other.charges).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldNotFailOverAChargeTheProviderMayHaveMade() {
+        //Given
+        FakeProvider timingOut = new FakeProvider("timingOut", Set.of(EUR))
+                .answering(() -> CompletableFuture.failedFuture(
+                        new IllegalStateException("Card charge timed out after [500] ms")));
+        FakeProvider other = new FakeProvider("other", Set.of(EUR));
+        RoutingCardPaymentCharger underTest = router(timingOut, other);
+
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.chargeCardAsync("card", EUROS, "maybe charged").join())
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("timed out");
+        assertThat(other.charges).isZero();
+    }
+
+    @Test
+    void itShouldSometimesTryAnotherProvider() {
+        //Given
+        FakeProvider best = new FakeProvider("best", Set.of(EUR));
+        FakeProvider other = new FakeProvider("other", Set.of(EUR));
+        RoutingCardPaymentCharger underTest = router(best, other);
+
+        //When
+        random = 0;
+        underTest.chargeCard("card", EUROS, "explore");
+
+        //Then
+        assertThat(other.charges).isEqualTo(1);
+        assertThat(best.charges).isZero();
+    }
+
+    @Test
+    void itShouldCancelTheProviderChargeWhenTheCallerGivesUp() {
+        //Given
+        CompletableFuture<CardPaymentCharge> pending = new CompletableFuture<>();
+        FakeProvider provider = new FakeProvider("pending", Set.of(EUR)).answering(() -> pending);
+        RoutingCardPaymentCharger underTest = router(provider);
+
+        //When
+        underTest.chargeCardAsync("card", EUROS, "abandoned").cancel(true);
+
+        //Then
+        assertThat(pending).isCancelled();
+    }
+
+    @Test
+    void itShouldBeNamedAfterItsProviders() {
+        //Given
+        RoutingCardPaymentCharger underTest = router(
+                new FakeProvider("first", Set.of(EUR)), new FakeProvider("second", Set.of(EUR)));
+
+        //When
+        //Then
+        assertThat(underTest.name()).isEqualTo("first+second");
+    }
+
+    private RoutingCardPaymentCharger router(CardPaymentCharger... providers) {
+        return new RoutingCardPaymentCharger(List.of(providers), 0.05, meterRegistry, now::get, () -> random);
+    }
+
+    private class FakeProvider implements CardPaymentCharger {
+
+        private final String name;
+        private final Set<Currency> currencies;
+        private Duration latency = Duration.ZERO;
+        private Supplier<CompletableFuture<CardPaymentCharge>> answer =
+                () -> CompletableFuture.completedFuture(new CardPaymentCharge(true));
+        private int charges;
+
+        FakeProvider(String name, Set<Currency> currencies) {
+            this.name = name;
+            this.currencies = currencies;
+        }
+
+        FakeProvider taking(Duration latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        FakeProvider answering(Supplier<CompletableFuture<CardPaymentCharge>> answer) {
+            this.answer = answer;
+            return this;
+        }
+
+        @Override
+        public CardPaymentCharge chargeCard(String method, Money amount, String description) {
+            return chargeCardAsync(method, amount, description).join();
+        }
+
+        @Override
+        public CompletableFuture<CardPaymentCharge> chargeCardAsync(String method, Money amount, String description) {
+            charges++;
+            now.addAndGet(latency.toNanos());
+            return answer.get();
+        }
+
+        @Override
+        public boolean supports(Currency currency) {
+            return currencies.contains(currency);
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+    }
+}
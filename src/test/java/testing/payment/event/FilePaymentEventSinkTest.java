@@ -0,0 +1,132 @@
+package testing.payment.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static testing.payment.event.PaymentEventLogTest.event;
+
+class FilePaymentEventSinkTest {
+
+    @TempDir
+    private Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    void itShouldReadBackThePublishedEvents() {
+        //Given
+        FilePaymentEventSink underTest = new FilePaymentEventSink(objectMapper, directory, 4);
+        UUID customerId = UUID.randomUUID();
+        PaymentEventMessage first = event(1, customerId);
+        PaymentEventMessage second = event(2, customerId);
+
+        //When
+        underTest.publish(List.of(first, second));
+
+        //Then
+        List<PaymentEventRecord> records = underTest.read(underTest.partitionOf(customerId), 0, 10);
+        assertThat(records).containsExactly(new PaymentEventRecord(0, first), new PaymentEventRecord(1, second));
+        assertThat(underTest.read(underTest.partitionOf(customerId), 1, 10))
+                .containsExactly(new PaymentEventRecord(1, second));
+    }
+
+    @Test
+    void itShouldKeepTheEventsAcrossRestarts() {
+        //Given
+        UUID customerId = UUID.randomUUID();
+        new FilePaymentEventSink(objectMapper, directory, 1).publish(List.of(event(1, customerId)));
+
+        //When
+        FilePaymentEventSink underTest = new FilePaymentEventSink(objectMapper, directory, 1);
+        underTest.publish(List.of(event(2, customerId)));
+
+        //Then
+        assertThat(underTest.read(0, 0, 10))
+                .extracting(record -> record.event().eventId())
+                .containsExactly(1L, 2L);
+    }
+
+    @Test
+    void itShouldSeekToOffsetsBeyondTheFirstIndexedLines() {
+        //Given
+        FilePaymentEventSink underTest = new FilePaymentEventSink(objectMapper, directory, 1);
+        UUID customerId = UUID.randomUUID();
+        int events = FilePaymentEventSink.INDEX_INTERVAL * 2 + 500;
+        for (int i = 0; i < events; i += 100) {
+            List<PaymentEventMessage> batch = new ArrayList<>();
+            for (int j = i; j < i + 100; j++)
+                batch.add(event(j, customerId));
+            underTest.publish(batch);
+        }
+
+        //When
+        List<PaymentEventRecord> records = underTest.read(0, 2100, 3);
+
+        //Then
+        assertThat(records).extracting(PaymentEventRecord::offset).containsExactly(2100L, 2101L, 2102L);
+        assertThat(records).extracting(record -> record.event().eventId()).containsExactly(2100L, 2101L, 2102L);
+        // ... and after a restart, from the index built out of the file
+        assertThat(new FilePaymentEventSink(objectMapper, directory, 1).read(0, 1999, 2))
+                .extracting(record -> record.event().eventId()).containsExactly(1999L, 2000L);
+        assertThat(underTest.read(0, events, 10)).isEmpty();
+        assertThat(underTest.endOffset(0)).isEqualTo(events);
+    }
+
+    @Test
+    void itShouldStopAtALineNotCompletelyWritten() throws IOException {
+        //Given
+        FilePaymentEventSink underTest = new FilePaymentEventSink(objectMapper, directory, 1);
+        underTest.publish(List.of(event(1, UUID.randomUUID())));
+        Files.writeString(directory.resolve("partition-0.ndjson"), "{\"eventId\":2,",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        //When
+        List<PaymentEventRecord> records = underTest.read(0, 0, 10);
+
+        //Then
+        assertThat(records).extracting(PaymentEventRecord::offset).containsExactly(0L);
+    }
+
+    @Test
+    void itShouldTruncateALineTornByACrashBeforePublishing() throws IOException {
+        //Given
+        UUID customerId = UUID.randomUUID();
+        new FilePaymentEventSink(objectMapper, directory, 1).publish(List.of(event(1, customerId)));
+        // .. the instance died in the middle of the next publish
+        Files.writeString(directory.resolve("partition-0.ndjson"), "{\"eventId\":2,",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        //When
+        FilePaymentEventSink underTest = new FilePaymentEventSink(objectMapper, directory, 1);
+        underTest.publish(List.of(event(3, customerId)));
+
+        //Then
+        assertThat(underTest.read(0, 0, 10))
+                .extracting(PaymentEventRecord::offset, record -> record.event().eventId())
+                .containsExactly(tuple(0L, 1L), tuple(1L, 3L));
+        assertThat(new FilePaymentEventSink(objectMapper, directory, 1).read(0, 1, 10))
+                .extracting(record -> record.event().eventId()).containsExactly(3L);
+    }
+
+    @Test
+    void itShouldReadNothingFromAnEmptyPartition() {
+        //Given
+        FilePaymentEventSink underTest = new FilePaymentEventSink(objectMapper, directory, 2);
+
+        //When
+        //Then
+        assertThat(underTest.read(1, 0, 10)).isEmpty();
+    }
+}
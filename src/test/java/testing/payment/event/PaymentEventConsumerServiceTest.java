@@ -0,0 +1,152 @@
+package testing.payment.event;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static testing.payment.event.PaymentEventLogTest.event;
+
+@ExtendWith(MockitoExtension.class)
+class PaymentEventConsumerServiceTest {
+
+    @Mock
+    private PaymentEventSink paymentEventSink;
+
+    @Mock
+    private PaymentEventOffsetRepository paymentEventOffsetRepository;
+
+    @Captor
+    private ArgumentCaptor<PaymentEventOffset> offsetArgumentCaptor;
+
+    private PaymentEventConsumerService underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new PaymentEventConsumerService(paymentEventSink, paymentEventOffsetRepository);
+        lenient().when(paymentEventSink.partitions()).thenReturn(4);
+        lenient().when(paymentEventSink.endOffset(anyInt())).thenReturn(100L);
+    }
+
+    @Test
+    void itShouldPollFromTheCommittedOffset() {
+        //Given
+        given(paymentEventOffsetRepository.findById(new PaymentEventOffset.Key("ledger", 2)))
+                .willReturn(Optional.of(new PaymentEventOffset("ledger", 2, 7)));
+        List<PaymentEventRecord> records = List.of(new PaymentEventRecord(7, event(1, UUID.randomUUID())));
+        given(paymentEventSink.read(2, 7, 50)).willReturn(records);
+
+        //When
+        List<PaymentEventRecord> polled = underTest.poll("ledger", 2, 50);
+
+        //Then
+        assertThat(polled).isEqualTo(records);
+    }
+
+    @Test
+    void itShouldPollFromTheStartForANewConsumer() {
+        //Given
+        given(paymentEventOffsetRepository.findById(any())).willReturn(Optional.empty());
+
+        //When
+        underTest.poll("ledger", 0, 10);
+
+        //Then
+        then(paymentEventSink).should().read(0, 0, 10);
+    }
+
+    @Test
+    void itShouldThrowWhenTheEventsFromTheOffsetWereDropped() {
+        //Given
+        given(paymentEventOffsetRepository.findById(new PaymentEventOffset.Key("ledger", 1)))
+                .willReturn(Optional.of(new PaymentEventOffset("ledger", 1, 5)));
+        given(paymentEventSink.firstOffset(1)).willReturn(20L);
+
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.poll("ledger", 1, 10))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Events [5] to [19] of partition [1] were dropped")
+                .hasMessageContaining("commit offset [20] to skip them");
+        then(paymentEventSink).should(never()).read(anyInt(), anyLong(), anyInt());
+    }
+
+    @Test
+    void itShouldThrowWhenTheOffsetIsPastTheEndOfTheLog() {
+        //Given
+        // .. committed before the memory sink restarted from offset 0
+        given(paymentEventOffsetRepository.findById(new PaymentEventOffset.Key("ledger", 1)))
+                .willReturn(Optional.of(new PaymentEventOffset("ledger", 1, 150)));
+
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.poll("ledger", 1, 10))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Consumer [ledger] is at offset [150] of partition [1] but the log ends at [100]");
+        then(paymentEventSink).should(never()).read(anyInt(), anyLong(), anyInt());
+    }
+
+    @Test
+    void itShouldCommitTheOffset() {
+        //When
+        underTest.commit("ledger", 3, 12);
+
+        //Then
+        then(paymentEventOffsetRepository).should().save(offsetArgumentCaptor.capture());
+        assertThat(offsetArgumentCaptor.getValue()).isEqualTo(new PaymentEventOffset("ledger", 3, 12));
+    }
+
+    @Test
+    void itShouldThrowWhenPartitionDoesNotExist() {
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.poll("ledger", 4, 10))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Partition [4] does not exist");
+        then(paymentEventSink).should(never()).read(anyInt(), anyLong(), anyInt());
+    }
+
+    @Test
+    void itShouldThrowWhenConsumerIsBlank() {
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.commit(" ", 0, 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Consumer cannot be blank");
+        then(paymentEventOffsetRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void itShouldThrowWhenPollSizeIsTooLarge() {
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.poll("ledger", 0, PaymentEventConsumerService.MAX_POLL_SIZE + 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Poll size must be between 1 and");
+    }
+
+    @Test
+    void itShouldThrowWhenOffsetIsNegative() {
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.commit("ledger", 0, -1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Offset [-1] cannot be negative");
+    }
+}
@@ -0,0 +1,88 @@
+package testing.payment.event;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static testing.payment.Currency.EUR;
+
+class PaymentEventLogTest {
+
+    @Test
+    void itShouldKeepTheEventsOfACustomerInOrderInOnePartition() {
+        //Given
+        PaymentEventLog underTest = new PaymentEventLog(4, 100);
+        UUID customerId = UUID.randomUUID();
+
+        //When
+        underTest.publish(List.of(event(1, customerId), event(2, customerId)));
+        underTest.publish(List.of(event(3, customerId)));
+
+        //Then
+        List<PaymentEventRecord> records = underTest.read(underTest.partitionOf(customerId), 0, 10);
+        assertThat(records).extracting(PaymentEventRecord::offset).containsExactly(0L, 1L, 2L);
+        assertThat(records).extracting(record -> record.event().eventId()).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void itShouldReadFromTheOffset() {
+        //Given
+        PaymentEventLog underTest = new PaymentEventLog(1, 100);
+        UUID customerId = UUID.randomUUID();
+        underTest.publish(List.of(event(1, customerId), event(2, customerId), event(3, customerId)));
+
+        //When
+        List<PaymentEventRecord> records = underTest.read(0, 1, 1);
+
+        //Then
+        assertThat(records).singleElement().satisfies(record -> {
+            assertThat(record.offset()).isEqualTo(1);
+            assertThat(record.event().eventId()).isEqualTo(2);
+        });
+        assertThat(underTest.read(0, 3, 10)).isEmpty();
+    }
+
+    @Test
+    void itShouldDropTheOldestEventsWhenAPartitionIsFull() {
+        //Given
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        PaymentEventLog underTest = new PaymentEventLog(1, 10, meterRegistry);
+        UUID customerId = UUID.randomUUID();
+
+        //When
+        for (int i = 1; i <= 11; i++)
+            underTest.publish(List.of(event(i, customerId)));
+
+        //Then
+        // ... the offsets of the remaining events do not change
+        List<PaymentEventRecord> records = underTest.read(0, 0, 100);
+        assertThat(records).hasSize(10);
+        assertThat(records.get(0).offset()).isEqualTo(1);
+        assertThat(records.get(0).event().eventId()).isEqualTo(2);
+        // ... and the gap is visible
+        assertThat(underTest.firstOffset(0)).isEqualTo(1);
+        assertThat(underTest.endOffset(0)).isEqualTo(11);
+        assertThat(meterRegistry.get("payment.events.dropped").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldThrowWhenThereAreNoPartitions() {
+        //When
+        //Then
+        assertThatThrownBy(() -> new PaymentEventLog(0, 10))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("at least one partition");
+    }
+
+    static PaymentEventMessage event(long eventId, UUID customerId) {
+        return new PaymentEventMessage(eventId, PaymentEvent.PAYMENT_CREATED, eventId, customerId,
+                new BigDecimal("10.00"), EUR, Instant.parse("2024-01-01T00:00:00Z"));
+    }
+}
@@ -0,0 +1,104 @@
+package testing.payment.event;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static testing.payment.Currency.EUR;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED) //the relay commits its own transactions
+class PaymentEventRelayTest {
+
+    @Autowired
+    private PaymentEventRepository paymentEventRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final UUID customerId = UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() {
+        paymentEventRepository.deleteAll();
+    }
+
+    @Test
+    void itShouldRelayTheOutboxInOrderAndEmptyIt() {
+        //Given
+        PaymentEventLog sink = new PaymentEventLog(2, 100);
+        List<Long> paymentIds = List.of(3L, 1L, 2L, 5L, 4L);
+        paymentIds.forEach(paymentId -> paymentEventRepository.save(event(paymentId)));
+        // ... smaller batches than events
+        PaymentEventRelay underTest = relay(sink, 2);
+
+        //When
+        underTest.relay();
+
+        //Then
+        assertThat(sink.read(sink.partitionOf(customerId), 0, 100))
+                .extracting(record -> record.event().paymentId())
+                .containsExactlyElementsOf(paymentIds);
+        assertThat(paymentEventRepository.count()).isZero();
+    }
+
+    @Test
+    void itShouldKeepTheEventsWhenTheSinkFails() {
+        //Given
+        paymentEventRepository.save(event(1));
+        PaymentEventSink failingSink = new PaymentEventLog(1, 100) {
+            @Override
+            public void publish(List<PaymentEventMessage> events) {
+                throw new IllegalStateException("broker down");
+            }
+        };
+
+        //When
+        relay(failingSink, 10).relay();
+
+        //Then
+        assertThat(paymentEventRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldNotRelayWhenDisabled() {
+        //Given
+        paymentEventRepository.save(event(1));
+        PaymentEventLog sink = new PaymentEventLog(1, 100);
+        PaymentEventRelay underTest = new PaymentEventRelay(paymentEventRepository, sink, transactionManager,
+                new SimpleMeterRegistry(), false, 10);
+
+        //When
+        underTest.relay();
+
+        //Then
+        assertThat(sink.read(0, 0, 10)).isEmpty();
+        assertThat(paymentEventRepository.count()).isEqualTo(1);
+    }
+
+    private PaymentEventRelay relay(PaymentEventSink sink, int batchSize) {
+        return new PaymentEventRelay(paymentEventRepository, sink, transactionManager,
+                new SimpleMeterRegistry(), true, batchSize);
+    }
+
+    private PaymentEvent event(long paymentId) {
+        return PaymentEvent.builder()
+                .type(PaymentEvent.PAYMENT_CREATED)
+                .paymentId(paymentId)
+                .customerId(customerId)
+                .amount(1000)
+                .currency(EUR)
+                .createdAt(Instant.now())
+                .build();
+    }
+}
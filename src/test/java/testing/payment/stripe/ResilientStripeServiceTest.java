@@ -0,0 +1,107 @@
+package testing.payment.stripe;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import testing.payment.CardChargeRejectedException;
+import testing.payment.Money;
+import testing.payment.ResilientCardPaymentCharger;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static testing.payment.Currency.EUR;
+
+class ResilientStripeServiceTest {
+
+    private static final Money AMOUNT = new Money(1000, EUR);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private StripeStubServer stripe;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        stripe = new StripeStubServer();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        stripe.close();
+    }
+
+    @Test
+    void itShouldFailFastOnceStripeTurnsSlow() {
+        //Given
+        ResilientCardPaymentCharger underTest = charger(ResilientCardPaymentCharger.Settings.builder()
+                .windowSize(4)
+                .slowCallThreshold(Duration.ofMillis(100))
+                .openDuration(Duration.ofMinutes(1)));
+        stripe.setLatency(Duration.ofMillis(200));
+        for (int i = 0; i < 4; i++)
+            assertThat(underTest.chargeCard("method", AMOUNT, "slow " + i).isCardDebited()).isTrue();
+
+        //When
+        long start = System.nanoTime();
+        //Then
+        assertThatThrownBy(() -> underTest.chargeCard("method", AMOUNT, "rejected"))
+                .isInstanceOf(CardChargeRejectedException.class);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(100));
+        assertThat(stripe.requests()).isEqualTo(4);
+        assertThat(meterRegistry.get("payment.charger.circuit.state").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldCloseTheCircuitOnceStripeRecovers() throws Exception {
+        //Given
+        ResilientCardPaymentCharger underTest = charger(ResilientCardPaymentCharger.Settings.builder()
+                .windowSize(2)
+                .slowCallThreshold(Duration.ofMillis(100))
+                .openDuration(Duration.ofMillis(300))
+                .halfOpenCalls(1));
+        stripe.setLatency(Duration.ofMillis(200));
+        underTest.chargeCard("method", AMOUNT, "slow");
+        underTest.chargeCard("method", AMOUNT, "slow");
+
+        //When
+        stripe.setLatency(Duration.ZERO);
+        Thread.sleep(300);
+
+        //Then
+        assertThat(underTest.chargeCard("method", AMOUNT, "trial").isCardDebited()).isTrue();
+        assertThat(meterRegistry.get("payment.charger.circuit.state").gauge().value()).isZero();
+    }
+
+    @Test
+    void itShouldTimeOutAtAMultipleOfTheObservedP99() {
+        //Given
+        ResilientCardPaymentCharger underTest = charger(ResilientCardPaymentCharger.Settings.builder()
+                .timeoutSampleSize(20)
+                .minTimeout(Duration.ofMillis(300))
+                .maxTimeout(Duration.ofSeconds(30))
+                .slowCallThreshold(Duration.ofSeconds(30)));
+        //fast answers bring the timeout down to its minimum
+        for (int i = 0; i < 20; i++)
+            underTest.chargeCard("method", AMOUNT, "fast " + i);
+        assertThat(meterRegistry.get("payment.charger.timeout").gauge().value()).isEqualTo(0.3);
+
+        //When
+        stripe.setLatency(Duration.ofSeconds(5));
+        long start = System.nanoTime();
+
+        //Then
+        assertThatThrownBy(() -> underTest.chargeCard("method", AMOUNT, "stuck"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Card charge timed out after [300] ms");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+    }
+
+    private ResilientCardPaymentCharger charger(ResilientCardPaymentCharger.Settings.SettingsBuilder settings) {
+        StripeService stripeService =
+                new StripeService(new StripeTransport(stripe.baseUrl(), Duration.ofSeconds(30)));
+        return new ResilientCardPaymentCharger(stripeService, settings.build(), meterRegistry);
+    }
+}
@@ -0,0 +1,94 @@
+package testing.payment.stripe;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import testing.payment.CardPaymentCharge;
+import testing.payment.CardPaymentCharger;
+import testing.payment.Money;
+import testing.payment.PaymentConfig;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static testing.payment.Currency.EUR;
+
+/**
+ * Charges through the configured charge executor and charger, as a batch does, with virtual threads enabled.
+ */
+class StripeServiceLoadTest {
+
+    // Tomcat's default max threads: the ceiling of the platform-thread request model
+    private static final int TOMCAT_POOL_SIZE = 200;
+    // default payment.batch.parallelism of the platform charge executor
+    private static final int CHARGE_POOL_SIZE = 16;
+    private static final int MAX_CONCURRENT_CHARGES = 300;
+    private static final int CHARGES = 500;
+    private static final Duration STRIPE_LATENCY = Duration.ofSeconds(1);
+
+    private StripeStubServer stripe;
+
+    private ApplicationContextRunner contextRunner;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        stripe = new StripeStubServer();
+        stripe.setLatency(STRIPE_LATENCY);
+        contextRunner = new ApplicationContextRunner()
+                //binds "30s" and "USD,EUR" like the application does
+                .withInitializer(context -> context.getBeanFactory()
+                        .setConversionService(ApplicationConversionService.getSharedInstance()))
+                .withUserConfiguration(PaymentConfig.class, StripeTransport.class, StripeService.class)
+                .withBean(MeterRegistry.class, SimpleMeterRegistry::new)
+                .withPropertyValues(
+                        "spring.threads.virtual.enabled=true",
+                        "stripe.mocked=false",
+                        "stripe.api-base=" + stripe.baseUrl(),
+                        "stripe.http.version=HTTP_1_1",
+                        "payment.batch.virtual-parallelism=" + MAX_CONCURRENT_CHARGES,
+                        "payment.charger.resilience.max-concurrent-charges=" + MAX_CONCURRENT_CHARGES,
+                        "payment.charger.resilience.slow-call-threshold=5s",
+                        "payment.charger.resilience.timeout.min=5s");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        stripe.close();
+    }
+
+    @Test
+    void itShouldScaleChargesBeyondPlatformPoolOnVirtualThreads() {
+        contextRunner.run(context -> {
+            //Given
+            ExecutorService executor = context.getBean("chargeExecutor", ExecutorService.class);
+            CardPaymentCharger charger = context.getBean(CardPaymentCharger.class);
+
+            //When
+            long start = System.nanoTime();
+            List<CompletableFuture<CardPaymentCharge>> charges = IntStream.range(0, CHARGES)
+                    .mapToObj(i -> CompletableFuture.supplyAsync(
+                            () -> charger.chargeCard("method", new Money(1000, EUR), "load " + i),
+                            executor))
+                    .toList();
+            List<CardPaymentCharge> results = charges.stream().map(CompletableFuture::join).toList();
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            //Then
+            assertThat(results).hasSize(CHARGES).allMatch(CardPaymentCharge::isCardDebited);
+            assertThat(stripe.requests()).isEqualTo(CHARGES);
+            assertThat(stripe.maxInFlight()).isGreaterThan(TOMCAT_POOL_SIZE);
+            // ... the executor bounds the charges in flight, so the bulkhead rejects none of them
+            assertThat(stripe.maxInFlight()).isLessThanOrEqualTo(MAX_CONCURRENT_CHARGES);
+            // the platform charge pool needs at least CHARGES / CHARGE_POOL_SIZE sequential rounds
+            assertThat(elapsed).isLessThan(STRIPE_LATENCY.multipliedBy(CHARGES / CHARGE_POOL_SIZE));
+        });
+    }
+}
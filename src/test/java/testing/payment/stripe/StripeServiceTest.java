@@ -1,97 +1,174 @@
 package testing.payment.stripe;
 
-import com.stripe.model.Charge;
-import com.stripe.model.PaymentIntent;
-import com.stripe.net.RequestOptions;
-import com.stripe.param.PaymentIntentCreateParams;
-import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.ArgumentCaptor;
-import org.mockito.Captor;
-import org.mockito.MockedStatic;
-import org.mockito.Mockito;
-import org.mockito.junit.jupiter.MockitoExtension;
 import testing.payment.CardPaymentCharge;
-import testing.payment.Currency;
+import testing.payment.InvalidCardChargeException;
+import testing.payment.Money;
 
-import java.math.BigDecimal;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.BDDMockito.given;
-import static org.mockito.Mockito.mock;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static testing.payment.Currency.EUR;
 
-@ExtendWith(MockitoExtension.class)
 class StripeServiceTest {
 
-    @Captor
-    private ArgumentCaptor<PaymentIntentCreateParams> paramsArgumentCaptor;
+    @Test
+    void itShouldChargeCard() throws Exception {
+        try (StripeStubServer stripe = new StripeStubServer()) {
+            //Given
+            String method = "method";
+            String description = "description";
+            Money amount = new Money(1050, EUR);
+            StripeService underTest =
+                    new StripeService(new StripeTransport(stripe.baseUrl(), Duration.ofSeconds(5)));
 
-    @Captor
-    private ArgumentCaptor<RequestOptions> requestOptionsArgumentCaptor;
+            //When
+            CardPaymentCharge cardPaymentCharge = underTest.chargeCard(method, amount, description);
 
-    private StripeService underTest;
+            //Then
+            assertThat(cardPaymentCharge).isNotNull();
+            assertThat(cardPaymentCharge.isCardDebited()).isTrue();
 
-    @BeforeEach
-    public void setUp() {
-        underTest = new StripeService();
+            // .. in cents, 10.50 EUR is not truncated to 10
+            assertThat(stripe.lastBody())
+                    .contains("amount=1050")
+                    .contains("currency=" + EUR.name().toLowerCase())
+                    .contains("description=" + description)
+                    .contains("payment_method=" + method);
+            assertThat(stripe.lastAuthorization()).isEqualTo("Bearer sk_test_CGGvfNiIPwLXiDwaOfZ3oX6Y");
+            assertThat(stripe.lastIdempotencyKey()).isNotBlank();
+        }
     }
 
     @Test
-    void itShouldChargeCard() {
-        //Given
-        String method = "method";
-        String description = "description";
-        BigDecimal amount = new BigDecimal(10);
-        Currency currency = EUR;
+    void itShouldSendIdempotencyKeySoRetriedChargeIsNotCreatedTwice() throws Exception {
+        try (StripeStubServer stripe = new StripeStubServer()) {
+            //Given
+            StripeService service =
+                    new StripeService(new StripeTransport(stripe.baseUrl(), Duration.ofSeconds(5)));
 
-        // Mock the PaymentIntent and Charge
-        PaymentIntent paymentIntentMock = mock(PaymentIntent.class);
-        Charge chargeMock = mock(Charge.class);
+            //When
+            service.chargeCardAsync("method", new Money(1000, EUR), "description", "payment-key").join();
 
-        // Set up the behavior for the mock objects
-        given(paymentIntentMock.getLatestChargeObject()).willReturn(chargeMock);
-        given(chargeMock.getPaid()).willReturn(true);
+            //Then
+            assertThat(stripe.lastIdempotencyKey()).isEqualTo("payment-key");
+        }
+    }
 
+    @Test
+    void itShouldReportDeclinedCardAsNotDebited() throws Exception {
+        try (StripeStubServer stripe = new StripeStubServer()) {
+            //Given
+            stripe.setStatus(402);
+            StripeService underTest =
+                    new StripeService(new StripeTransport(stripe.baseUrl(), Duration.ofSeconds(5)));
 
-        try (MockedStatic<PaymentIntent> paymentIntentMockedStatic =
-                     Mockito.mockStatic(PaymentIntent.class)) {
+            //When
+            CardPaymentCharge cardPaymentCharge = underTest.chargeCard("method", new Money(1000, EUR), "declined");
 
-            //Mock the static method call
-            paymentIntentMockedStatic.when(() -> PaymentIntent.create(
-                            any(PaymentIntentCreateParams.class),
-                            any(RequestOptions.class)
-                    )
-            ).thenReturn(paymentIntentMock);
+            //Then
+            assertThat(cardPaymentCharge.isCardDebited()).isFalse();
+        }
+    }
+
+    @Test
+    void itShouldTellInvalidChargesFromStripeFailures() throws Exception {
+        try (StripeStubServer stripe = new StripeStubServer()) {
+            //Given
+            StripeService underTest =
+                    new StripeService(new StripeTransport(stripe.baseUrl(), Duration.ofSeconds(5)));
 
             //When
-            CardPaymentCharge cardPaymentCharge =
-                    underTest.chargeCard(method, amount, currency, description);
+            //Then
+            stripe.setStatus(400);
+            assertThatThrownBy(() -> underTest.chargeCardAsync("method", new Money(1000, EUR), "invalid").join())
+                    .hasCauseInstanceOf(InvalidCardChargeException.class)
+                    .hasMessageContaining("Stripe refused the charge, status [400]");
+            stripe.setStatus(429);
+            assertThatThrownBy(() -> underTest.chargeCardAsync("method", new Money(1000, EUR), "throttled").join())
+                    .hasCauseExactlyInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("Can not make Stripe charge, status [429]");
+            stripe.setStatus(500);
+            assertThatThrownBy(() -> underTest.chargeCardAsync("method", new Money(1000, EUR), "failing").join())
+                    .hasCauseExactlyInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("Can not make Stripe charge, status [500]");
+        }
+    }
+
+    @Test
+    void itShouldFailChargeWhenStripeIsSlowerThanTimeout() throws Exception {
+        try (StripeStubServer stripe = new StripeStubServer()) {
+            //Given
+            stripe.setLatency(Duration.ofSeconds(5));
+            StripeService underTest =
+                    new StripeService(new StripeTransport(stripe.baseUrl(), Duration.ofMillis(200)));
+
+            //When
+            //Then
+            assertThatThrownBy(() -> underTest.chargeCard("method", new Money(1000, EUR), "description"))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessage("Can not make Stripe charge")
+                    .hasCauseInstanceOf(HttpTimeoutException.class);
+        }
+    }
+
+    @Test
+    void itShouldChargeCardAsynchronously() throws Exception {
+        try (StripeStubServer stripe = new StripeStubServer()) {
+            //Given
+            StripeService service =
+                    new StripeService(new StripeTransport(stripe.baseUrl(), Duration.ofSeconds(5)));
+
+            //When
+            CardPaymentCharge cardPaymentCharge = service
+                    .chargeCardAsync("method", new Money(1000, EUR), "description")
+                    .join();
 
             //Then
-            assertThat(cardPaymentCharge).isNotNull();
             assertThat(cardPaymentCharge.isCardDebited()).isTrue();
+            assertThat(stripe.requests()).isEqualTo(1);
+        }
+    }
 
-            // .. capture the arguments passed to the static method
-            paymentIntentMockedStatic.verify(() -> PaymentIntent.create(
-                    paramsArgumentCaptor.capture(),
-                    requestOptionsArgumentCaptor.capture()
-            ));
-
-            //validate params
-            PaymentIntentCreateParams paramsArgumentCaptorValue = paramsArgumentCaptor.getValue();
-            assertThat(paramsArgumentCaptorValue.getAmount()).isEqualTo(amount.longValue());
-            assertThat(paramsArgumentCaptorValue.getCurrency()).isEqualTo(currency.name().toLowerCase());
-            assertThat(paramsArgumentCaptorValue.getDescription()).isEqualTo(description);
-            assertThat(paramsArgumentCaptorValue.getPaymentMethod()).isEqualTo(method);
-
-            //validate request options
-            RequestOptions requestOptionsArgumentCaptorValue = requestOptionsArgumentCaptor.getValue();
-            assertThat(requestOptionsArgumentCaptorValue.getApiKey()).isEqualTo("sk_test_CGGvfNiIPwLXiDwaOfZ3oX6Y");
+    @Test
+    void itShouldFailAsyncChargeWhenStripeIsSlowerThanTimeout() throws Exception {
+        try (StripeStubServer stripe = new StripeStubServer()) {
+            //Given
+            stripe.setLatency(Duration.ofSeconds(5));
+            StripeService service =
+                    new StripeService(new StripeTransport(stripe.baseUrl(), Duration.ofMillis(200)));
+
+            //When
+            CompletableFuture<CardPaymentCharge> charge =
+                    service.chargeCardAsync("method", new Money(1000, EUR), "description");
+
+            //Then
+            assertThatThrownBy(charge::join)
+                    .isInstanceOf(CompletionException.class)
+                    .hasCauseInstanceOf(HttpTimeoutException.class);
         }
     }
 
+    @Test
+    void itShouldCancelAsyncCharge() throws Exception {
+        try (StripeStubServer stripe = new StripeStubServer()) {
+            //Given
+            stripe.setLatency(Duration.ofSeconds(5));
+            StripeService service =
+                    new StripeService(new StripeTransport(stripe.baseUrl(), Duration.ofSeconds(30)));
+            CompletableFuture<CardPaymentCharge> charge =
+                    service.chargeCardAsync("method", new Money(1000, EUR), "description");
 
-}
\ No newline at end of file
+            //When
+            boolean cancelled = charge.cancel(true);
+
+            //Then
+            assertThat(cancelled).isTrue();
+            assertThat(charge).isCancelled();
+        }
+    }
+}
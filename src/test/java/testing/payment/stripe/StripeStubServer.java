@@ -0,0 +1,132 @@
+package testing.payment.stripe;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for api.stripe.com answering POST /v1/payment_intents
+ * with a paid charge (or a Stripe error with the configured status) after a configurable latency,
+ * and 404 to anything else.
+ * Connections are told apart by the client port.
+ */
+class StripeStubServer implements AutoCloseable {
+
+    private static final String PAYMENT_INTENT = """
+            {
+              "id": "pi_stub",
+              "object": "payment_intent",
+              "status": "succeeded",
+              "latest_charge": {"id": "ch_stub", "object": "charge", "paid": true}
+            }
+            """;
+
+    private static final String ERROR = """
+            {
+              "error": {"type": "card_error", "code": "card_declined", "message": "Your card was declined."}
+            }
+            """;
+
+    private final HttpServer server;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final Set<Integer> connections = ConcurrentHashMap.newKeySet();
+    private volatile Duration latency = Duration.ZERO;
+    private volatile int status = 200;
+    private volatile String lastBody;
+    private volatile String lastAuthorization;
+    private volatile String lastIdempotencyKey;
+
+    StripeStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 2048);
+        server.createContext("/v1/payment_intents", this::paymentIntent);
+        server.createContext("/", this::notFound);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    void setLatency(Duration latency) {
+        this.latency = latency;
+    }
+
+    void setStatus(int status) {
+        this.status = status;
+    }
+
+    int maxInFlight() {
+        return maxInFlight.get();
+    }
+
+    int requests() {
+        return requests.get();
+    }
+
+    int connections() {
+        return connections.size();
+    }
+
+    String lastBody() {
+        return lastBody;
+    }
+
+    String lastAuthorization() {
+        return lastAuthorization;
+    }
+
+    String lastIdempotencyKey() {
+        return lastIdempotencyKey;
+    }
+
+    private void paymentIntent(HttpExchange exchange) throws IOException {
+        connections.add(exchange.getRemoteAddress().getPort());
+        requests.incrementAndGet();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try (exchange) {
+            lastBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            lastAuthorization = exchange.getRequestHeaders().getFirst("Authorization");
+            lastIdempotencyKey = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+            Thread.sleep(latency);
+
+            byte[] body = (status == 200 ? PAYMENT_INTENT : ERROR).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void notFound(HttpExchange exchange) throws IOException {
+        connections.add(exchange.getRemoteAddress().getPort());
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            Thread.sleep(latency);
+            exchange.sendResponseHeaders(404, -1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,144 @@
+package testing.payment.stripe;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StripeTransportTest {
+
+    private static final String PAYMENT_INTENTS = "/v1/payment_intents";
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private StripeStubServer stripe;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        stripe = new StripeStubServer();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        stripe.close();
+    }
+
+    @Test
+    void itShouldReuseTheConnectionAcrossRequests() throws Exception {
+        //Given
+        StripeTransport underTest = transport(HttpClient.Version.HTTP_1_1, 0);
+
+        //When
+        for (int i = 0; i < 10; i++)
+            assertThat(underTest.post(PAYMENT_INTENTS, "amount=" + i, "key-" + i).statusCode()).isEqualTo(200);
+
+        //Then
+        assertThat(stripe.requests()).isEqualTo(10);
+        assertThat(stripe.connections()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldServeConcurrentChargesFromPrewarmedConnections() {
+        //Given
+        StripeTransport underTest = transport(HttpClient.Version.HTTP_1_1, 4);
+        stripe.setLatency(Duration.ofMillis(200));
+
+        //When
+        underTest.prewarm();
+        int warmed = stripe.connections();
+        List<CompletableFuture<HttpResponse<String>>> responses = IntStream.range(0, 4)
+                .mapToObj(i -> underTest.postAsync(PAYMENT_INTENTS, "amount=" + i, "key-" + i))
+                .toList();
+        responses.forEach(CompletableFuture::join);
+
+        //Then
+        assertThat(warmed).isEqualTo(4);
+        assertThat(stripe.maxInFlight()).isEqualTo(4);
+        //no charge had to open its own connection
+        assertThat(stripe.connections()).isEqualTo(4);
+        assertThat(meterRegistry.get("stripe.http.connections.warm").gauge().value()).isEqualTo(4);
+    }
+
+    @Test
+    void itShouldFallBackToHttp11WhenTheServerHasNoHttp2() throws Exception {
+        //Given
+        StripeTransport underTest = transport(HttpClient.Version.HTTP_2, 0);
+
+        //When
+        HttpResponse<String> response = underTest.post(PAYMENT_INTENTS, "amount=1", "key");
+
+        //Then
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.version()).isEqualTo(HttpClient.Version.HTTP_1_1);
+    }
+
+    @Test
+    void itShouldRecordRequestLatencyAndInFlightRequests() throws Exception {
+        //Given
+        StripeTransport underTest = transport(HttpClient.Version.HTTP_1_1, 0);
+        stripe.setLatency(Duration.ofMillis(300));
+
+        //When
+        CompletableFuture<HttpResponse<String>> response = underTest.postAsync(PAYMENT_INTENTS, "amount=1", "key");
+        Thread.sleep(100);
+        double inFlight = meterRegistry.get("stripe.http.in_flight").gauge().value();
+        response.join();
+
+        //Then
+        assertThat(inFlight).isEqualTo(1);
+        assertThat(meterRegistry.get("stripe.http.in_flight").gauge().value()).isZero();
+        assertThat(meterRegistry.get("stripe.http.request")
+                .tag("status", "200")
+                .tag("version", "HTTP_1_1")
+                .timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldAbortTheExchangeWhenCancelled() throws Exception {
+        //Given
+        StripeTransport underTest = transport(HttpClient.Version.HTTP_1_1, 0);
+        stripe.setLatency(Duration.ofSeconds(5));
+        CompletableFuture<HttpResponse<String>> response = underTest.postAsync(PAYMENT_INTENTS, "amount=1", "key");
+        Thread.sleep(100);
+
+        //When
+        response.cancel(true);
+
+        //Then
+        long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        while (meterRegistry.get("stripe.http.in_flight").gauge().value() > 0 && System.nanoTime() < deadline)
+            Thread.sleep(10);
+        assertThat(meterRegistry.get("stripe.http.in_flight").gauge().value()).isZero();
+    }
+
+    @Test
+    void itShouldStartEvenWhenPrewarmingFails() {
+        //Given
+        String unreachable = stripe.baseUrl();
+        stripe.close();
+        StripeTransport underTest = new StripeTransport(unreachable, Duration.ofMillis(500), Duration.ofMillis(500),
+                HttpClient.Version.HTTP_1_1, 2, meterRegistry);
+
+        //When
+        underTest.prewarm();
+
+        //Then
+        assertThat(meterRegistry.get("stripe.http.connections.warm").gauge().value()).isZero();
+        assertThat(meterRegistry.get("stripe.http.prewarm").timer().count()).isEqualTo(1);
+    }
+
+    private StripeTransport transport(HttpClient.Version version, int prewarmConnections) {
+        return new StripeTransport(stripe.baseUrl(), Duration.ofSeconds(5), Duration.ofSeconds(5),
+                version, prewarmConnections, meterRegistry);
+    }
+}
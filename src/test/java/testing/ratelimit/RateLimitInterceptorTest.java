@@ -0,0 +1,181 @@
+package testing.ratelimit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitInterceptorTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void itShouldRejectACustomerOverItsRate() throws Exception {
+        //Given
+        RateLimitInterceptor underTest = interceptor(true, 100);
+        UUID customerId = UUID.randomUUID();
+        assertThat(underTest.preHandle(paymentRequest(customerId), new MockHttpServletResponse(), handler("pay")))
+                .isTrue();
+        assertThat(underTest.preHandle(paymentRequest(customerId), new MockHttpServletResponse(), handler("pay")))
+                .isTrue();
+
+        //When
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        boolean allowed = underTest.preHandle(paymentRequest(customerId), response, handler("pay"));
+
+        //Then
+        assertThat(allowed).isFalse();
+        assertThat(response.getStatus()).isEqualTo(429);
+        // ... one token per second
+        assertThat(response.getHeader("Retry-After")).isEqualTo("1");
+        assertThat(meterRegistry.get("rate_limit.rejected").tag("limit", "customer").counter().count())
+                .isEqualTo(1);
+        // ... other customers are not affected
+        assertThat(underTest.preHandle(paymentRequest(UUID.randomUUID()), new MockHttpServletResponse(),
+                handler("pay"))).isTrue();
+    }
+
+    @Test
+    void itShouldAllowTheCustomerAgainOnceATokenIsBack() throws Exception {
+        //Given
+        RateLimitInterceptor underTest = interceptor(true, 100);
+        UUID customerId = UUID.randomUUID();
+        underTest.preHandle(paymentRequest(customerId), new MockHttpServletResponse(), handler("pay"));
+        underTest.preHandle(paymentRequest(customerId), new MockHttpServletResponse(), handler("pay"));
+
+        //When
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+
+        //Then
+        assertThat(underTest.preHandle(paymentRequest(customerId), new MockHttpServletResponse(), handler("pay")))
+                .isTrue();
+    }
+
+    @Test
+    void itShouldLimitRegistrationsByClientIp() throws Exception {
+        //Given
+        RateLimitInterceptor underTest = interceptor(true, 100);
+        for (int i = 0; i < 2; i++)
+            underTest.preHandle(registrationRequest("10.0.0.1"), new MockHttpServletResponse(), handler("register"));
+
+        //When
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        boolean allowed = underTest.preHandle(registrationRequest("10.0.0.1"), response, handler("register"));
+
+        //Then
+        assertThat(allowed).isFalse();
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(underTest.preHandle(registrationRequest("10.0.0.2"), new MockHttpServletResponse(),
+                handler("register"))).isTrue();
+    }
+
+    @Test
+    void itShouldApplyTheGlobalLimitAcrossKeys() throws Exception {
+        //Given
+        RateLimitInterceptor underTest = interceptor(true, 3);
+        for (int i = 0; i < 3; i++)
+            underTest.preHandle(paymentRequest(UUID.randomUUID()), new MockHttpServletResponse(), handler("pay"));
+
+        //When
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        boolean allowed = underTest.preHandle(paymentRequest(UUID.randomUUID()), response, handler("pay"));
+
+        //Then
+        assertThat(allowed).isFalse();
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(meterRegistry.get("rate_limit.rejected").tag("limit", "global").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void itShouldNotLimitHandlersWithoutAnnotation() throws Exception {
+        //Given
+        RateLimitInterceptor underTest = interceptor(true, 1);
+
+        //When
+        //Then
+        for (int i = 0; i < 5; i++)
+            assertThat(underTest.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(),
+                    handler("list"))).isTrue();
+    }
+
+    @Test
+    void itShouldNotLimitWhenDisabled() throws Exception {
+        //Given
+        RateLimitInterceptor underTest = interceptor(false, 1);
+        UUID customerId = UUID.randomUUID();
+
+        //When
+        //Then
+        for (int i = 0; i < 5; i++)
+            assertThat(underTest.preHandle(paymentRequest(customerId), new MockHttpServletResponse(),
+                    handler("pay"))).isTrue();
+    }
+
+    @Test
+    void itShouldRejectOnceTheGlobalBucketIsEmpty() {
+        //Given
+        RateLimiter underTest = rateLimiter(true, 2);
+        underTest.tryAcquire(RateLimited.Key.CUSTOMER, UUID.randomUUID().toString());
+        underTest.tryAcquire(RateLimited.Key.CUSTOMER, UUID.randomUUID().toString());
+
+        //When
+        RateLimiter.Rejection rejection = underTest.tryAcquire(RateLimited.Key.CUSTOMER, UUID.randomUUID().toString());
+
+        //Then
+        assertThat(rejection).isNotNull();
+        assertThat(rejection.message()).isEqualTo("Rate limit [global] exceeded");
+        assertThat(meterRegistry.get("rate_limit.rejected").tag("limit", "global").counter().count())
+                .isEqualTo(1);
+    }
+
+    private RateLimitInterceptor interceptor(boolean enabled, int globalBurst) {
+        return new RateLimitInterceptor(rateLimiter(enabled, globalBurst));
+    }
+
+    private RateLimiter rateLimiter(boolean enabled, int globalBurst) {
+        return new RateLimiter(meterRegistry, enabled, 1000, 1, 2, 1, 2, 1, globalBurst, now::get);
+    }
+
+    private static MockHttpServletRequest paymentRequest(UUID customerId) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/payment/" + customerId);
+        request.setAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE,
+                Map.of("customerId", customerId.toString()));
+        return request;
+    }
+
+    private static MockHttpServletRequest registrationRequest(String clientIp) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/registration");
+        request.setRemoteAddr(clientIp);
+        return request;
+    }
+
+    private static HandlerMethod handler(String method) throws NoSuchMethodException {
+        return new HandlerMethod(new FakeController(), FakeController.class.getMethod(method));
+    }
+
+    static class FakeController {
+
+        @RateLimited(RateLimited.Key.CUSTOMER)
+        public void pay() {
+        }
+
+        @RateLimited(RateLimited.Key.CLIENT_IP)
+        public void register() {
+        }
+
+        public void list() {
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package testing.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenBucketTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    @Test
+    void itShouldAllowABurstThenRejectUntilATokenIsBack() {
+        //Given
+        TokenBucket underTest = new TokenBucket(10, 3, 0);
+
+        //When
+        //Then
+        assertThat(underTest.tryAcquire(0)).isZero();
+        assertThat(underTest.tryAcquire(0)).isZero();
+        assertThat(underTest.tryAcquire(0)).isZero();
+        // ... one token every 100 ms
+        assertThat(underTest.tryAcquire(0)).isEqualTo(SECOND / 10);
+        assertThat(underTest.tryAcquire(SECOND / 20)).isEqualTo(SECOND / 20);
+        assertThat(underTest.tryAcquire(SECOND / 10)).isZero();
+    }
+
+    @Test
+    void itShouldRefillUpToTheBurstOnly() {
+        //Given
+        TokenBucket underTest = new TokenBucket(10, 2, 0);
+
+        //When
+        long now = 60 * SECOND;
+
+        //Then
+        assertThat(underTest.tryAcquire(now)).isZero();
+        assertThat(underTest.tryAcquire(now)).isZero();
+        assertThat(underTest.tryAcquire(now)).isPositive();
+    }
+
+    @Test
+    void itShouldNotHandOutMoreTokensThanTheBurstUnderContention() throws InterruptedException {
+        //Given
+        TokenBucket underTest = new TokenBucket(1, 100, 0);
+        AtomicInteger acquired = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        //When
+        for (int thread = 0; thread < 8; thread++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < 100; i++) {
+                    if (underTest.tryAcquire(0) == 0)
+                        acquired.incrementAndGet();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        //Then
+        assertThat(acquired.get()).isEqualTo(100);
+    }
+
+    @Test
+    void itShouldThrowWhenRateIsNotPositive() {
+        //When
+        //Then
+        assertThatThrownBy(() -> new TokenBucket(0, 10, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("must be positive");
+    }
+}
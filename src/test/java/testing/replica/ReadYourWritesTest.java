@@ -0,0 +1,85 @@
+package testing.replica;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+class ReadYourWritesTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+    @Mock
+    private ReplicaLagMonitor lagMonitor;
+
+    private final UUID customerId = UUID.randomUUID();
+
+    @Test
+    void itShouldReadFromThePrimaryUntilTheWriteIsReplicated() {
+        //Given
+        ReadYourWrites underTest = readYourWrites(lagMonitor);
+        underTest.wrote(customerId);
+        given(lagMonitor.replicatedUpTo()).willReturn(NOW.minusMillis(1));
+
+        //When
+        boolean pinned = underTest.read(customerId, ReplicaRouting::isPinnedToPrimary);
+
+        //Then
+        assertThat(pinned).isTrue();
+        assertThat(ReplicaRouting.isPinnedToPrimary()).isFalse();
+    }
+
+    @Test
+    void itShouldReadFromTheReplicaOnceTheWriteIsReplicated() {
+        //Given
+        ReadYourWrites underTest = readYourWrites(lagMonitor);
+        underTest.wrote(customerId);
+        given(lagMonitor.replicatedUpTo()).willReturn(NOW);
+
+        //When
+        boolean pinned = underTest.read(customerId, ReplicaRouting::isPinnedToPrimary);
+
+        //Then
+        assertThat(pinned).isFalse();
+    }
+
+    @Test
+    void itShouldReadFromTheReplicaForCustomersWithoutRecentWrites() {
+        //Given
+        ReadYourWrites underTest = readYourWrites(lagMonitor);
+        underTest.wrote(UUID.randomUUID());
+
+        //When
+        boolean pinned = underTest.read(customerId, ReplicaRouting::isPinnedToPrimary);
+
+        //Then
+        assertThat(pinned).isFalse();
+    }
+
+    @Test
+    void itShouldDoNothingWithoutAReplica() {
+        //Given
+        ReadYourWrites underTest = readYourWrites(null);
+        underTest.wrote(customerId);
+
+        //When
+        boolean pinned = underTest.read(customerId, ReplicaRouting::isPinnedToPrimary);
+
+        //Then
+        assertThat(pinned).isFalse();
+    }
+
+    private static ReadYourWrites readYourWrites(ReplicaLagMonitor lagMonitor) {
+        return new ReadYourWrites(() -> lagMonitor, Duration.ofSeconds(2), 100, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,48 @@
+package testing.replica;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import testing.payment.PaymentService;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Both pools point at the same in-memory database, which is what a replica caught up with its primary looks like.
+ */
+@SpringBootTest(properties = {
+        "datasource.replica.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:replica-config-test;DB_CLOSE_DELAY=-1",
+        "datasource.replica.url=jdbc:h2:mem:replica-config-test;DB_CLOSE_DELAY=-1"
+})
+class ReplicaDataSourceConfigTest {
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private ReplicaLagMonitor replicaLagMonitor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void itShouldServeReadOnlyServiceCallsFromTheReplica() {
+        //Given
+        replicaLagMonitor.heartbeat();
+        double replicaReads = routed("replica");
+
+        //When
+        paymentService.getSummaries(UUID.randomUUID());
+
+        //Then
+        assertThat(routed("replica")).isEqualTo(replicaReads + 1);
+    }
+
+    private double routed(String target) {
+        return meterRegistry.get("datasource.routed").tag("target", target).counter().count();
+    }
+}
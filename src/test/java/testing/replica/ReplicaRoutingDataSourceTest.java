@@ -0,0 +1,170 @@
+package testing.replica;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two separate H2 databases stand in for the primary and the replica, each knowing its own name.
+ */
+class ReplicaRoutingDataSourceTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DataSource primary = database("primary");
+    private final DataSource replica = database("replica");
+
+    private ReplicaLagMonitor lagMonitor;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate writeTransaction;
+    private TransactionTemplate readOnlyTransaction;
+
+    @BeforeEach
+    void setUp() {
+        lagMonitor = new ReplicaLagMonitor(primary, replica, Duration.ofSeconds(2), clock);
+        lagMonitor.start();
+        DataSource underTest = new LazyConnectionDataSourceProxy(
+                new ReplicaRoutingDataSource(primary, replica, lagMonitor, meterRegistry));
+
+        jdbcTemplate = new JdbcTemplate(underTest);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(underTest);
+        writeTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+    }
+
+    @Test
+    void itShouldSendReadOnlyTransactionsToTheReplica() {
+        //Given
+        replicate();
+
+        //When
+        String database = readOnlyTransaction.execute(status -> databaseName());
+
+        //Then
+        assertThat(database).isEqualTo("replica");
+        assertThat(meterRegistry.get("datasource.routed").tag("target", "replica").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void itShouldSendWritesToThePrimary() {
+        //Given
+        replicate();
+
+        //When
+        String database = writeTransaction.execute(status -> databaseName());
+
+        //Then
+        assertThat(database).isEqualTo("primary");
+        // ... as well as anything outside a transaction
+        assertThat(databaseName()).isEqualTo("primary");
+    }
+
+    @Test
+    void itShouldReadFromThePrimaryWhileTheReplicaLags() {
+        //Given
+        replicate();
+        clock.advance(Duration.ofSeconds(3));
+
+        //When
+        String database = readOnlyTransaction.execute(status -> databaseName());
+
+        //Then
+        assertThat(lagMonitor.lag()).isEqualTo(Duration.ofSeconds(3));
+        assertThat(database).isEqualTo("primary");
+    }
+
+    @Test
+    void itShouldReadFromThePrimaryUntilTheReplicaHasAHeartbeat() {
+        //When
+        //Then
+        // ... nothing replicated yet
+        assertThat(lagMonitor.isWithinMaxLag()).isFalse();
+        String database = readOnlyTransaction.execute(status -> databaseName());
+        assertThat(database).isEqualTo("primary");
+    }
+
+    @Test
+    void itShouldReadPinnedReadsFromThePrimary() {
+        //Given
+        replicate();
+
+        //When
+        String database = ReplicaRouting.onPrimary(() -> readOnlyTransaction.execute(status -> databaseName()));
+
+        //Then
+        assertThat(database).isEqualTo("primary");
+        // ... only while pinned
+        String unpinned = readOnlyTransaction.execute(status -> databaseName());
+        assertThat(unpinned).isEqualTo("replica");
+    }
+
+    private String databaseName() {
+        return jdbcTemplate.queryForObject("SELECT name FROM database_name", String.class);
+    }
+
+    /**
+     * What replication would do: copy the primary's heartbeat to the replica.
+     */
+    private void replicate() {
+        Long beatAt = new JdbcTemplate(primary).queryForObject("SELECT beat_at FROM replica_heartbeat", Long.class);
+        JdbcTemplate replicaTemplate = new JdbcTemplate(replica);
+        replicaTemplate.execute("CREATE TABLE IF NOT EXISTS replica_heartbeat (id INT PRIMARY KEY, beat_at BIGINT)");
+        replicaTemplate.update("MERGE INTO replica_heartbeat (id, beat_at) KEY (id) VALUES (1, ?)", beatAt);
+        lagMonitor.heartbeat();
+    }
+
+    private static DataSource database(String name) {
+        DataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE database_name (name VARCHAR(20))");
+        jdbcTemplate.update("INSERT INTO database_name VALUES (?)", name);
+        return dataSource;
+    }
+
+    static class MutableClock extends Clock {
+
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
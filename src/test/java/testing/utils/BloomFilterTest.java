@@ -0,0 +1,51 @@
+package testing.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BloomFilterTest {
+
+    @Test
+    void itShouldContainEveryInsertedId() {
+        //Given
+        BloomFilter underTest = new BloomFilter(10_000, 0.01);
+        List<UUID> ids = IntStream.range(0, 10_000).mapToObj(i -> UUID.randomUUID()).toList();
+
+        //When
+        ids.forEach(underTest::put);
+
+        //Then
+        assertThat(ids).allMatch(underTest::mightContain);
+    }
+
+    @Test
+    void itShouldRejectMostUnknownIds() {
+        //Given
+        BloomFilter underTest = new BloomFilter(10_000, 0.01);
+        IntStream.range(0, 10_000).forEach(i -> underTest.put(UUID.randomUUID()));
+
+        //When
+        long falsePositives = IntStream.range(0, 10_000)
+                .filter(i -> underTest.mightContain(UUID.randomUUID()))
+                .count();
+
+        //Then
+        // ... 1% expected, leave room for randomness
+        assertThat(falsePositives).isLessThan(300);
+    }
+
+    @Test
+    void itShouldThrowWhenProbabilityIsNotValid() {
+        //When
+        //Then
+        assertThatThrownBy(() -> new BloomFilter(100, 1))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("False positive probability must be between 0 and 1");
+    }
+}
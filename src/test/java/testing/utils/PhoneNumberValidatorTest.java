@@ -2,10 +2,14 @@ package testing.utils;
 
 import com.google.i18n.phonenumbers.NumberParseException;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
+import java.util.Optional;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class PhoneNumberValidatorTest {
 
@@ -30,4 +34,55 @@ class PhoneNumberValidatorTest {
         //Then
         assertThat(isValid).isEqualTo(expected);
     }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+            "660000000,+34660000000",
+            "660 00 00 00,+34660000000",
+            "+34660000000,+34660000000",
+            "+34 660-000-000,+34660000000",
+            "+442071838750,+442071838750"
+    })
+    void itShouldNormalizePhoneNumberToE164(String phoneNumber, String expected) throws NumberParseException {
+        //When
+        Optional<String> normalized = underTest.normalize(phoneNumber);
+        //Then
+        assertThat(normalized).contains(expected);
+    }
+
+    @Test
+    void itShouldNotNormalizeInvalidPhoneNumber() throws NumberParseException {
+        //When
+        //Then
+        assertThat(underTest.normalize("+3466000000000")).isEmpty();
+    }
+
+    @Test
+    void itShouldServeRepeatedValidationsFromCache() throws NumberParseException {
+        //Given
+        String phoneNumber = "+34660000000";
+
+        //When
+        boolean first = underTest.validate(phoneNumber);
+        boolean second = underTest.validate(" " + phoneNumber);
+
+        //Then
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        assertThat(underTest.getCacheStats().missCount()).isEqualTo(1);
+        assertThat(underTest.getCacheStats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldNotCacheUnparseableNumbers() {
+        //When
+        //Then
+        assertThatThrownBy(() -> underTest.validate("not a number"))
+                .isInstanceOf(NumberParseException.class);
+        assertThatThrownBy(() -> underTest.validate("not a number"))
+                .isInstanceOf(NumberParseException.class);
+        // ... the second call parsed again instead of finding the first one in the cache
+        assertThat(underTest.getCacheStats().missCount()).isEqualTo(2);
+        assertThat(underTest.getCacheStats().hitCount()).isZero();
+    }
 }
@@ -0,0 +1,44 @@
+package testing.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UuidV7Test {
+
+    @Test
+    void itShouldGenerateVersion7Uuid() {
+        //When
+        UUID uuid = UuidV7.randomUuid();
+
+        //Then
+        assertThat(uuid.version()).isEqualTo(7);
+        assertThat(uuid.variant()).isEqualTo(2);
+    }
+
+    @Test
+    void itShouldEncodeTimestampInLeadingBits() {
+        //Given
+        long timestamp = 1_717_243_200_000L;
+
+        //When
+        UUID uuid = UuidV7.fromTimestamp(timestamp);
+
+        //Then
+        assertThat(uuid.getMostSignificantBits() >>> 16).isEqualTo(timestamp);
+    }
+
+    @Test
+    void itShouldOrderUuidsByTimestamp() {
+        //Given
+        UUID earlier = UuidV7.fromTimestamp(1_717_243_200_000L);
+        UUID later = UuidV7.fromTimestamp(1_717_243_200_001L);
+
+        //When
+        //Then
+        // ... same order as the bytes stored in a UUID column
+        assertThat(earlier.toString()).isLessThan(later.toString());
+    }
+}